@@ -1,33 +1,116 @@
 package csusm.cougarplanner.FilterPattern;
 
 import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.CompressedBitmap;
+import csusm.cougarplanner.services.TaskCache;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Predicate;
 
+/**
+ * Keeps the tasks that pass every one of its filters. The filters are compiled by
+ * {@link FilterCompiler} into one predicate applied in a single pass, recompiled whenever
+ * the filters change; the compiled pipeline keeps reordering them by what it measures.
+ * <p>
+ * Against the cache, the filters answered by its bitmap index are intersected first, and
+ * only the tasks left are read and checked against the rest.
+ */
 public class AndFilter implements TaskFilter {
     private List<TaskFilter> filters = new ArrayList<>();
+    // Compiled on first use; one pipeline for all the filters, one for those the index can't answer
+    private FilterCompiler.Pipeline compiled;
+    private FilterCompiler.Pipeline compiledUnindexed;
 
     public void addFilter(TaskFilter filter) {
         filters.add(filter);
+        invalidate();
     }
 
     public void removeFilter(TaskFilter filter) {
         filters.remove(filter);
+        invalidate();
     }
 
     public void clearFilters() {
         filters.clear();
+        invalidate();
     }
+
     public List<TaskFilter> getFilters() {
-        return filters;
+        return Collections.unmodifiableList(filters);
     }
 
     @Override
     public List<Task> filter(List<Task> tasks) {
-        List<Task> result = tasks;
+        return compiled().filter(tasks);
+    }
+
+    @Override
+    public Predicate<Task> asPredicate() {
+        return compiled();
+    }
+
+    @Override
+    public List<Task> filter(TaskCache cache) {
+        if (filters.isEmpty()) {
+            return cache.getAll();
+        }
+        List<TaskFilter> unindexed = new ArrayList<>();
+        CompressedBitmap slots = intersect(cache, unindexed);
+        if (slots == null) {
+            // Nothing indexed to narrow with
+            return compiled().filter(cache.getAll());
+        }
+        List<Task> narrowed = cache.tasksAt(slots);
+        if (unindexed.isEmpty()) {
+            return narrowed;
+        }
+        if (compiledUnindexed == null) {
+            compiledUnindexed = FilterCompiler.compile(unindexed);
+        }
+        return compiledUnindexed.filter(narrowed);
+    }
+
+    // Only answerable from the index if every filter is
+    @Override
+    public CompressedBitmap slots(TaskCache cache) {
+        if (filters.isEmpty()) {
+            return cache.allSlots();
+        }
+        List<TaskFilter> unindexed = new ArrayList<>();
+        CompressedBitmap slots = intersect(cache, unindexed);
+        return unindexed.isEmpty() ? slots : null;
+    }
+
+    /**
+     * Intersects the slots of every filter the index can answer.
+     *
+     * @param unindexed receives the filters it can't answer
+     * @return the intersection, or null if no filter could be answered
+     */
+    private CompressedBitmap intersect(TaskCache cache, List<TaskFilter> unindexed) {
+        CompressedBitmap slots = null;
         for (TaskFilter filter : filters) {
-            result = filter.filter(result);
+            CompressedBitmap matching = filter.slots(cache);
+            if (matching == null) {
+                unindexed.add(filter);
+            } else {
+                slots = slots == null ? matching : slots.and(matching);
+            }
         }
-        return result;
+        return slots;
+    }
+
+    private FilterCompiler.Pipeline compiled() {
+        if (compiled == null) {
+            compiled = FilterCompiler.compile(filters);
+        }
+        return compiled;
+    }
+
+    private void invalidate() {
+        compiled = null;
+        compiledUnindexed = null;
     }
 }
@@ -1,7 +1,10 @@
 package csusm.cougarplanner.FilterPattern;
 
 import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.CompressedBitmap;
+import csusm.cougarplanner.services.TaskCache;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class CourseFilter implements TaskFilter {
@@ -18,7 +21,31 @@ public class CourseFilter implements TaskFilter {
         }
 
         return tasks.stream()
-                .filter(task -> courseId.equals(task.getCourseId()))
+                .filter(asPredicate())
                 .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+
+    @Override
+    public Predicate<Task> asPredicate() {
+        if (courseId == null || courseId.isEmpty()) {
+            return task -> true;
+        }
+        return task -> courseId.equals(task.getCourseId());
+    }
+
+    @Override
+    public List<Task> filter(TaskCache cache) {
+        if (courseId == null || courseId.isEmpty()) {
+            return cache.getAll();
+        }
+        return cache.findByCourse(courseId);
+    }
+
+    @Override
+    public CompressedBitmap slots(TaskCache cache) {
+        if (courseId == null || courseId.isEmpty()) {
+            return cache.allSlots();
+        }
+        return cache.slotsOf(TaskCache.Facet.COURSE, courseId);
+    }
+}
@@ -1,8 +1,11 @@
 package csusm.cougarplanner.FilterPattern;
 
 import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.CompressedBitmap;
+import csusm.cougarplanner.services.TaskCache;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.time.format.DateTimeFormatter;
 
@@ -10,7 +13,8 @@ public class DueDateFilter implements TaskFilter {
     private LocalDate targetDate;
     private String operator;
 
-    // "eq", "before", "after", "onOrBefore", "onOrAfter"
+    // "eq", "before", "after", "onOrBefore", "onOrAfter", or "none" for tasks without a
+    // readable due date (targetDate is then ignored)
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MM-dd-yyyy");
     public DueDateFilter(LocalDate targetDate, String operator) {
@@ -21,26 +25,48 @@ public class DueDateFilter implements TaskFilter {
     @Override
     public List<Task> filter(List<Task> tasks) {
         return tasks.stream()
-                .filter(task -> {
-                    if (task.getDueDate() == null || task.getDueDate().isBlank())
-                        return false;
-                    try{
-                        LocalDate dueDate = LocalDate.parse(task.getDueDate(), DATE_FORMATTER);
-                        switch (operator) {
-
-                            case "eq": return dueDate.equals(targetDate);
-                            case "before": return dueDate.isBefore(targetDate);
-                            case "after": return dueDate.isAfter(targetDate);
-                            case "onOrBefore": return !dueDate.isAfter(targetDate);
-                            case "onOrAfter": return !dueDate.isBefore(targetDate);
-                            default: return false;
-                        }
-                    } catch (Exception e) {
-                        return false;
-                    }
-
-
-                })
+                .filter(asPredicate())
                 .collect(Collectors.toList());
     }
+
+    @Override
+    public Predicate<Task> asPredicate() {
+        return task -> {
+            if (task.getDueDate() == null || task.getDueDate().isBlank())
+                return operator.equals("none");
+            try{
+                LocalDate dueDate = LocalDate.parse(task.getDueDate(), DATE_FORMATTER);
+                switch (operator) {
+
+                    case "eq": return dueDate.equals(targetDate);
+                    case "before": return dueDate.isBefore(targetDate);
+                    case "after": return dueDate.isAfter(targetDate);
+                    case "onOrBefore": return !dueDate.isAfter(targetDate);
+                    case "onOrAfter": return !dueDate.isBefore(targetDate);
+                    default: return false;
+                }
+            } catch (Exception e) {
+                return operator.equals("none");
+            }
+        };
+    }
+
+    @Override
+    public List<Task> filter(TaskCache cache) {
+        return cache.tasksAt(slots(cache));
+    }
+
+    // Each operator is a range over the cache's due date index
+    @Override
+    public CompressedBitmap slots(TaskCache cache) {
+        switch (operator) {
+            case "eq": return cache.slotsDueBetween(targetDate, targetDate);
+            case "before": return cache.slotsDueBetween(LocalDate.MIN, targetDate.minusDays(1));
+            case "after": return cache.slotsDueBetween(targetDate.plusDays(1), LocalDate.MAX);
+            case "onOrBefore": return cache.slotsDueBetween(LocalDate.MIN, targetDate);
+            case "onOrAfter": return cache.slotsDueBetween(targetDate, LocalDate.MAX);
+            case "none": return cache.slotsWithoutDueDate();
+            default: return new CompressedBitmap();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+package csusm.cougarplanner.FilterPattern;
+
+import csusm.cougarplanner.models.Task;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Compiles a list of {@link TaskFilter}s (e.g. the ones in an {@link AndFilter}) into one
+ * short-circuiting predicate, so a task list is filtered in a single pass with no
+ * intermediate lists, and a task is dropped at the first sub-filter it fails.
+ * <p>
+ * The compiled {@link Pipeline} measures each sub-filter as it runs: how often it passes a task
+ * and, on a sample of calls, how long it takes. After every pass over a list it reorders the
+ * sub-filters by cost / (1 - pass rate), so cheap filters that reject most tasks run first.
+ * Pipelines are meant for one thread, the FX thread that filters the task list.
+ */
+public final class FilterCompiler {
+
+    // Time one call in this many per sub-filter; counting passes is cheap enough to do for every call
+    private static final int SAMPLE_EVERY = 8;
+
+    private FilterCompiler() {
+    }
+
+    /**
+     * @param filters the filters every task must pass, in their initial order
+     * @return a pipeline that applies them all in one pass
+     */
+    public static Pipeline compile(List<TaskFilter> filters) {
+        Stage[] stages = new Stage[filters.size()];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new Stage(filters.get(i).asPredicate());
+        }
+        return new Pipeline(stages);
+    }
+
+    /**
+     * One sub-filter and what has been measured of it.
+     */
+    private static final class Stage {
+        private final Predicate<Task> predicate;
+        private long evaluated;
+        private long passed;
+        private long sampled;
+        private long sampledNanos;
+
+        Stage(Predicate<Task> predicate) {
+            this.predicate = predicate;
+        }
+
+        boolean test(Task task) {
+            boolean pass;
+            if (evaluated++ % SAMPLE_EVERY == 0) {
+                long start = System.nanoTime();
+                pass = predicate.test(task);
+                sampledNanos += System.nanoTime() - start;
+                sampled++;
+            } else {
+                pass = predicate.test(task);
+            }
+            if (pass) passed++;
+            return pass;
+        }
+
+        // Expected cost of running this stage per task it removes; unmeasured stages keep their place at the end
+        double rank() {
+            if (sampled == 0) return Double.MAX_VALUE;
+            double cost = (double) sampledNanos / sampled;
+            double passRate = (double) passed / evaluated;
+            return cost / Math.max(1e-3, 1.0 - passRate);
+        }
+    }
+
+    /**
+     * The compiled filters, as a {@link Predicate} and a one-pass list filter.
+     */
+    public static final class Pipeline implements Predicate<Task> {
+        private Stage[] stages;
+
+        private Pipeline(Stage[] stages) {
+            this.stages = stages;
+        }
+
+        @Override
+        public boolean test(Task task) {
+            for (Stage stage : stages) {
+                if (!stage.test(task)) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Keeps the tasks that pass every filter, in their order, then reorders the filters by what was measured.
+         */
+        public List<Task> filter(List<Task> tasks) {
+            List<Task> result = new ArrayList<>();
+            for (Task task : tasks) {
+                if (test(task)) result.add(task);
+            }
+            reorder();
+            return result;
+        }
+
+        /**
+         * Sorts the filters by measured rank; a stable sort, so filters measured alike keep their order.
+         */
+        public void reorder() {
+            Stage[] sorted = stages.clone();
+            Arrays.sort(sorted, Comparator.comparingDouble(Stage::rank));
+            stages = sorted;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package csusm.cougarplanner.FilterPattern;
+
+import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.CompressedBitmap;
+import csusm.cougarplanner.services.TaskCache;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the tasks that pass at least one of its filters, e.g. two courses at once.
+ * Against the cache, when every filter is answered by its bitmap index the result is
+ * the union of their bitmaps; otherwise every task is tested.
+ */
+public class OrFilter implements TaskFilter {
+    private List<TaskFilter> filters = new ArrayList<>();
+
+    public void addFilter(TaskFilter filter) {
+        filters.add(filter);
+    }
+
+    public void removeFilter(TaskFilter filter) {
+        filters.remove(filter);
+    }
+
+    public void clearFilters() {
+        filters.clear();
+    }
+
+    public List<TaskFilter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
+    @Override
+    public List<Task> filter(List<Task> tasks) {
+        return tasks.stream()
+                .filter(asPredicate())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Predicate<Task> asPredicate() {
+        List<Predicate<Task>> predicates = new ArrayList<>(filters.size());
+        for (TaskFilter filter : filters) {
+            predicates.add(filter.asPredicate());
+        }
+        return task -> {
+            for (Predicate<Task> predicate : predicates) {
+                if (predicate.test(task)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    @Override
+    public List<Task> filter(TaskCache cache) {
+        CompressedBitmap slots = slots(cache);
+        return slots != null ? cache.tasksAt(slots) : filter(cache.getAll());
+    }
+
+    // Only answerable from the index if every filter is
+    @Override
+    public CompressedBitmap slots(TaskCache cache) {
+        CompressedBitmap slots = new CompressedBitmap();
+        for (TaskFilter filter : filters) {
+            CompressedBitmap matching = filter.slots(cache);
+            if (matching == null) {
+                return null;
+            }
+            slots = slots.or(matching);
+        }
+        return slots;
+    }
+}
@@ -1,7 +1,10 @@
 package csusm.cougarplanner.FilterPattern;
 
 import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.CompressedBitmap;
+import csusm.cougarplanner.services.TaskCache;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class PriorityFilter implements TaskFilter {
@@ -17,7 +20,31 @@ public class PriorityFilter implements TaskFilter {
             return tasks;
         }
         return tasks.stream()
-                .filter(task -> priorityLevel.equals(task.getPriority()))
+                .filter(asPredicate())
                 .collect(Collectors.toList());
     }
+
+    @Override
+    public Predicate<Task> asPredicate() {
+        if (priorityLevel == null || priorityLevel.isEmpty() || priorityLevel.equals("All Priorities")) {
+            return task -> true;
+        }
+        return task -> priorityLevel.equals(task.getPriority());
+    }
+
+    @Override
+    public List<Task> filter(TaskCache cache) {
+        if (priorityLevel == null || priorityLevel.isEmpty() || priorityLevel.equals("All Priorities")) {
+            return cache.getAll();
+        }
+        return cache.findByPriority(priorityLevel);
+    }
+
+    @Override
+    public CompressedBitmap slots(TaskCache cache) {
+        if (priorityLevel == null || priorityLevel.isEmpty() || priorityLevel.equals("All Priorities")) {
+            return cache.allSlots();
+        }
+        return cache.slotsOf(TaskCache.Facet.PRIORITY, priorityLevel);
+    }
 }
@@ -1,7 +1,10 @@
 package csusm.cougarplanner.FilterPattern;
 
 import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.CompressedBitmap;
+import csusm.cougarplanner.services.TaskCache;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class StatusFilter implements TaskFilter {
@@ -17,7 +20,31 @@ public class StatusFilter implements TaskFilter {
             return tasks;
         }
         return tasks.stream()
-                .filter(task -> status.equals(task.getStatus()))
+                .filter(asPredicate())
                 .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+
+    @Override
+    public Predicate<Task> asPredicate() {
+        if (status == null || status.isEmpty() || status.equals("All Statuses")) {
+            return task -> true;
+        }
+        return task -> status.equals(task.getStatus());
+    }
+
+    @Override
+    public List<Task> filter(TaskCache cache) {
+        if (status == null || status.isEmpty() || status.equals("All Statuses")) {
+            return cache.getAll();
+        }
+        return cache.findByStatus(status);
+    }
+
+    @Override
+    public CompressedBitmap slots(TaskCache cache) {
+        if (status == null || status.isEmpty() || status.equals("All Statuses")) {
+            return cache.allSlots();
+        }
+        return cache.slotsOf(TaskCache.Facet.STATUS, status);
+    }
+}
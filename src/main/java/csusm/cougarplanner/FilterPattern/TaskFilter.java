@@ -1,8 +1,40 @@
 package csusm.cougarplanner.FilterPattern;
 
 import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.CompressedBitmap;
+import csusm.cougarplanner.services.TaskCache;
 import java.util.List;
+import java.util.function.Predicate;
 
 public interface TaskFilter {
     List<Task> filter(List<Task> tasks);
+
+    /**
+     * Gets the test this filter applies to one task, so several filters can be combined
+     * into a single pass (see {@link FilterCompiler}). Filters that test tasks one at a time
+     * override this; the default runs {@link #filter(List)} on a one-task list.
+     */
+    default Predicate<Task> asPredicate() {
+        return task -> !filter(List.of(task)).isEmpty();
+    }
+
+    /**
+     * Filters every task in the cache. Filters on an indexed field override this
+     * to read just the matching tasks from the cache's index instead of scanning all of them.
+     */
+    default List<Task> filter(TaskCache cache) {
+        return filter(cache.getAll());
+    }
+
+    /**
+     * Gets the cache slots of the tasks this filter keeps, straight from the cache's bitmap
+     * index, so filters can be combined by intersecting bitmaps and counted without reading
+     * any task. Filters on an indexed field override this; the default returns null,
+     * meaning the filter has to test the tasks themselves.
+     *
+     * @return the matching slots, or null if this filter can't be answered from the index
+     */
+    default CompressedBitmap slots(TaskCache cache) {
+        return null;
+    }
 }
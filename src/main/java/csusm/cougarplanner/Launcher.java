@@ -1,15 +1,27 @@
 package csusm.cougarplanner;
 
+import csusm.cougarplanner.commandPattern.CommandManager;
 import csusm.cougarplanner.config.Profile;
 import csusm.cougarplanner.config.ProfileReader;
+import csusm.cougarplanner.io.AnnouncementsRepository;
+import csusm.cougarplanner.io.AssignmentsRepository;
+import csusm.cougarplanner.io.CsvPaths;
+import csusm.cougarplanner.io.CsvReader;
+import csusm.cougarplanner.io.DataTransaction;
+import csusm.cougarplanner.io.SemesterArchiver;
+import csusm.cougarplanner.io.StorageEngines;
+import csusm.cougarplanner.services.DataDirectoryWatcher;
+import csusm.cougarplanner.services.TaskPersistenceService;
 import csusm.cougarplanner.theme.ThemeManager;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 
+import java.io.IOException;
 import java.nio.file.Path;
 
 /**
@@ -33,6 +45,26 @@ public class Launcher extends Application {
         ProfileReader.ReadResult result = reader.readProfile();
         profileConfig = result.getProfile();
 
+        // Finish any interrupted sync, then pick the data file format and layout, before any repository opens its files
+        DataTransaction.recover();
+        StorageEngines.use(profileConfig.getStorageEngine());
+        CsvPaths.setWeekPartitioned("weekly".equalsIgnoreCase(profileConfig.getStorageLayout()));
+        AssignmentsRepository.convertLayout();
+        AnnouncementsRepository.convertLayout();
+        CsvReader.setParallelParseThreshold(profileConfig.getParallelParseThresholdKb() * 1024);
+        CommandManager.setHistoryBudgetBytes(profileConfig.getUndoHistoryBudgetKb() * 1024);
+
+        // Move past terms out of the tables the views read, without holding up the first scene
+        SemesterArchiver.setHorizonDays(profileConfig.getArchiveHorizonDays());
+        SemesterArchiver.archiveInBackground(new AssignmentsRepository(), new AnnouncementsRepository());
+
+        // Pick up edits made to the data files outside the app while it runs
+        try {
+            DataDirectoryWatcher.start(Platform::runLater);
+        } catch (IOException e) {
+            System.err.println("Could not watch the data directory: " + e.getMessage());
+        }
+
         // Decide which scene to load based on whether login is complete
         if (profileConfig.isLoginCompleted() && !profileConfig.getAuthToken().isEmpty()) {
             loadScene("MainPage.fxml", "Cougar Planner - Weekly View", true);
@@ -92,8 +124,10 @@ public class Launcher extends Application {
     // JavaFX calls this when the last window closes. Force-exit so any
     // background threads (HTTP clients, executors used by Canvas API calls, etc.)
     // don't keep the JVM alive and leave IntelliJ's Run tab "running."
+    // Queued task writes are flushed first so the exit doesn't drop them.
     @Override
     public void stop() {
+        TaskPersistenceService.getInstance().shutdown();
         System.exit(0);
     }
 
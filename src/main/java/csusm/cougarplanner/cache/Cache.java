@@ -1,5 +1,7 @@
 package csusm.cougarplanner.cache;
 
+import java.util.Set;
+
 /**
  * A generic cache interface defining the core operations all caches must support.
  *
@@ -36,4 +38,11 @@ public interface Cache<T> {
      * @return the number of cached entries
      */
     int size();
+
+    /**
+     * Returns a snapshot of the keys currently in the cache.
+     *
+     * @return the cached keys
+     */
+    Set<String> keys();
 }
\ No newline at end of file
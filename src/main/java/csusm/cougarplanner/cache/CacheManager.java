@@ -2,6 +2,7 @@ package csusm.cougarplanner.cache;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  * Singleton registry that owns the app's in-memory caches and exposes them by
@@ -47,4 +48,20 @@ public class CacheManager {
         }
         cache.put(key, value);
     }
+
+    /**
+     * Drops the entries of a cache whose keys match a filter, e.g. the weeks
+     * that contain a row changed on disk. Does nothing for an unknown cache.
+     */
+    public void removeIf(String cacheName, Predicate<String> keyFilter) {
+        Cache<?> cache = caches.get(cacheName);
+        if (cache == null) {
+            return;
+        }
+        for (String key : cache.keys()) {
+            if (keyFilter.test(key)) {
+                cache.remove(key);
+            }
+        }
+    }
 }
@@ -1,6 +1,8 @@
 package csusm.cougarplanner.cache;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Cache implemented with a HashMap + doubly-linked list.
@@ -85,6 +87,11 @@ public class LinkedListLRUCache<T> implements Cache<T> {
         return cacheMap.size();
     }
 
+    @Override
+    public Set<String> keys() {
+        return new HashSet<>(cacheMap.keySet());
+    }
+
     private void moveToHead(Node<String, T> node) {
         detach(node);
         addToHead(node);
@@ -1,5 +1,7 @@
 package csusm.cougarplanner.commandPattern;
 
+import java.util.List;
+
 public interface Command {
     void execute() throws Exception;
 
@@ -9,4 +11,20 @@ public interface Command {
     // to avoid character-by-character history. Commands that shouldn't be
     // recorded override this to return false.
     default boolean isUndoable() { return true; }
+
+    // The task changes the last execute() made, as column deltas. The undo history
+    // journals these to disk and rebuilds the command from them after a restart.
+    // Null means the command can't be described that way and lives in memory only.
+    default List<TaskDelta> deltas() { return null; }
+
+    // Rough heap cost of keeping this command in the undo history, checked against its budget.
+    default long estimatedBytes() {
+        List<TaskDelta> deltas = deltas();
+        if (deltas == null) return 512;
+        long bytes = 32;
+        for (TaskDelta delta : deltas) {
+            bytes += delta.estimatedBytes();
+        }
+        return bytes;
+    }
 }
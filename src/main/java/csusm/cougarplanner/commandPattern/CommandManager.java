@@ -1,7 +1,16 @@
 package csusm.cougarplanner.commandPattern;
 
+import csusm.cougarplanner.commandPattern.UndoJournal.Entry;
+
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Invoker for the Command design pattern.
@@ -14,47 +23,230 @@ import java.util.Deque;
  * <p>
  * Commands that return {@code false} from {@link Command#isUndoable()} are
  * executed but never recorded, so they don't pollute the history.
+ * <p>
+ * The history is bounded by a memory budget (see {@link #setHistoryBudgetBytes(long)}),
+ * measured with {@link Command#estimatedBytes()}. Past it the oldest undo steps are
+ * dropped from memory. With an {@link UndoJournal} every step is also journaled to
+ * disk, so the history survives restarts and dropped steps are read back once the
+ * user undoes past the ones still in memory.
+ * <p>
+ * In async mode (see {@link #CommandManager(Supplier, Executor, Consumer, UndoJournal)}) the
+ * stacks and the cache change at once, while the writes the command queued land
+ * in the background. Every execute, undo and redo gets a sequence number and stays
+ * in flight until its write is confirmed. If a write fails, that operation and every
+ * later one still in flight are reverted newest first, which puts the cache and both
+ * stacks back exactly as they were before it, and the failure is reported.
  */
 public class CommandManager {
-    private final Deque<Command> undoStack = new ArrayDeque<>();
-    private final Deque<Command> redoStack = new ArrayDeque<>();
+    private static volatile long historyBudgetBytes = 1024 * 1024;
+
+    private final Deque<Entry> undoStack = new ArrayDeque<>();
+    private final Deque<Entry> redoStack = new ArrayDeque<>();
+
+    // Null when the history is kept in memory only
+    private final UndoJournal journal;
+    private final long budgetBytes;
+    private long retainedBytes;    // estimatedBytes() of every step on both stacks
+    private boolean olderOnDisk;   // undo steps were dropped from memory but are still journaled
+    private long nextId;
+
+    // Async mode only; null when commands are executed synchronously
+    private final Supplier<CompletableFuture<Void>> whenWritten;
+    private final Executor callbackExecutor;
+    private final Consumer<Throwable> onRolledBack;
+
+    // Operations whose writes aren't confirmed yet, oldest first
+    private final Deque<Operation> inFlight = new ArrayDeque<>();
+    private long nextSequence;
+
+    private enum Action { EXECUTE, UNDO, REDO }
+
+    /**
+     * One execute, undo or redo awaiting its write.
+     *
+     * @param clearedRedos the redo history an execute dropped, restored if it is rolled back
+     */
+    private record Operation(long sequence, Action action, Entry entry, List<Entry> clearedRedos) {}
+
+    public CommandManager() {
+        this(null, null, null, null);
+    }
+
+    /**
+     * Creates a manager in async mode, optionally with a journaled history.
+     *
+     * @param whenWritten gets a future for the writes queued so far, e.g. TaskPersistenceService::whenWritten
+     * @param callbackExecutor runs rollbacks and failure reports; the thread that uses this manager, e.g. Platform::runLater
+     * @param onRolledBack told why, after a failed write was rolled back
+     * @param journal keeps the history on disk, or null to keep it in memory only; its history is loaded now
+     */
+    public CommandManager(Supplier<CompletableFuture<Void>> whenWritten, Executor callbackExecutor,
+                          Consumer<Throwable> onRolledBack, UndoJournal journal) {
+        this.whenWritten = whenWritten;
+        this.callbackExecutor = callbackExecutor;
+        this.onRolledBack = onRolledBack;
+        this.journal = journal;
+        this.budgetBytes = historyBudgetBytes;
+        if (journal != null) {
+            UndoJournal.History history = journal.load(budgetBytes);
+            pushOlder(history);
+            for (int i = history.redo().size() - 1; i >= 0; i--) {
+                Entry entry = history.redo().get(i);
+                redoStack.push(entry);
+                retainedBytes += entry.bytes();
+            }
+            nextId = history.nextId();
+        }
+    }
+
+    /**
+     * Sets how much memory the history of managers created from now on may hold.
+     *
+     * @param bytes the budget in bytes
+     */
+    public static void setHistoryBudgetBytes(long bytes) {
+        historyBudgetBytes = bytes;
+    }
 
     public void execute(Command cmd) {
         try {
             cmd.execute();
-            if (cmd.isUndoable()) {
-                undoStack.push(cmd);
-                // A new action invalidates the redo history — the user has
-                // branched off from the previous redo timeline.
-                redoStack.clear();
-            }
         } catch (Exception ex) {
             throw new RuntimeException("Command execution failed", ex);
         }
+        if (cmd.isUndoable()) {
+            Entry entry = new Entry(nextId++, cmd, cmd.estimatedBytes());
+            undoStack.push(entry);
+            retainedBytes += entry.bytes();
+            // A new action invalidates the redo history — the user has
+            // branched off from the previous redo timeline.
+            List<Entry> cleared = new ArrayList<>(redoStack);
+            redoStack.clear();
+            for (Entry redo : cleared) {
+                retainedBytes -= redo.bytes();
+            }
+            List<TaskDelta> deltas = cmd.deltas();
+            if (journal != null && deltas != null) {
+                journal.executed(entry.id(), deltas);
+            }
+            track(Action.EXECUTE, entry, cleared);
+            trim();
+        }
     }
 
     public void undo() {
+        if (undoStack.isEmpty()) pageInOlder();
         if (undoStack.isEmpty()) return;
-        Command cmd = undoStack.pop();
+        Entry entry = undoStack.pop();
         try {
-            cmd.undo();
-            redoStack.push(cmd);
+            entry.command().undo();
+            redoStack.push(entry);
         } catch (Exception ex) {
+            retainedBytes -= entry.bytes();
             throw new RuntimeException("Command undo failed", ex);
         }
+        if (journal != null) journal.undone(entry.id());
+        track(Action.UNDO, entry, List.of());
     }
 
     public void redo() {
         if (redoStack.isEmpty()) return;
-        Command cmd = redoStack.pop();
+        Entry entry = redoStack.pop();
         try {
-            cmd.execute();
-            undoStack.push(cmd);
+            entry.command().execute();
+            undoStack.push(entry);
         } catch (Exception ex) {
+            retainedBytes -= entry.bytes();
             throw new RuntimeException("Command redo failed", ex);
         }
+        if (journal != null) journal.redone(entry.id());
+        track(Action.REDO, entry, List.of());
     }
 
-    public boolean canUndo() { return !undoStack.isEmpty(); }
+    public boolean canUndo() { return !undoStack.isEmpty() || olderOnDisk; }
     public boolean canRedo() { return !redoStack.isEmpty(); }
+
+    /**
+     * @return true if an operation's write isn't confirmed yet (always false outside async mode)
+     */
+    public boolean hasWritesInFlight() { return !inFlight.isEmpty(); }
+
+    // Drops the oldest undo steps from memory until the history fits its budget again.
+    // The redo stack only shrinks when a new action clears it, so it isn't trimmed.
+    private void trim() {
+        while (retainedBytes > budgetBytes && undoStack.size() > 1) {
+            Entry oldest = undoStack.removeLast();
+            retainedBytes -= oldest.bytes();
+            if (journal != null) olderOnDisk = true;
+        }
+    }
+
+    // Reads back the newest steps trim() dropped, once every step in memory was undone
+    private void pageInOlder() {
+        if (!olderOnDisk) return;
+        pushOlder(journal.loadOlder(budgetBytes));
+    }
+
+    private void pushOlder(UndoJournal.History history) {
+        for (Entry entry : history.undo()) {
+            undoStack.push(entry);
+            retainedBytes += entry.bytes();
+        }
+        olderOnDisk = history.olderOnDisk();
+    }
+
+    // Waits for the writes an operation queued, in async mode
+    private void track(Action action, Entry entry, List<Entry> clearedRedos) {
+        if (whenWritten == null) return;
+        Operation op = new Operation(nextSequence++, action, entry, clearedRedos);
+        inFlight.addLast(op);
+        whenWritten.get().whenComplete((ignored, error) ->
+                callbackExecutor.execute(() -> settle(op, error)));
+    }
+
+    private void settle(Operation op, Throwable error) {
+        if (!inFlight.contains(op)) return; // Already rolled back with an earlier failure
+        if (error == null) {
+            inFlight.remove(op);
+            return;
+        }
+        // Later operations were applied on top of this one, so they go first
+        while (!inFlight.isEmpty() && inFlight.peekLast().sequence() >= op.sequence()) {
+            revert(inFlight.pollLast());
+        }
+        onRolledBack.accept(error instanceof CompletionException && error.getCause() != null
+                ? error.getCause() : error);
+    }
+
+    // Reverses one operation; anything after it has been reverted already, so its step is on top
+    private void revert(Operation op) {
+        Entry entry = op.entry();
+        try {
+            switch (op.action()) {
+                case EXECUTE -> {
+                    if (undoStack.removeFirstOccurrence(entry)) retainedBytes -= entry.bytes();
+                    entry.command().undo();
+                    for (int i = op.clearedRedos().size() - 1; i >= 0; i--) {
+                        redoStack.push(op.clearedRedos().get(i));
+                        retainedBytes += op.clearedRedos().get(i).bytes();
+                    }
+                    if (journal != null) journal.dropped(entry.id());
+                }
+                case UNDO -> {
+                    redoStack.removeFirstOccurrence(entry);
+                    entry.command().execute();
+                    undoStack.push(entry);
+                    if (journal != null) journal.redone(entry.id());
+                }
+                case REDO -> {
+                    undoStack.removeFirstOccurrence(entry);
+                    entry.command().undo();
+                    redoStack.push(entry);
+                    if (journal != null) journal.undone(entry.id());
+                }
+            }
+        } catch (Exception ex) {
+            System.err.println("Could not roll back a command after a failed write: " + ex.getMessage());
+        }
+    }
 }
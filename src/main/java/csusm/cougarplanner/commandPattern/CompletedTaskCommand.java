@@ -1,7 +1,12 @@
 package csusm.cougarplanner.commandPattern;
 
-import csusm.cougarplanner.io.TasksRepository;
+import csusm.cougarplanner.models.Task;
 import csusm.cougarplanner.services.TaskCache;
+import csusm.cougarplanner.services.TaskPersistenceService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * Command that toggles a task's "completed" flag (checking or unchecking
@@ -9,24 +14,43 @@ import csusm.cougarplanner.services.TaskCache;
  * {@link #undo()} simply calls the same toggle again.
  */
 public class CompletedTaskCommand implements Command {
-    private final TasksRepository tasksRepository;
+    private final TaskPersistenceService persistence;
     private final String taskId;
+    // The flag after the last execute(); only meaningful once executed
+    private boolean completedAfter;
 
-    public CompletedTaskCommand(TasksRepository tasksRepository, String taskId) {
-        this.tasksRepository = tasksRepository;
+    public CompletedTaskCommand(TaskPersistenceService persistence, String taskId) {
+        this.persistence = persistence;
         this.taskId = taskId;
     }
 
     @Override
     public void execute() throws Exception {
         TaskCache.getInstance().toggleCompleted(taskId);
-        tasksRepository.toggleCompleted(taskId);
+        persistCompleted();
+        completedAfter = TaskCache.getInstance().findById(taskId).map(Task::isCompleted).orElse(false);
     }
 
     @Override
     public void undo() throws Exception {
         // Toggle is its own inverse.
         TaskCache.getInstance().toggleCompleted(taskId);
-        tasksRepository.toggleCompleted(taskId);
+        persistCompleted();
+    }
+
+    @Override
+    public List<TaskDelta> deltas() {
+        return List.of(new TaskDelta(taskId,
+                Map.of("completed", String.valueOf(!completedAfter)),
+                Map.of("completed", String.valueOf(completedAfter))));
+    }
+
+    // Writes the cache's new value rather than a second toggle, so the repository
+    // doesn't have to read tasks.csv to find out what the flag currently is.
+    private void persistCompleted() {
+        Optional<Task> task = TaskCache.getInstance().findById(taskId);
+        if (task.isPresent()) {
+            persistence.setCompleted(taskId, task.get().isCompleted());
+        }
     }
 }
@@ -0,0 +1,81 @@
+package csusm.cougarplanner.commandPattern;
+
+import csusm.cougarplanner.services.TaskPersistenceService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command made of several commands that run, undo and redo as one step
+ * (e.g. completing every task in view), so a single Ctrl+Z reverts the whole batch.
+ * <p>
+ * The children run inside a {@link TaskPersistenceService} batch, so however many
+ * tasks they touch, their changes reach tasks.csv in one write. If a child fails,
+ * the children that already ran are undone in reverse order before the failure is rethrown,
+ * leaving the cache as it was.
+ */
+public class CompositeCommand implements Command {
+
+    private final TaskPersistenceService persistence;
+    private final List<Command> commands;
+
+    public CompositeCommand(TaskPersistenceService persistence, List<Command> commands) {
+        this.persistence = persistence;
+        this.commands = List.copyOf(commands);
+    }
+
+    @Override
+    public void execute() throws Exception {
+        persistence.beginBatch();
+        try {
+            List<Command> done = new ArrayList<>();
+            try {
+                for (Command command : commands) {
+                    command.execute();
+                    done.add(command);
+                }
+            } catch (Exception ex) {
+                for (int i = done.size() - 1; i >= 0; i--) {
+                    done.get(i).undo();
+                }
+                throw ex;
+            }
+        } finally {
+            persistence.endBatch();
+        }
+    }
+
+    @Override
+    public void undo() throws Exception {
+        persistence.beginBatch();
+        try {
+            for (int i = commands.size() - 1; i >= 0; i--) {
+                commands.get(i).undo();
+            }
+        } finally {
+            persistence.endBatch();
+        }
+    }
+
+    // Recorded if any child would be; children that aren't still run as part of the batch
+    @Override
+    public boolean isUndoable() {
+        return commands.stream().anyMatch(Command::isUndoable);
+    }
+
+    // All children's deltas in order, if every child has them
+    @Override
+    public List<TaskDelta> deltas() {
+        List<TaskDelta> deltas = new ArrayList<>();
+        for (Command command : commands) {
+            List<TaskDelta> own = command.deltas();
+            if (own == null) return null;
+            deltas.addAll(own);
+        }
+        return deltas;
+    }
+
+    public boolean isEmpty() {
+        return commands.isEmpty();
+    }
+}
@@ -1,33 +1,40 @@
 package csusm.cougarplanner.commandPattern;
 
-import csusm.cougarplanner.io.TasksRepository;
 import csusm.cougarplanner.models.Task;
 import csusm.cougarplanner.services.TaskCache;
+import csusm.cougarplanner.services.TaskPersistenceService;
+
+import java.util.List;
 
 /**
- * Command that creates a new task. Adds the task to both the in-memory
- * {@link TaskCache} (so the UI updates immediately) and the persistent
- * CSV-backed {@link TasksRepository}. Undo removes it from both.
+ * Command that creates a new task. Adds the task to the in-memory
+ * {@link TaskCache} (so the UI updates immediately) and queues it with the
+ * write-behind {@link TaskPersistenceService}. Undo removes it from both.
  */
 public class CreateTaskCommand implements Command {
 
-    private final TasksRepository tasksRepository;
+    private final TaskPersistenceService persistence;
     private final Task task;
 
-    public CreateTaskCommand(TasksRepository tasksRepository, Task task) {
-        this.tasksRepository = tasksRepository;
+    public CreateTaskCommand(TaskPersistenceService persistence, Task task) {
+        this.persistence = persistence;
         this.task = task;
     }
 
     @Override
     public void execute() throws Exception {
         TaskCache.getInstance().add(task);
-        tasksRepository.upsert(task);
+        persistence.upsert(task);
     }
 
     @Override
     public void undo() throws Exception {
         TaskCache.getInstance().remove(task.getTaskId());
-        tasksRepository.deleteById(task.getTaskId());
+        persistence.deleteById(task.getTaskId());
+    }
+
+    @Override
+    public List<TaskDelta> deltas() {
+        return List.of(TaskDelta.of(null, task));
     }
 }
@@ -1,41 +1,57 @@
 package csusm.cougarplanner.commandPattern;
 
-import csusm.cougarplanner.io.TasksRepository;
 import csusm.cougarplanner.models.Task;
 import csusm.cougarplanner.services.TaskCache;
+import csusm.cougarplanner.services.TaskPersistenceService;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Command that clears every task (the "Delete All" action).
  * <p>
- * Snapshots the full task list at execute() time so undo can restore the
- * entire set via {@link TasksRepository#upsertAll(List)} in one pass, rather
- * than relying on the user to undo each deletion individually.
+ * Records every task's set columns at execute() time so undo can restore the
+ * entire set via {@link TaskCache#addAll} and {@link TaskPersistenceService#upsertAll(List)}
+ * in one pass and one batched write, rather than relying on the user to undo each deletion individually.
  */
 public class DeleteAllTasksCommand implements Command {
 
-    private final TasksRepository tasksRepository;
-    // Snapshot of every task at the time of deletion, used to restore the full list on undo.
-    private List<Task> snapshot;
+    private final TaskPersistenceService persistence;
+    // Every task at the time of deletion as a removal delta, used to restore the full list on undo.
+    private List<TaskDelta> deleted;
 
-    public DeleteAllTasksCommand(TasksRepository tasksRepository) {
-        this.tasksRepository = tasksRepository;
+    public DeleteAllTasksCommand(TaskPersistenceService persistence) {
+        this.persistence = persistence;
     }
 
     @Override
     public void execute() throws Exception {
-        snapshot = TaskCache.getInstance().getAll();
+        deleted = new ArrayList<>();
+        for (Task task : TaskCache.getInstance().getAll()) {
+            deleted.add(TaskDelta.of(task, null));
+        }
         TaskCache.getInstance().removeAll();
-        tasksRepository.deleteAll();
+        persistence.deleteAll();
     }
 
     @Override
     public void undo() throws Exception {
-        if (snapshot == null) return;
-        for (Task t : snapshot) {
-            TaskCache.getInstance().add(t);
+        if (deleted == null) return;
+        List<Task> restored = new ArrayList<>(deleted.size());
+        for (TaskDelta delta : deleted) {
+            restored.add(delta.removedTask());
+        }
+        TaskCache.getInstance().addAll(restored);
+        persistence.beginBatch();
+        try {
+            persistence.upsertAll(restored);
+        } finally {
+            persistence.endBatch();
         }
-        tasksRepository.upsertAll(snapshot);
+    }
+
+    @Override
+    public List<TaskDelta> deltas() {
+        return deleted;
     }
 }
@@ -1,39 +1,46 @@
 package csusm.cougarplanner.commandPattern;
 
-import csusm.cougarplanner.io.TasksRepository;
 import csusm.cougarplanner.models.Task;
 import csusm.cougarplanner.services.TaskCache;
+import csusm.cougarplanner.services.TaskPersistenceService;
+
+import java.util.List;
 
 /**
  * Command that deletes a single task by id.
  * <p>
- * Before deleting, it snapshots the task from the cache so {@link #undo()} can
- * restore the exact same object. If the id wasn't found (snapshot is null),
+ * Before deleting, it records the task's set columns as a {@link TaskDelta}
+ * so {@link #undo()} can rebuild it. If the id wasn't found (delta is null),
  * undo becomes a no-op rather than throwing.
  */
 public class DeleteTaskCommand implements Command {
 
-    private final TasksRepository tasksRepository;
+    private final TaskPersistenceService persistence;
     private final String taskId;
-    // Snapshot of the task taken at execute() time, used to restore it on undo.
-    private Task snapshot;
+    // The deleted task's columns, taken at execute() time and used to restore it on undo.
+    private TaskDelta delta;
 
-    public DeleteTaskCommand(TasksRepository tasksRepository, String taskId) {
-        this.tasksRepository = tasksRepository;
+    public DeleteTaskCommand(TaskPersistenceService persistence, String taskId) {
+        this.persistence = persistence;
         this.taskId = taskId;
     }
 
     @Override
     public void execute() throws Exception {
-        snapshot = TaskCache.getInstance().findById(taskId).orElse(null);
+        Task deleted = TaskCache.getInstance().findById(taskId).orElse(null);
+        delta = deleted != null ? TaskDelta.of(deleted, null) : null;
         TaskCache.getInstance().remove(taskId);
-        tasksRepository.deleteById(taskId);
+        persistence.deleteById(taskId);
     }
 
     @Override
     public void undo() throws Exception {
-        if (snapshot == null) return;
-        TaskCache.getInstance().add(snapshot);
-        tasksRepository.upsert(snapshot);
+        if (delta == null) return;
+        delta.apply(false, persistence);
+    }
+
+    @Override
+    public List<TaskDelta> deltas() {
+        return delta != null ? List.of(delta) : List.of();
     }
 }
@@ -0,0 +1,50 @@
+package csusm.cougarplanner.commandPattern;
+
+import csusm.cougarplanner.services.TaskPersistenceService;
+
+import java.util.List;
+
+/**
+ * Command rebuilt from the {@link TaskDelta}s of an earlier one, e.g. a step of the
+ * undo history read back from disk by {@link UndoJournal}. Execute puts every task
+ * as it was after the original command, undo as it was before; both in one write.
+ */
+public class DeltaCommand implements Command {
+
+    private final TaskPersistenceService persistence;
+    private final List<TaskDelta> deltas;
+
+    public DeltaCommand(TaskPersistenceService persistence, List<TaskDelta> deltas) {
+        this.persistence = persistence;
+        this.deltas = List.copyOf(deltas);
+    }
+
+    @Override
+    public void execute() throws Exception {
+        persistence.beginBatch();
+        try {
+            for (TaskDelta delta : deltas) {
+                delta.apply(true, persistence);
+            }
+        } finally {
+            persistence.endBatch();
+        }
+    }
+
+    @Override
+    public void undo() throws Exception {
+        persistence.beginBatch();
+        try {
+            for (int i = deltas.size() - 1; i >= 0; i--) {
+                deltas.get(i).apply(false, persistence);
+            }
+        } finally {
+            persistence.endBatch();
+        }
+    }
+
+    @Override
+    public List<TaskDelta> deltas() {
+        return deltas;
+    }
+}
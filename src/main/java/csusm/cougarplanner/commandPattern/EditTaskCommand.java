@@ -0,0 +1,53 @@
+package csusm.cougarplanner.commandPattern;
+
+import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.TaskCache;
+import csusm.cougarplanner.services.TaskPersistenceService;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Undoable command that changes fields of one task, e.g. its priority or course
+ * as part of a bulk action. Unlike {@link UpdateTaskCommand}, which only persists
+ * an edit the row already made, this one makes the change itself and keeps the
+ * changed columns' old and new values as a {@link TaskDelta}, so {@link #undo()}
+ * can put the old ones back without holding a copy of the whole task.
+ */
+public class EditTaskCommand implements Command {
+
+    private final TaskPersistenceService persistence;
+    private final String taskId;
+    private final Consumer<Task> edit;
+    // Taken at the first execute(): undo applies its before side, redo its after side.
+    private TaskDelta delta;
+
+    public EditTaskCommand(TaskPersistenceService persistence, String taskId, Consumer<Task> edit) {
+        this.persistence = persistence;
+        this.taskId = taskId;
+        this.edit = edit;
+    }
+
+    @Override
+    public void execute() throws Exception {
+        if (delta == null) {
+            Task current = TaskCache.getInstance().findById(taskId).orElse(null);
+            if (current == null) return;
+            Task edited = new Task(current);
+            edit.accept(edited);
+            delta = TaskDelta.of(current, edited);
+        }
+        delta.apply(true, persistence);
+    }
+
+    @Override
+    public void undo() throws Exception {
+        if (delta == null) return;
+        delta.apply(false, persistence);
+    }
+
+    @Override
+    public List<TaskDelta> deltas() {
+        return delta != null ? List.of(delta) : List.of();
+    }
+}
@@ -0,0 +1,150 @@
+package csusm.cougarplanner.commandPattern;
+
+import csusm.cougarplanner.io.TasksRepository;
+import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.TaskCache;
+import csusm.cougarplanner.services.TaskPersistenceService;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The change one command made to one task, as the columns it changed rather than
+ * whole copies of the task: an edit of the priority holds two short strings.
+ * A task that was created has no before side, and a task that was removed has no
+ * after side; the other side then holds every column that is set, empty strings included,
+ * so the task can be rebuilt exactly.
+ * <p>
+ * Columns are keyed by lowercase name, as {@link TasksRepository#toRecord} returns them.
+ *
+ * @param taskId the task changed
+ * @param before the changed columns' values before, or null if the task didn't exist
+ * @param after the changed columns' values after, or null if the task was removed
+ */
+public record TaskDelta(String taskId, Map<String, String> before, Map<String, String> after) {
+
+    // Rough JVM cost of the record, its maps and one map entry, for estimatedBytes()
+    private static final long RECORD_BYTES = 64;
+    private static final long ENTRY_BYTES = 48;
+
+    /**
+     * Compares two versions of a task.
+     *
+     * @param before the task before, or null if it was created
+     * @param after the task after, or null if it was removed
+     * @return the delta; empty sides if nothing changed
+     */
+    public static TaskDelta of(Task before, Task after) {
+        if (before == null) {
+            return new TaskDelta(after.getTaskId(), null, withoutNulls(TasksRepository.toRecord(after)));
+        }
+        if (after == null) {
+            return new TaskDelta(before.getTaskId(), withoutNulls(TasksRepository.toRecord(before)), null);
+        }
+        Map<String, String> old = TasksRepository.toRecord(before);
+        Map<String, String> now = TasksRepository.toRecord(after);
+        Map<String, String> changedFrom = new LinkedHashMap<>();
+        Map<String, String> changedTo = new LinkedHashMap<>();
+        for (Map.Entry<String, String> column : now.entrySet()) {
+            String previous = old.get(column.getKey());
+            if (!Objects.equals(previous, column.getValue())) {
+                changedFrom.put(column.getKey(), previous);
+                changedTo.put(column.getKey(), column.getValue());
+            }
+        }
+        return new TaskDelta(after.getTaskId(), changedFrom, changedTo);
+    }
+
+    /**
+     * Puts the task in the cache and the write queue as it was after the change (forward)
+     * or before it. A column change to a task that is no longer cached is skipped.
+     */
+    public void apply(boolean forward, TaskPersistenceService persistence) {
+        Map<String, String> target = forward ? after : before;
+        Map<String, String> other = forward ? before : after;
+        TaskCache cache = TaskCache.getInstance();
+        if (target == null) {
+            cache.remove(taskId);
+            persistence.deleteById(taskId);
+            return;
+        }
+        Task task;
+        if (other == null) {
+            task = TasksRepository.fromRecord(target);
+        } else {
+            Task current = cache.findById(taskId).orElse(null);
+            if (current == null) return;
+            Map<String, String> record = TasksRepository.toRecord(current);
+            record.putAll(target);
+            task = TasksRepository.fromRecord(record);
+        }
+        cache.add(task);
+        persistence.upsert(task);
+    }
+
+    /**
+     * @return the task as it was before the change, for a delta that removed it; null otherwise
+     */
+    public Task removedTask() {
+        return after == null && before != null ? TasksRepository.fromRecord(before) : null;
+    }
+
+    /**
+     * @return a rough count of the heap bytes this delta holds
+     */
+    public long estimatedBytes() {
+        return RECORD_BYTES + 2L * taskId.length() + bytesOf(before) + bytesOf(after);
+    }
+
+    /**
+     * Encodes the delta as journal fields: task id, which sides exist, then a
+     * column, before, after triple per changed column.
+     */
+    String[] toFields() {
+        Map<String, String> columns = after != null ? after : before;
+        List<String> fields = new ArrayList<>();
+        fields.add(taskId);
+        fields.add(before != null ? "1" : "0");
+        fields.add(after != null ? "1" : "0");
+        for (String column : columns.keySet()) {
+            fields.add(column);
+            fields.add(before != null ? Objects.toString(before.get(column), "") : "");
+            fields.add(after != null ? Objects.toString(after.get(column), "") : "");
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Decodes {@link #toFields()} from the given offset on.
+     */
+    static TaskDelta fromFields(String[] fields, int offset) {
+        boolean hasBefore = "1".equals(fields[offset + 1]);
+        boolean hasAfter = "1".equals(fields[offset + 2]);
+        Map<String, String> before = hasBefore ? new LinkedHashMap<>() : null;
+        Map<String, String> after = hasAfter ? new LinkedHashMap<>() : null;
+        for (int i = offset + 3; i + 2 < fields.length; i += 3) {
+            if (hasBefore) before.put(fields[i], fields[i + 1]);
+            if (hasAfter) after.put(fields[i], fields[i + 2]);
+        }
+        return new TaskDelta(fields[offset], before, after);
+    }
+
+    private static Map<String, String> withoutNulls(Map<String, String> record) {
+        // An empty string is a value the task had; only a null column is left out
+        record.values().removeIf(Objects::isNull);
+        return record;
+    }
+
+    private static long bytesOf(Map<String, String> columns) {
+        if (columns == null) return 0;
+        long bytes = 0;
+        for (Map.Entry<String, String> column : columns.entrySet()) {
+            bytes += ENTRY_BYTES + 2L * column.getKey().length()
+                    + (column.getValue() != null ? 2L * column.getValue().length() : 0);
+        }
+        return bytes;
+    }
+}
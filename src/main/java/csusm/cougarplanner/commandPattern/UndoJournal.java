@@ -0,0 +1,296 @@
+package csusm.cougarplanner.commandPattern;
+
+import csusm.cougarplanner.io.RecordJournal;
+import csusm.cougarplanner.services.TaskPersistenceService;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk copy of a {@link CommandManager}'s undo/redo history, so the history survives
+ * restarts and steps the manager evicts to stay within its memory budget can be read back.
+ * <p>
+ * The journal is an append-only {@link RecordJournal} of history events: a step executed
+ * (with its {@link TaskDelta}s), undone, redone, or dropped because its write failed.
+ * Replaying the events rebuilds both stacks. Appends go through one background thread in
+ * order, so the UI thread never waits on them. On load the journal is rewritten to just
+ * the steps still reachable, at most {@link #MAX_STEPS} of them.
+ * <p>
+ * Only steps whose command has {@link Command#deltas()} are journaled.
+ */
+public class UndoJournal {
+
+    // Steps kept on disk; older ones are dropped when the journal is rewritten on load
+    private static final int MAX_STEPS = 500;
+
+    // Record kinds: the first field of every record, followed by the step id
+    private static final String EXECUTED = "E";
+    private static final String DELTA = "D";
+    private static final String UNDONE = "U";
+    private static final String REDONE = "R";
+    private static final String DROPPED = "X";
+
+    private final RecordJournal journal;
+    private final TaskPersistenceService persistence;
+    private final ExecutorService writer;
+
+    /**
+     * One step of the history.
+     *
+     * @param bytes the command's estimated heap cost when the step was recorded
+     */
+    record Entry(long id, Command command, long bytes) {}
+
+    /**
+     * Steps read back from the journal.
+     *
+     * @param undo undo steps, oldest first
+     * @param redo redo steps, next to redo first
+     * @param olderOnDisk true if older undo steps were left on disk to keep within the budget
+     * @param nextId the id for the next new step
+     */
+    record History(List<Entry> undo, List<Entry> redo, boolean olderOnDisk, long nextId) {}
+
+    public UndoJournal(Path path, TaskPersistenceService persistence) {
+        this.journal = RecordJournal.open(path);
+        this.persistence = persistence;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "undo-journal-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The writer is a daemon, so anything still queued on exit would be lost
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flushAndWait(2, TimeUnit.SECONDS), "undo-journal-flush"));
+    }
+
+    /**
+     * Blocks until every history event queued so far is on disk, or the timeout passes.
+     *
+     * @return true if everything queued before the call was written
+     */
+    public boolean flushAndWait(long timeout, TimeUnit unit) {
+        try {
+            writer.submit(() -> { }).get(timeout, unit);
+            return true;
+        } catch (Exception e) {
+            System.err.println("Could not flush undo history: " + e.getMessage());
+            return false;
+        }
+    }
+
+    void executed(long id, List<TaskDelta> deltas) {
+        List<String[]> records = new ArrayList<>(deltas.size() + 1);
+        records.add(new String[] {EXECUTED, Long.toString(id)});
+        for (TaskDelta delta : deltas) {
+            records.add(deltaRecord(id, delta));
+        }
+        append(records);
+    }
+
+    void undone(long id) {
+        append(List.<String[]>of(new String[] {UNDONE, Long.toString(id)}));
+    }
+
+    void redone(long id) {
+        append(List.<String[]>of(new String[] {REDONE, Long.toString(id)}));
+    }
+
+    void dropped(long id) {
+        append(List.<String[]>of(new String[] {DROPPED, Long.toString(id)}));
+    }
+
+    /**
+     * Reads the history back at startup and rewrites the journal to the steps still reachable.
+     * Every redo step is loaded; undo steps are loaded newest first until the budget is used up.
+     *
+     * @param budgetBytes how much the loaded steps may hold
+     * @return the loaded history, empty if there is no journal or it can't be read
+     */
+    History load(long budgetBytes) {
+        try {
+            List<String[]> records = journal.readAll();
+            Replay replay = replay(records);
+            List<Long> undoIds = replay.undoIds();
+            if (undoIds.size() > MAX_STEPS) {
+                undoIds = undoIds.subList(undoIds.size() - MAX_STEPS, undoIds.size());
+            }
+            List<Long> redoIds = replay.redoIds();
+            if (!records.isEmpty()) {
+                journal.rewrite(compacted(replay, undoIds, redoIds));
+            }
+
+            List<Entry> redo = new ArrayList<>();
+            for (long id : redoIds) {
+                redo.add(entry(id, replay.deltas.get(id)));
+            }
+            return window(replay, undoIds, budgetBytes, redo);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not read undo history: " + e.getMessage());
+            return new History(List.of(), List.of(), false, 0);
+        }
+    }
+
+    /**
+     * Reads the newest undo steps the manager no longer holds, once it has none left in memory.
+     *
+     * @param budgetBytes how much the loaded steps may hold
+     * @return the steps; redo is always empty since the manager keeps every redo step
+     */
+    History loadOlder(long budgetBytes) {
+        try {
+            // Anything still queued must be on disk, or the replay would miss it
+            writer.submit(() -> { }).get();
+            Replay replay = replay(journal.readAll());
+            return window(replay, replay.undoIds(), budgetBytes, List.of());
+        } catch (IOException | InterruptedException | ExecutionException | RuntimeException e) {
+            System.err.println("Could not read undo history: " + e.getMessage());
+            return new History(List.of(), List.of(), false, 0);
+        }
+    }
+
+    private void append(List<String[]> records) {
+        writer.execute(() -> {
+            try {
+                journal.append(records);
+            } catch (IOException e) {
+                System.err.println("Could not write undo history: " + e.getMessage());
+            }
+        });
+    }
+
+    // Takes undo steps newest first until the budget is used up; at least one
+    private History window(Replay replay, List<Long> undoIds, long budgetBytes, List<Entry> redo) {
+        List<Entry> undo = new ArrayList<>();
+        long bytes = 0;
+        int i = undoIds.size() - 1;
+        for (; i >= 0; i--) {
+            Entry entry = entry(undoIds.get(i), replay.deltas.get(undoIds.get(i)));
+            if (!undo.isEmpty() && bytes + entry.bytes() > budgetBytes) break;
+            bytes += entry.bytes();
+            undo.add(0, entry);
+        }
+        return new History(undo, redo, i >= 0, replay.maxId + 1);
+    }
+
+    private Entry entry(long id, List<TaskDelta> deltas) {
+        Command command = new DeltaCommand(persistence, deltas);
+        return new Entry(id, command, command.estimatedBytes());
+    }
+
+    /**
+     * Events that rebuild the given stacks: the undo steps executed oldest first, then the
+     * redo steps executed in the order they were first done and undone in reverse.
+     */
+    private static List<String[]> compacted(Replay replay, List<Long> undoIds, List<Long> redoIds) {
+        List<String[]> records = new ArrayList<>();
+        for (long id : undoIds) {
+            addExecuted(records, id, replay.deltas.get(id));
+        }
+        for (long id : redoIds) {
+            addExecuted(records, id, replay.deltas.get(id));
+        }
+        for (int i = redoIds.size() - 1; i >= 0; i--) {
+            records.add(new String[] {UNDONE, Long.toString(redoIds.get(i))});
+        }
+        return records;
+    }
+
+    private static void addExecuted(List<String[]> records, long id, List<TaskDelta> deltas) {
+        records.add(new String[] {EXECUTED, Long.toString(id)});
+        for (TaskDelta delta : deltas) {
+            records.add(deltaRecord(id, delta));
+        }
+    }
+
+    private static String[] deltaRecord(long id, TaskDelta delta) {
+        String[] fields = delta.toFields();
+        String[] record = new String[fields.length + 2];
+        record[0] = DELTA;
+        record[1] = Long.toString(id);
+        System.arraycopy(fields, 0, record, 2, fields.length);
+        return record;
+    }
+
+    /**
+     * The stacks as the journal's events leave them. Events that don't match the
+     * stack they move (e.g. for a step that was never journaled) are ignored.
+     */
+    private static final class Replay {
+        final Deque<Long> undo = new ArrayDeque<>();
+        final Deque<Long> redo = new ArrayDeque<>();
+        final Map<Long, List<TaskDelta>> deltas = new HashMap<>();
+        final Map<Long, List<Long>> clearedRedos = new HashMap<>();
+        long maxId = -1;
+
+        // Oldest first
+        List<Long> undoIds() {
+            List<Long> ids = new ArrayList<>(undo);
+            Collections.reverse(ids);
+            return ids;
+        }
+
+        // Next to redo first
+        List<Long> redoIds() {
+            return new ArrayList<>(redo);
+        }
+    }
+
+    private static Replay replay(List<String[]> records) {
+        Replay replay = new Replay();
+        for (String[] record : records) {
+            if (record.length < 2) continue;
+            long id;
+            try {
+                id = Long.parseLong(record[1]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            replay.maxId = Math.max(replay.maxId, id);
+            switch (record[0]) {
+                case EXECUTED -> {
+                    replay.undo.push(id);
+                    replay.clearedRedos.put(id, new ArrayList<>(replay.redo));
+                    replay.redo.clear();
+                    replay.deltas.put(id, new ArrayList<>());
+                }
+                case DELTA -> {
+                    List<TaskDelta> deltas = replay.deltas.get(id);
+                    if (deltas != null && record.length >= 5) deltas.add(TaskDelta.fromFields(record, 2));
+                }
+                case UNDONE -> move(replay.undo, replay.redo, id);
+                case REDONE -> move(replay.redo, replay.undo, id);
+                case DROPPED -> {
+                    if (isTop(replay.undo, id)) {
+                        replay.undo.pop();
+                        List<Long> cleared = replay.clearedRedos.getOrDefault(id, List.of());
+                        for (int i = cleared.size() - 1; i >= 0; i--) {
+                            replay.redo.push(cleared.get(i));
+                        }
+                    }
+                }
+                default -> { }
+            }
+        }
+        return replay;
+    }
+
+    private static void move(Deque<Long> from, Deque<Long> to, long id) {
+        if (isTop(from, id)) to.push(from.pop());
+    }
+
+    private static boolean isTop(Deque<Long> stack, long id) {
+        Long top = stack.peek();
+        return top != null && top == id;
+    }
+}
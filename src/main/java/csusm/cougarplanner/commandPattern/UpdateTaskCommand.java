@@ -1,27 +1,36 @@
 package csusm.cougarplanner.commandPattern;
 
-import csusm.cougarplanner.io.TasksRepository;
 import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.TaskPersistenceService;
+
+import java.util.Map;
 
 /**
  * Command that persists an in-row edit to a task (e.g. title or description
  * change). Marked non-undoable on purpose: text-field edits fire one command
  * per keystroke, and adding each keystroke to the undo stack would make Ctrl+Z
  * useless. See {@link Command#isUndoable()} for the broader policy.
+ * <p>
+ * Only the columns that differ between the row's last saved copy and the edited
+ * task are queued, as a patch, so a retitle writes the id and the new title
+ * rather than the whole task.
  */
 public class UpdateTaskCommand implements Command {
 
-    private final TasksRepository tasksRepository;
+    private final TaskPersistenceService persistence;
+    private final Task savedTask;
     private final Task updatedTask;
 
-    public UpdateTaskCommand(TasksRepository tasksRepository, Task updatedTask) {
-        this.tasksRepository = tasksRepository;
+    public UpdateTaskCommand(TaskPersistenceService persistence, Task savedTask, Task updatedTask) {
+        this.persistence = persistence;
+        this.savedTask = savedTask;
         this.updatedTask = updatedTask;
     }
 
     @Override
     public void execute() throws Exception {
-        tasksRepository.upsert(updatedTask);
+        Map<String, String> changed = TaskDelta.of(savedTask, updatedTask).after();
+        persistence.patch(updatedTask.getTaskId(), changed);
     }
 
     @Override
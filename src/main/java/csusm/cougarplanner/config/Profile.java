@@ -39,6 +39,11 @@ public class Profile
         defaults.put("lastViewedDay", "");
         defaults.put("theme", "cougar");
         defaults.put("selectedView", "Assignments");
+        defaults.put("storageEngine", "csv");
+        defaults.put("storageLayout", "flat");
+        defaults.put("parallelParseThresholdKb", "4096");
+        defaults.put("archiveHorizonDays", "180");
+        defaults.put("undoHistoryBudgetKb", "1024");
         return defaults;
     }
 
@@ -200,6 +205,80 @@ public class Profile
         return properties.get("selectedView");
     }
 
+    /**
+     * Gets the storage engine the data files are kept in.
+     *
+     * @return csv or binary
+     */
+    public String getStorageEngine()
+    {
+        return properties.get("storageEngine");
+    }
+
+    /**
+     * Gets the layout assignments and announcements are stored in.
+     *
+     * @return flat (one file per table) or weekly (one file per ISO week)
+     */
+    public String getStorageLayout()
+    {
+        return properties.get("storageLayout");
+    }
+
+    /**
+     * Gets the data file size from which files are parsed on several cores.
+     *
+     * @return the threshold in kilobytes, or the default of 4096 if the value is not a positive number
+     */
+    public long getParallelParseThresholdKb()
+    {
+        try
+        {
+            long kb = Long.parseLong(properties.get("parallelParseThresholdKb").trim());
+            return kb > 0 ? kb : 4096;
+        }
+        catch (NumberFormatException | NullPointerException e)
+        {
+            return 4096;
+        }
+    }
+
+    /**
+     * Gets how old an assignment or announcement must be before it is moved to the semester archives.
+     *
+     * @return the horizon in days, or the default of 180 if the value is not a positive number
+     */
+    public int getArchiveHorizonDays()
+    {
+        try
+        {
+            int days = Integer.parseInt(properties.get("archiveHorizonDays").trim());
+            return days > 0 ? days : 180;
+        }
+        catch (NumberFormatException | NullPointerException e)
+        {
+            return 180;
+        }
+    }
+
+    /**
+     * Gets how much memory the task undo/redo history may hold; older steps stay on disk.
+     *
+     * @return the budget in kilobytes, or the default of 1024 if the value is not a positive number
+     */
+    public long getUndoHistoryBudgetKb()
+    {
+        try
+        {
+            long kb = Long.parseLong(properties.get("undoHistoryBudgetKb").trim());
+            return kb > 0 ? kb : 1024;
+        }
+        catch (NumberFormatException | NullPointerException e)
+        {
+            return 1024;
+        }
+    }
+
     /**
      * Checks if the user has completed the initial login.
      *
@@ -400,6 +479,56 @@ public class Profile
         properties.put("selectedView", view);
     }
 
+    /**
+     * Sets the storage engine the data files are kept in. Takes effect on the next launch.
+     *
+     * @param storageEngine csv or binary
+     */
+    public void setStorageEngine(String storageEngine)
+    {
+        properties.put("storageEngine", storageEngine);
+    }
+
+    /**
+     * Sets the layout assignments and announcements are stored in. Takes effect on the next launch.
+     *
+     * @param storageLayout flat or weekly
+     */
+    public void setStorageLayout(String storageLayout)
+    {
+        properties.put("storageLayout", storageLayout);
+    }
+
+    /**
+     * Sets the data file size from which files are parsed on several cores. Takes effect on the next launch.
+     *
+     * @param kilobytes the threshold in kilobytes
+     */
+    public void setParallelParseThresholdKb(long kilobytes)
+    {
+        properties.put("parallelParseThresholdKb", String.valueOf(kilobytes));
+    }
+
+    /**
+     * Sets how old an assignment or announcement must be before it is archived. Takes effect on the next launch.
+     *
+     * @param days the horizon in days
+     */
+    public void setArchiveHorizonDays(int days)
+    {
+        properties.put("archiveHorizonDays", String.valueOf(days));
+    }
+
+    /**
+     * Sets how much memory the task undo/redo history may hold. Takes effect on the next launch.
+     *
+     * @param kb the budget in kilobytes
+     */
+    public void setUndoHistoryBudgetKb(long kb)
+    {
+        properties.put("undoHistoryBudgetKb", String.valueOf(kb));
+    }
+
     /**
      * Gets a copy of all config properties for serialization.
      *
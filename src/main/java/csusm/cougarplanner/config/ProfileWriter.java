@@ -108,7 +108,12 @@ public class ProfileWriter
                         "lastViewedWeekStart",          // Last viewed week context
                         "lastViewedDay",                // Last viewed day context
                         "theme",                        // UI theme (cougar/dark/sunset)
-                        "selectedView"                  // Last selected main view
+                        "selectedView",                 // Last selected main view
+                        "storageEngine",                // Data file format (csv/binary)
+                        "storageLayout",                // Assignment/announcement files (flat/weekly)
+                        "parallelParseThresholdKb",     // File size that switches to parallel parsing
+                        "archiveHorizonDays",           // Age at which rows move to the semester archives
+                        "undoHistoryBudgetKb"           // Memory the task undo history may hold
                 };
 
         for (String key : keyOrder)
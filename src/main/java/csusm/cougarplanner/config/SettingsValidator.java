@@ -22,6 +22,11 @@ public class SettingsValidator
     private static final String DEFAULT_SORT_MODE = "date_time";
     private static final String DEFAULT_SORT_DIFFICULTY_ORDER = "ascending";
     private static final String DEFAULT_THEME = "cougar";
+    private static final String DEFAULT_STORAGE_ENGINE = "csv";
+    private static final String DEFAULT_STORAGE_LAYOUT = "flat";
+    private static final long DEFAULT_PARALLEL_PARSE_THRESHOLD_KB = 4096;
+    private static final int DEFAULT_ARCHIVE_HORIZON_DAYS = 180;
+    private static final long DEFAULT_UNDO_HISTORY_BUDGET_KB = 1024;
 
     /**
      * Validates all Profile config values and replaces invalid values with defaults,
@@ -81,6 +86,41 @@ public class SettingsValidator
             validationWarnings.add("Invalid value for theme: '" + theme + "'. Replacing with default value: " + DEFAULT_THEME + ".");
         }
 
+        String storageEngine = profile.getStorageEngine();
+        if (!isValidStorageEngine(storageEngine))
+        {
+            profile.setStorageEngine(DEFAULT_STORAGE_ENGINE);
+            validationWarnings.add("Invalid value for storageEngine: '" + storageEngine + "'. Replacing with default value: " + DEFAULT_STORAGE_ENGINE + ".");
+        }
+
+        String storageLayout = profile.getStorageLayout();
+        if (!isValidStorageLayout(storageLayout))
+        {
+            profile.setStorageLayout(DEFAULT_STORAGE_LAYOUT);
+            validationWarnings.add("Invalid value for storageLayout: '" + storageLayout + "'. Replacing with default value: " + DEFAULT_STORAGE_LAYOUT + ".");
+        }
+
+        String parallelParseThresholdKb = profile.getAllProperties().get("parallelParseThresholdKb");
+        if (!isValidPositiveNumber(parallelParseThresholdKb))
+        {
+            profile.setParallelParseThresholdKb(DEFAULT_PARALLEL_PARSE_THRESHOLD_KB);
+            validationWarnings.add("Invalid value for parallelParseThresholdKb: '" + parallelParseThresholdKb + "'. Replacing with default value: " + DEFAULT_PARALLEL_PARSE_THRESHOLD_KB + ".");
+        }
+
+        String archiveHorizonDays = profile.getAllProperties().get("archiveHorizonDays");
+        if (!isValidPositiveNumber(archiveHorizonDays))
+        {
+            profile.setArchiveHorizonDays(DEFAULT_ARCHIVE_HORIZON_DAYS);
+            validationWarnings.add("Invalid value for archiveHorizonDays: '" + archiveHorizonDays + "'. Replacing with default value: " + DEFAULT_ARCHIVE_HORIZON_DAYS + ".");
+        }
+
+        String undoHistoryBudgetKb = profile.getAllProperties().get("undoHistoryBudgetKb");
+        if (!isValidPositiveNumber(undoHistoryBudgetKb))
+        {
+            profile.setUndoHistoryBudgetKb(DEFAULT_UNDO_HISTORY_BUDGET_KB);
+            validationWarnings.add("Invalid value for undoHistoryBudgetKb: '" + undoHistoryBudgetKb + "'. Replacing with default value: " + DEFAULT_UNDO_HISTORY_BUDGET_KB + ".");
+        }
+
         // Combines existing errors with new validation warnings
         List<String> allMessages = new ArrayList<>();
         if (existingErrors != null)
@@ -207,6 +247,46 @@ public class SettingsValidator
         return theme != null && ("cougar".equalsIgnoreCase(theme) || "dark".equalsIgnoreCase(theme) || "sunset".equalsIgnoreCase(theme));
     }
 
+    /**
+     * Checks if storage engine value is valid.
+     *
+     * @param storageEngine the storage engine value to validate
+     * @return true if valid ("csv" or "binary"), false otherwise
+     */
+    private boolean isValidStorageEngine(String storageEngine)
+    {
+        return storageEngine != null && ("csv".equalsIgnoreCase(storageEngine) || "binary".equalsIgnoreCase(storageEngine));
+    }
+
+    /**
+     * Checks if storage layout value is valid.
+     *
+     * @param storageLayout the storage layout value to validate
+     * @return true if valid ("flat" or "weekly"), false otherwise
+     */
+    private boolean isValidStorageLayout(String storageLayout)
+    {
+        return storageLayout != null && ("flat".equalsIgnoreCase(storageLayout) || "weekly".equalsIgnoreCase(storageLayout));
+    }
+
+    /**
+     * Checks if a value is a whole number greater than zero.
+     *
+     * @param value the value to validate
+     * @return true if valid, false otherwise
+     */
+    private boolean isValidPositiveNumber(String value)
+    {
+        try
+        {
+            return value != null && Long.parseLong(value.trim()) > 0;
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
     /**
      * Represents the result of profile validation.
      * Contains the validated Profile object and all error/warning messages.
@@ -4,16 +4,17 @@ import csusm.cougarplanner.FilterPattern.*;
 import csusm.cougarplanner.io.CoursesRepository;
 import csusm.cougarplanner.models.Course;
 import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.CompressedBitmap;
 import csusm.cougarplanner.services.TaskCache;
 import javafx.collections.FXCollections;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
 import javafx.scene.layout.HBox;
 
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Builds and owns the filter bar above the task list (course, priority,
@@ -22,6 +23,11 @@ import java.util.stream.Collectors;
  * defaults and notifies the host controller via the {@code onFilterChange}
  * callback so it can refresh the visible rows.
  * <p>
+ * Each option of the course, priority, status and due-date dropdowns shows how many
+ * tasks picking it would leave, given what the other dropdowns are set to. The counts
+ * come from the task cache's bitmap indexes, so {@link #refreshCounts()} never reads a
+ * task; the host calls it whenever the tasks or the filter change.
+ * <p>
  * This class is not a JavaFX FXML controller — it's driven programmatically
  * by {@link TaskPanelController}, which hands it the HBox to populate.
  */
@@ -36,6 +42,8 @@ public class FilterBarController {
     private Map<String, String> courseNameToIdMap;
     private ComboBox<String> sortFilter;
     private String currentSortOption = "Sort: Default";
+    // Task count per option of each counted dropdown, as of the last refreshCounts()
+    private final Map<ComboBox<String>, Map<String, Integer>> optionCounts = new HashMap<>();
 
     public FilterBarController(HBox filterBar, Runnable onFilterChange) {
         this.filterBar = filterBar;
@@ -103,7 +111,95 @@ public class FilterBarController {
                 createStyledLabel("Due:"), dateFilter,
                 createStyledLabel("Sort"),sortFilter
         );
+
+        for (ComboBox<String> box : countedFilters()) {
+            showCounts(box);
+        }
     }
+
+    private List<ComboBox<String>> countedFilters() {
+        return List.of(courseFilter, priorityFilter, statusFilter, dateFilter);
+    }
+
+    /**
+     * Recounts every option of the course, priority, status and due-date dropdowns.
+     * An option's count is the tasks left by the other dropdowns' selections that
+     * also match it; an "All …" option's count is every task they leave.
+     */
+    public void refreshCounts() {
+        TaskCache cache = TaskCache.getInstance();
+        for (ComboBox<String> box : countedFilters()) {
+            CompressedBitmap within = cache.allSlots();
+            for (ComboBox<String> other : countedFilters()) {
+                TaskFilter selected = other == box ? null : filterFor(other, other.getValue());
+                if (selected != null) {
+                    within = within.and(selected.slots(cache));
+                }
+            }
+            optionCounts.put(box, countOptions(box, within, cache));
+            showCounts(box);
+        }
+    }
+
+    private Map<String, Integer> countOptions(ComboBox<String> box, CompressedBitmap within, TaskCache cache) {
+        Map<String, Integer> byValue = null;
+        if (box == courseFilter) {
+            byValue = cache.countBy(TaskCache.Facet.COURSE, within);
+        } else if (box == priorityFilter) {
+            byValue = cache.countBy(TaskCache.Facet.PRIORITY, within);
+        } else if (box == statusFilter) {
+            byValue = cache.countBy(TaskCache.Facet.STATUS, within);
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (String option : box.getItems()) {
+            TaskFilter filter = filterFor(box, option);
+            if (filter == null) {
+                counts.put(option, within.cardinality());
+            } else if (byValue != null) {
+                String value = box == courseFilter ? courseNameToIdMap.get(option) : option;
+                counts.put(option, byValue.getOrDefault(value, 0));
+            } else {
+                counts.put(option, filter.slots(cache).andCardinality(within));
+            }
+        }
+        return counts;
+    }
+
+    // Fresh cells, since the popup's existing cells only redraw when their option changes
+    private void showCounts(ComboBox<String> box) {
+        box.setCellFactory(list -> new CountedCell(box));
+        box.setButtonCell(new CountedCell(box));
+    }
+
+    /**
+     * Shows an option with its count, e.g. "high (3)", leaving the option's value as is.
+     */
+    private class CountedCell extends ListCell<String> {
+        private final ComboBox<String> box;
+
+        CountedCell(ComboBox<String> box) {
+            this.box = box;
+        }
+
+        @Override
+        protected void updateItem(String item, boolean empty) {
+            super.updateItem(item, empty);
+            if (empty || item == null) {
+                setText(null);
+                return;
+            }
+            Integer count = optionCounts.getOrDefault(box, Map.of()).get(item);
+            setText(count != null ? item + " (" + count + ")" : item);
+        }
+    }
+    /**
+     * @return the loaded courses' ids by course name, for actions that pick a course by name
+     */
+    public Map<String, String> getCourseNameToIdMap() {
+        return Collections.unmodifiableMap(courseNameToIdMap);
+    }
+
     private List<String> loadCourses() {
         List<String> courseNames = new ArrayList<>();
         try {
@@ -139,47 +235,10 @@ public class FilterBarController {
      */
     private void applyFilters() {
         AndFilter andFilter = new AndFilter();
-
-        // Add course filter
-        if (!"All Courses".equals(courseFilter.getValue())) {
-            String selectedCourseName = courseFilter.getValue();
-            String courseId = courseNameToIdMap.get(selectedCourseName);
-            if (courseId != null) {
-                andFilter.addFilter(new CourseFilter(courseId)); // Pass course ID
-            }
-        }
-
-        // Add priority filter
-        if (!"All Priorities".equals(priorityFilter.getValue())) {
-            andFilter.addFilter(new PriorityFilter(priorityFilter.getValue()));
-        }
-
-        // Add status filter
-        if (!"All Statuses".equals(statusFilter.getValue())) {
-            andFilter.addFilter(new StatusFilter(statusFilter.getValue()));
-        }
-
-        // Add date filter
-        String dateChoice = dateFilter.getValue();
-        if (dateChoice != null && !"All Dates".equals(dateChoice)) {
-            switch (dateChoice) {
-                case "Today":
-                    andFilter.addFilter(new DueDateFilter(LocalDate.now(), "eq"));
-                    break;
-                case "This Week":
-                    // getDayOfWeek().getValue() returns 1 (Mon) to 7 (Sun), so this rolls
-                    // the target date forward to the upcoming Sunday (end of the current week).
-                    LocalDate endOfWeek = LocalDate.now().plusDays(7 - LocalDate.now().getDayOfWeek().getValue());
-                    andFilter.addFilter(new DueDateFilter(endOfWeek, "onOrBefore"));
-                    break;
-                case "Overdue":
-                    andFilter.addFilter(new DueDateFilter(LocalDate.now(), "before"));
-                    break;
-                case "No Due Date":
-                    andFilter.addFilter(tasks -> tasks.stream()
-                            .filter(t -> t.getDueDate() == null || t.getDueDate().isBlank())
-                            .collect(Collectors.toList()));
-                    break;
+        for (ComboBox<String> box : countedFilters()) {
+            TaskFilter filter = filterFor(box, box.getValue());
+            if (filter != null) {
+                andFilter.addFilter(filter);
             }
         }
 
@@ -194,6 +253,43 @@ public class FilterBarController {
         }
     }
 
+    /**
+     * Builds the filter one option of a dropdown stands for.
+     *
+     * @return the filter, or null for an "All …" option or a course that isn't loaded
+     */
+    private TaskFilter filterFor(ComboBox<String> box, String option) {
+        if (option == null) {
+            return null;
+        }
+        if (box == courseFilter) {
+            if ("All Courses".equals(option)) return null;
+            String courseId = courseNameToIdMap.get(option);
+            return courseId != null ? new CourseFilter(courseId) : null; // Pass course ID
+        }
+        if (box == priorityFilter) {
+            return "All Priorities".equals(option) ? null : new PriorityFilter(option);
+        }
+        if (box == statusFilter) {
+            return "All Statuses".equals(option) ? null : new StatusFilter(option);
+        }
+        switch (option) {
+            case "Today":
+                return new DueDateFilter(LocalDate.now(), "eq");
+            case "This Week":
+                // getDayOfWeek().getValue() returns 1 (Mon) to 7 (Sun), so this rolls
+                // the target date forward to the upcoming Sunday (end of the current week).
+                LocalDate endOfWeek = LocalDate.now().plusDays(7 - LocalDate.now().getDayOfWeek().getValue());
+                return new DueDateFilter(endOfWeek, "onOrBefore");
+            case "Overdue":
+                return new DueDateFilter(LocalDate.now(), "before");
+            case "No Due Date":
+                return new DueDateFilter(null, "none");
+            default:
+                return null;
+        }
+    }
+
     public TaskFilter getCurrentFilter() {
         return currentFilter;
     }
@@ -8,6 +8,7 @@ import csusm.cougarplanner.config.ProfileWriter;
 import csusm.cougarplanner.io.AnnouncementsRepository;
 import csusm.cougarplanner.io.AssignmentsRepository;
 import csusm.cougarplanner.io.CoursesRepository;
+import csusm.cougarplanner.io.DataTransaction;
 import csusm.cougarplanner.models.*;
 import csusm.cougarplanner.services.CanvasService;
 import csusm.cougarplanner.theme.ThemeManager;
@@ -696,10 +697,11 @@ public class MainPageController implements Initializable {
             if (!courses.isEmpty() && !announcements.isEmpty()) {
                 apiSuccess = true;
 
-                // Save announcements to CSV
-                try {
+                // Save announcements to CSV; both tables are published together or not at all
+                try (DataTransaction transaction = DataTransaction.begin()) {
                     coursesRepository.upsertAll(courses);
                     announcementsRepository.upsertAll(announcements);
+                    transaction.commit();
                 } catch (IOException e) {
                     System.err.println("Error saving announcements to CSV: " + e.getMessage());
                 }
@@ -710,12 +712,20 @@ public class MainPageController implements Initializable {
 
         // Fallback to CSV if API fails or returns empty
         if (!apiSuccess) {
+            List<Course> storedCourses = new ArrayList<>();
+            List<Announcement> storedAnnouncements = new ArrayList<>();
             try {
-                courses = coursesRepository.findAll();
-                announcements = announcementsRepository.findByWeek(
-                        week.startIncl(),
-                        week.endExcl()
-                );
+                // Both tables from the same sync, never one from before a commit and one from after
+                DataTransaction.readConsistent(() -> {
+                    storedCourses.addAll(coursesRepository.findAll());
+                    storedAnnouncements.addAll(announcementsRepository.findByWeek(
+                            week.startIncl(),
+                            week.endExcl()
+                    ));
+                    return null;
+                });
+                courses = storedCourses;
+                announcements = storedAnnouncements;
             } catch (IOException e) {
                 System.err.println("Error reading announcements from CSV: " + e.getMessage());
             }
@@ -2,15 +2,24 @@ package csusm.cougarplanner.controllers;
 
 import csusm.cougarplanner.FilterPattern.TaskFilter;
 import csusm.cougarplanner.commandPattern.*;
-import csusm.cougarplanner.io.TasksRepository;
+import csusm.cougarplanner.io.CsvPaths;
 import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.DataDirectoryWatcher;
 import csusm.cougarplanner.services.TaskCache;
+import csusm.cougarplanner.services.TaskCacheEvent;
+import csusm.cougarplanner.services.TaskPersistenceService;
 import csusm.cougarplanner.theme.ThemeManager;
+import javafx.application.Platform;
+import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.MenuButton;
+import javafx.scene.control.MenuItem;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
@@ -19,7 +28,12 @@ import javafx.stage.StageStyle;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Objects;
 import java.util.ResourceBundle;
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -34,33 +48,62 @@ import csusm.cougarplanner.FilterPattern.AndFilter;
  * Wires together the three subsystems that drive this tab:
  * <ul>
  *   <li>The {@link TaskCache} singleton, which mirrors tasks.csv in memory</li>
- *   <li>The {@link TasksRepository}, which reads/writes the CSV file</li>
+ *   <li>The {@link TaskPersistenceService}, which writes changes to the CSV
+ *       file in the background</li>
  *   <li>The {@link CommandManager}, which routes every mutation through
  *       the Command pattern so add/delete/toggle are undoable</li>
  * </ul>
  * Every user action (add, delete, toggle, undo, redo) goes through the
- * command manager, then calls {@link #refreshTaskList()} to rebuild the
- * visible rows and {@link #updateUndoRedoButtons()} to re-enable/disable
+ * command manager, then calls {@link #refreshTaskList()} to patch the
+ * rows of the tasks the {@link TaskCacheEvent}s name and {@link #updateUndoRedoButtons()} to re-enable/disable
  * the undo/redo buttons. The only exception is in-row field edits, which
  * intentionally skip the undo stack and the list refresh (see {@link #handleUpdate}).
+ * <p>
+ * The bulk actions in the footer (complete, set priority, move to course) act on the tasks
+ * currently shown, after filtering. Each runs as one {@link CompositeCommand}: a single undo
+ * step and a single write to tasks.csv, however many tasks it touches.
+ * <p>
+ * Commands run in the command manager's async mode: the list updates at once and tasks.csv
+ * is written in the background. If a write fails, the commands it held are undone and the
+ * footer says so.
  */
 public class TaskPanelController implements Initializable
 {
-    private final CommandManager cmdManager = new CommandManager();
-    private final TasksRepository tasksRepo = new TasksRepository();
+    private final TaskPersistenceService persistence = TaskPersistenceService.getInstance();
+    // Async: the cache changes at once and a command whose write fails is undone (see onWriteRolledBack).
+    // The history is journaled to data/undo.journal, so it survives restarts.
+    private final CommandManager cmdManager = new CommandManager(persistence::whenWritten, Platform::runLater,
+            this::onWriteRolledBack, new UndoJournal(CsvPaths.getUndoJournalPath(), persistence));
 
     @FXML private HBox   filterBar;
     @FXML private VBox   taskListContainer;
     @FXML private Button undoButton;
     @FXML private Button redoButton;
+    @FXML private MenuButton moveToCourseButton;
+    @FXML private Label saveErrorLabel;
     private FilterBarController filterBarController;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MM-dd-yyyy");
 
+    // What the visible rows were built from, so a refresh with nothing new can be skipped
+    private long renderedVersion = -1;
+    private TaskFilter renderedFilter;
+    private String renderedSortOption;
+
+    // Rows on screen by task id, reused across refreshes; only rows of changed tasks are refreshed
+    private record TaskRow(VBox root, TaskRowController controller) {}
+    private Map<String, TaskRow> rowsById = new HashMap<>();
+    private final Set<String> changedTaskIds = new HashSet<>();
+    private boolean cacheCleared;
+
+    // The tasks the visible rows show, in order; what the bulk actions apply to
+    private List<Task> displayedTasks = List.of();
+
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle)
     {
         hydrateCacheFromCsv();
+        TaskCache.getInstance().addListener(this::onTaskCacheChanged);
         filterBarController = new FilterBarController(
                 filterBar,
                 this::refreshTaskList
@@ -74,9 +117,17 @@ public class TaskPanelController implements Initializable
             refreshTaskList();
         });
         filterBar.getChildren().add(clearFiltersBtn);
+        populateMoveToCourseMenu();
 
         refreshTaskList();
         updateUndoRedoButtons();
+
+        // Tasks edited outside the app are merged into the cache by the watcher; redraw when they are
+        DataDirectoryWatcher watcher = DataDirectoryWatcher.getInstance();
+        if (watcher != null)
+        {
+            watcher.setOnTasksChanged(this::refreshTaskList);
+        }
     }
 
     // Loads tasks.csv into the in-memory cache so tasks persist across app restarts.
@@ -86,7 +137,7 @@ public class TaskPanelController implements Initializable
         cache.removeAll();
         try
         {
-            List<Task> fromDisk = tasksRepo.findAll();
+            List<Task> fromDisk = persistence.findAll();
             for (Task t : fromDisk)
             {
                 cache.add(t);
@@ -98,46 +149,108 @@ public class TaskPanelController implements Initializable
         }
     }
 
+    // Notes which rows are stale; the next refreshTaskList() patches them all at once.
+    private void onTaskCacheChanged(TaskCacheEvent event)
+    {
+        if (event.kind() == TaskCacheEvent.Kind.CLEARED)
+        {
+            cacheCleared = true;
+            changedTaskIds.clear();
+        }
+        else
+        {
+            changedTaskIds.add(event.taskId());
+        }
+    }
+
     /**
-     * Clears and rebuilds the task list from the cache.
+     * Brings the task list in line with the cache.
      * Called after any add, delete, toggle, undo, or redo.
+     * Does nothing if the cache version, filter and sort are the ones the rows were built from,
+     * e.g. after an undo with nothing to undo. Otherwise works out which tasks are visible and
+     * reconciles the rows by task id: rows of unchanged tasks are kept as they are, rows of
+     * changed tasks are refreshed in place, and TaskRow.fxml is loaded only for tasks that have
+     * no row yet. The container's children are replaced only if the order of rows changed.
      */
     public void refreshTaskList()
     {
-        taskListContainer.getChildren().clear();
+        TaskCache cache = TaskCache.getInstance();// Kenny's cache
+        TaskCache.Snapshot snapshot = cache.snapshot();
+        TaskFilter activeFilter = filterBarController.getCurrentFilter();
+        String sortOption = filterBarController.getCurrentSortOption();
+        if (snapshot.version() == renderedVersion && activeFilter == renderedFilter
+                && Objects.equals(sortOption, renderedSortOption)) {
+            return;
+        }
+        renderedVersion = snapshot.version();
+        renderedFilter = activeFilter;
+        renderedSortOption = sortOption;
+        filterBarController.refreshCounts();
 
-        List<Task> allTasks = TaskCache.getInstance().getAll();// Kenny's cache
         // Apply the active filter (course/status/priority/due-date combo) if the
         // filter bar has one; otherwise fall through with the full task list.
+        // Filtering goes through the cache's indexes, so only matching tasks are touched.
         List<Task> tasksToDisplay;
-        TaskFilter activeFilter = filterBarController.getCurrentFilter();
 
 
         if (activeFilter != null) {
-            tasksToDisplay = activeFilter.filter(allTasks);
+            tasksToDisplay = activeFilter.filter(cache);
         } else {
-            tasksToDisplay = allTasks;
+            tasksToDisplay = snapshot.tasks();
         }
 
         // Apply sorting
-        String sortOption = filterBarController.getCurrentSortOption();
         tasksToDisplay = sortTasksByDueDate(tasksToDisplay, sortOption);
+        displayedTasks = List.copyOf(tasksToDisplay);
 
+        if (cacheCleared)
+        {
+            // Every task was replaced; none of the old rows can be trusted
+            rowsById.clear();
+            cacheCleared = false;
+        }
+
+        Map<String, TaskRow> visibleRows = new HashMap<>();
+        List<Node> rowNodes = new ArrayList<>(tasksToDisplay.size());
         for (Task task : tasksToDisplay)
         {
-            try
+            TaskRow row = rowsById.get(task.getTaskId());
+            if (row == null)
             {
-                FXMLLoader loader = new FXMLLoader(
-                        getClass().getResource("/csusm/cougarplanner/TaskRow.fxml"));
-                VBox row = loader.load();
-                TaskRowController rowCtrl = loader.getController();
-                rowCtrl.init(task, this::handleDelete, this::handleToggle, this::handleUpdate);
-                taskListContainer.getChildren().add(row);
+                row = loadRow(task);
+                if (row == null) continue;
             }
-            catch (IOException e)
+            else if (changedTaskIds.contains(task.getTaskId()))
             {
-                System.err.println("Could not load TaskRow.fxml: " + e.getMessage());
+                row.controller().refresh(task);
             }
+            visibleRows.put(task.getTaskId(), row);
+            rowNodes.add(row.root());
+        }
+        rowsById = visibleRows;
+        changedTaskIds.clear();
+
+        if (!rowNodes.equals(taskListContainer.getChildren()))
+        {
+            taskListContainer.getChildren().setAll(rowNodes);
+        }
+    }
+
+    private TaskRow loadRow(Task task)
+    {
+        try
+        {
+            FXMLLoader loader = new FXMLLoader(
+                    getClass().getResource("/csusm/cougarplanner/TaskRow.fxml"));
+            VBox row = loader.load();
+            TaskRowController rowCtrl = loader.getController();
+            rowCtrl.init(task, this::handleDelete, this::handleToggle, this::handleUpdate);
+            return new TaskRow(row, rowCtrl);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Could not load TaskRow.fxml: " + e.getMessage());
+            return null;
         }
     }
     /**
@@ -210,7 +323,7 @@ public class TaskPanelController implements Initializable
 
             dialogCtrl.setOnTaskCreated(newTask ->
             {
-                cmdManager.execute(new CreateTaskCommand(tasksRepo, newTask));
+                cmdManager.execute(new CreateTaskCommand(persistence, newTask));
                 refreshTaskList();
                 updateUndoRedoButtons();
             });
@@ -233,7 +346,7 @@ public class TaskPanelController implements Initializable
     @FXML
     private void onDeleteAllClicked()
     {
-        cmdManager.execute(new DeleteAllTasksCommand(tasksRepo));
+        cmdManager.execute(new DeleteAllTasksCommand(persistence));
         refreshTaskList();
         updateUndoRedoButtons();
     }
@@ -254,31 +367,117 @@ public class TaskPanelController implements Initializable
         updateUndoRedoButtons();
     }
 
+    @FXML
+    private void onCompleteShownClicked()
+    {
+        List<Command> commands = new ArrayList<>();
+        for (Task task : displayedTasks)
+        {
+            if (!task.isCompleted())
+            {
+                commands.add(new CompletedTaskCommand(persistence, task.getTaskId()));
+            }
+        }
+        executeBulk(commands);
+    }
+
+    @FXML
+    private void onSetPriorityClicked(ActionEvent event)
+    {
+        // userData holds the stored value, e.g. Task.PRIORITY_HIGH
+        String priority = (String) ((MenuItem) event.getSource()).getUserData();
+        List<Command> commands = new ArrayList<>();
+        for (Task task : displayedTasks)
+        {
+            if (!priority.equals(task.getPriority()))
+            {
+                commands.add(new EditTaskCommand(persistence, task.getTaskId(), t -> t.setPriority(priority)));
+            }
+        }
+        executeBulk(commands);
+    }
+
+    private void moveShownToCourse(String courseId)
+    {
+        List<Command> commands = new ArrayList<>();
+        for (Task task : displayedTasks)
+        {
+            if (!courseId.equals(task.getCourseId()))
+            {
+                commands.add(new EditTaskCommand(persistence, task.getTaskId(), t -> t.setCourseId(courseId)));
+            }
+        }
+        executeBulk(commands);
+    }
+
+    // One menu item per course the filter bar loaded, by name
+    private void populateMoveToCourseMenu()
+    {
+        Map<String, String> courses = filterBarController.getCourseNameToIdMap();
+        List<String> names = new ArrayList<>(courses.keySet());
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        for (String name : names)
+        {
+            MenuItem item = new MenuItem(name);
+            item.setOnAction(e -> moveShownToCourse(courses.get(name)));
+            moveToCourseButton.getItems().add(item);
+        }
+        moveToCourseButton.setDisable(names.isEmpty());
+    }
+
+    // Runs a bulk action as one undo step and one write; does nothing if no task needs changing
+    private void executeBulk(List<Command> commands)
+    {
+        if (commands.isEmpty()) return;
+        cmdManager.execute(new CompositeCommand(persistence, commands));
+        refreshTaskList();
+        updateUndoRedoButtons();
+    }
+
     private void handleDelete(String taskId)
     {
-        cmdManager.execute(new DeleteTaskCommand(tasksRepo, taskId));
+        cmdManager.execute(new DeleteTaskCommand(persistence, taskId));
         refreshTaskList();
         updateUndoRedoButtons();
     }
 
     private void handleToggle(String taskId)
     {
-        cmdManager.execute(new CompletedTaskCommand(tasksRepo, taskId));
+        cmdManager.execute(new CompletedTaskCommand(persistence, taskId));
         refreshTaskList();
         updateUndoRedoButtons();
     }
 
     // Persists in-row edits (title, description, status, priority) to CSV.
-    // Cache is already updated by the row controller; this only writes through.
+    // Cache is already updated by the row controller; this only queues the changed fields.
     // Not added to the undo stack — see UpdateTaskCommand.isUndoable().
     // No refreshTaskList() — rebuilding the list would steal focus mid-edit.
-    private void handleUpdate(Task updated)
+    private void handleUpdate(Task saved, Task updated)
     {
-        cmdManager.execute(new UpdateTaskCommand(tasksRepo, updated));
+        cmdManager.execute(new UpdateTaskCommand(persistence, saved, updated));
+    }
+
+    // Runs on the FX thread once the commands of a failed write (and any after them) were undone
+    private void onWriteRolledBack(Throwable error)
+    {
+        refreshTaskList();
+        updateUndoRedoButtons();
+        if (saveErrorLabel != null)
+        {
+            saveErrorLabel.setText("Could not save tasks, so the last change was undone: " + error.getMessage());
+            saveErrorLabel.setVisible(true);
+            saveErrorLabel.setManaged(true);
+        }
     }
 
     private void updateUndoRedoButtons()
     {
+        // Called after every action; a save error only describes the one before it
+        if (saveErrorLabel != null && saveErrorLabel.isVisible())
+        {
+            saveErrorLabel.setVisible(false);
+            saveErrorLabel.setManaged(false);
+        }
         if (undoButton != null) undoButton.setDisable(!cmdManager.canUndo());
         if (redoButton != null) redoButton.setDisable(!cmdManager.canRedo());
     }
@@ -18,6 +18,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
@@ -30,7 +31,8 @@ import java.util.function.Consumer;
  * <ul>
  *   <li>{@code onDelete} — invoked with a task id when the user deletes the row</li>
  *   <li>{@code onToggle} — invoked when the user checks/unchecks "completed"</li>
- *   <li>{@code onUpdate} — invoked after any field-level edit so the host can persist the change</li>
+ *   <li>{@code onUpdate} — invoked after any field-level edit with the task as last saved and as
+ *       edited, so the host can persist just the changed fields</li>
  * </ul>
  * Field edits are only committed on focus-loss (text fields) or on change
  * (dropdowns / date picker) rather than per keystroke, to avoid spamming
@@ -56,9 +58,11 @@ public class TaskRowController
     @FXML private Button           deleteIconButton;
 
     private Task task;
+    // The task as last handed to onUpdate (or as loaded); what the next edit is compared against
+    private Task savedTask;
     private Consumer<String> onDelete;
     private Consumer<String> onToggle;
-    private Consumer<Task> onUpdate;
+    private BiConsumer<Task, Task> onUpdate;
     private final Map<String, String> courseIdToName = new LinkedHashMap<>();
     private final Map<String, String> courseNameToId = new LinkedHashMap<>();
 
@@ -72,9 +76,10 @@ public class TaskRowController
         init(task, onDelete, onToggle, null);
     }
 
-    public void init(Task task, Consumer<String> onDelete, Consumer<String> onToggle, Consumer<Task> onUpdate)
+    public void init(Task task, Consumer<String> onDelete, Consumer<String> onToggle, BiConsumer<Task, Task> onUpdate)
     {
         this.task     = task;
+        this.savedTask = new Task(task);
         this.onDelete = onDelete;
         this.onToggle = onToggle;
         this.onUpdate = onUpdate;
@@ -123,7 +128,9 @@ public class TaskRowController
     private void fireUpdate()
     {
         TaskCache.getInstance().update(task);
-        if (onUpdate != null) onUpdate.accept(task);
+        Task saved = savedTask;
+        savedTask = new Task(task);
+        if (onUpdate != null) onUpdate.accept(saved, task);
     }
 
     public VBox getRoot() { return taskRowRoot; }
@@ -131,6 +138,7 @@ public class TaskRowController
     public void refresh(Task updatedTask)
     {
         this.task = updatedTask;
+        this.savedTask = new Task(updatedTask);
         populate();
     }
 
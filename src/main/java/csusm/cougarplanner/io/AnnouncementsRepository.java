@@ -5,163 +5,239 @@ import csusm.cougarplanner.models.Announcement;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 import csusm.cougarplanner.util.DateTimeUtil;
-import csusm.cougarplanner.util.WeekUtil;
 
 /**
  * Repository class for managing Announcement data persistence in announcements.csv.
+ * Rows are held in a shared {@link RecordTable} indexed by id and posted date.
+ * Bodies are kept out of the rows in a {@link BlobStore}; a row holds only a body_ref,
+ * and the body is read when {@link Announcement#getMessage()} is first called.
  *
  * Part of T03: Implement CSV layer for announcements.csv with upsert by ID functionality.
  */
 public class AnnouncementsRepository
 {
     // CSV column headers matching the announcements.csv file specification
-    private static final String[] HEADERS = {"announcement_id", "course_id", "title", "posted_at", "body"};
-    // Formatter for parsing and formatting the combined datetime in posted_at field
-    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final String[] HEADERS = {"announcement_id", "course_id", "title", "posted_at", "body_ref"};
 
-    private final CsvReader csvReader;
-    private final CsvWriter csvWriter;
+    private static final BlobStore BODIES = BlobStore.open(CsvPaths.getAnnouncementBodiesPath());
+
+    // Set once rows written before bodies moved to the blob store have been rewritten
+    private static volatile boolean bodiesMigrated;
+
+    private static final RecordCodec<Announcement> CODEC = new RecordCodec<>()
+    {
+        @Override
+        public String[] headers()
+        {
+            return HEADERS;
+        }
+
+        @Override
+        public Announcement decode(Map<String, String> record)
+        {
+            return mapToAnnouncement(record);
+        }
+
+        @Override
+        public Map<String, String> encode(Announcement announcement)
+        {
+            return announcementToMap(announcement);
+        }
+
+        @Override
+        public String id(Map<String, String> record)
+        {
+            return record.get("announcement_id");
+        }
+
+        @Override
+        public LocalDate indexDate(Map<String, String> record)
+        {
+            // Indexed by the date part of posted_at
+            LocalDateTime postedAt = DateTimeUtil.parseDateTime(record.get("posted_at"));
+            return postedAt != null ? postedAt.toLocalDate() : null;
+        }
+    };
+
+    private final RecordTable<Announcement> table;
 
     /**
-     * Constructs a new AnnouncementsRepository with default CSV reader/writer.
+     * Constructs a new AnnouncementsRepository backed by the shared announcements table.
      */
     public AnnouncementsRepository()
     {
-        this.csvReader = new CsvReader();
-        this.csvWriter = new CsvWriter();
+        this.table = RecordTable.open(CsvPaths.getAnnouncementsPath(), CODEC);
+        migrateInlineBodies();
+    }
+
+    /**
+     * Moves announcements.csv into the layout {@link CsvPaths} selects if it was last written in the other one.
+     * Called once at startup, after the layout is selected and before any repository is created.
+     */
+    public static void convertLayout()
+    {
+        RecordTable.convertLayout(CsvPaths.getAnnouncementsPath(), CODEC);
     }
 
     /**
      * Retrieves all announcements from the announcements.csv file.
+     * Files are only parsed again if they changed since they were last loaded.
      *
      * @return List of all Announcement objects in the database
      * @throws IOException if the CSV file cannot be read
      */
     public List<Announcement> findAll() throws IOException
     {
-        List<Map<String, String>> records = csvReader.readAll(CsvPaths.getAnnouncementsPath());
-        return records.stream()
-                .map(this::mapToAnnouncement)
-                .collect(Collectors.toList());
+        return table.findAll();
     }
 
 
     /**
      * Finds all announcements posted within the specific weeks.
-     * Uses the posted_at datetime field to determine posting time.
+     * Answered from the index on the date part of posted_at; only the week's partition is read when partitioned.
      *
      * @param weekStart the start date of the week (inclusive)
      * @param weekEnd the end date of the week (inclusive)
      * @return List of announcements posted within the specific week
-     * @throws IOException if the CSV file cannot be read
+     * @throws IOException if the CSV file or an archive cannot be read
      */
     public List<Announcement> findByWeek(LocalDate weekStart, LocalDate weekEnd) throws IOException
     {
-        return findAll().stream()
-                .filter(announcement -> isInWeek(announcement, weekStart, weekEnd))
-                .collect(Collectors.toList());
+        return SemesterArchiver.withArchived(CsvPaths.getAnnouncementsPath(), CODEC, weekStart, weekEnd,
+                table.findByDateRange(weekStart, weekEnd));
     }
 
     /**
      * Finds all announcements posted on the specific day.
-     * Uses the posted_at datetime field and compares only the date.
+     * Answered from the index on the date part of posted_at; only the week's partition is read when partitioned.
      *
      * @param day the specific day to filter announcements by
      * @return List of announcements posted on the specific day
-     * @throws IOException if the CSV file cannot be read
+     * @throws IOException if the CSV file or an archive cannot be read
      */
     public List<Announcement> findByDay(LocalDate day) throws IOException
     {
-        return findAll().stream()
-                .filter(announcement -> isOnDay(announcement, day))
-                .collect(Collectors.toList());
+        return SemesterArchiver.withArchived(CsvPaths.getAnnouncementsPath(), CODEC, day, day,
+                table.findByDateRange(day, day));
+    }
+
+    /**
+     * Moves announcements posted before the archive horizon into their term archives.
+     * Their bodies stay in the blob store; archived rows keep pointing at them.
+     *
+     * @return how many announcements were archived
+     * @throws IOException if the CSV file or an archive cannot be read or written
+     */
+    public int archive() throws IOException
+    {
+        return SemesterArchiver.archive(CsvPaths.getAnnouncementsPath(), table, CODEC);
     }
 
     /**
      * Updates an existing announcement or inserts a new one.
      *
      * @param announcement the Announcement object to update or insert
+     * @return how many rows were inserted, changed or left unchanged
      * @throws IOException if the CSV file cannot be written
      */
-    public void upsert(Announcement announcement) throws IOException
+    public UpsertResult upsert(Announcement announcement) throws IOException
     {
-        List<Announcement> allAnnouncements = findAll();
-
-        // Removes existing announcement with same ID
-        allAnnouncements.removeIf(a -> a.getAnnouncementId().equals(announcement.getAnnouncementId()));
-
-        // Adds updated announcement
-        allAnnouncements.add(announcement);
-
-        // Writes back to file
-        List<Map<String, String>> records = allAnnouncements.stream()
-                .map(this::announcementToMap)
-                .collect(Collectors.toList());
-
-        csvWriter.writeAll(CsvPaths.getAnnouncementsPath(), records, HEADERS);
+        return table.upsertAll(storeBodies(List.of(announcement)));
     }
 
     /**
      * Upsert operation for multiple announcements.
      *
      * @param announcements List of announcements to upsert
+     * @return how many rows were inserted, changed or left unchanged
      * @throws IOException if the CSV file cannot be written
      */
-    public void upsertAll(List<Announcement> announcements) throws IOException
+    public UpsertResult upsertAll(List<Announcement> announcements) throws IOException
     {
-        Map<String, Announcement> announcementMap = new HashMap<>();
-
-        // Loads existing announcements
-        for (Announcement existing : findAll())
-        {
-            announcementMap.put(existing.getAnnouncementId(), existing);
-        }
+        return table.upsertAll(storeBodies(announcements));
+    }
 
-        // Updates with new announcements
+    /**
+     * Writes inline bodies to the blob store and returns copies of the announcements that refer to them.
+     * The caller's objects are left as they are, since they may still be on screen or in a cache.
+     *
+     * @param announcements announcements about to be written
+     * @return announcements whose bodies are all blob refs or empty
+     * @throws IOException if the blob file cannot be written
+     */
+    private static List<Announcement> storeBodies(List<Announcement> announcements) throws IOException
+    {
+        List<Announcement> stored = new ArrayList<>(announcements.size());
         for (Announcement announcement : announcements)
         {
-            announcementMap.put(announcement.getAnnouncementId(), announcement);
-        }
+            String message = announcement.getMessageRef() == null ? announcement.getMessage() : null;
+            if (message == null || message.isEmpty())
+            {
+                stored.add(announcement);
+                continue;
+            }
 
-        // Writes back
-        List<Map<String, String>> records = announcementMap.values().stream()
-                .map(this::announcementToMap)
-                .collect(Collectors.toList());
-
-        csvWriter.writeAll(CsvPaths.getAnnouncementsPath(), records, HEADERS);
+            BlobStore.Ref ref = BODIES.put(message);
+            Announcement copy = new Announcement(announcement.getAnnouncementId(), announcement.getCourseId(),
+                    announcement.getTitle(), announcement.getPostedAt(), null);
+            copy.setLazyMessage(ref.toString(), () -> loadBody(ref));
+            stored.add(copy);
+        }
+        return stored;
     }
 
     /**
-     * Checks if an announcement was posted within specific week range.
-     *
-     * @param announcement the Announcement to check
-     * @param weekStart the start date of the week
-     * @param weekEnd the end date of the week
-     * @return true if the announcement was posted within the week range, false otherwise
+     * Moves bodies still stored inline in announcements.csv (a "body" column) into the blob store.
+     * Runs once per process; a failure is reported and retried by the next repository created.
      */
-    private boolean isInWeek(Announcement announcement, LocalDate weekStart, LocalDate weekEnd)
+    private void migrateInlineBodies()
     {
-        LocalDateTime postedAt = DateTimeUtil.parseDateTime(announcement.getPostedAt());
-        if (postedAt == null) return false;
-        LocalDate postedDate = postedAt.toLocalDate();
-        return WeekUtil.isDateInWeek(postedDate, weekStart, weekEnd);
+        if (bodiesMigrated)
+        {
+            return;
+        }
+        synchronized (AnnouncementsRepository.class)
+        {
+            if (bodiesMigrated)
+            {
+                return;
+            }
+            try
+            {
+                List<Announcement> inline = new ArrayList<>();
+                for (Announcement announcement : table.findAll())
+                {
+                    if (announcement.getMessageRef() == null && !announcement.getMessage().isEmpty())
+                    {
+                        inline.add(announcement);
+                    }
+                }
+                if (!inline.isEmpty())
+                {
+                    table.upsertAll(storeBodies(inline));
+                }
+                bodiesMigrated = true;
+            }
+            catch (IOException e)
+            {
+                System.err.println("Could not move announcement bodies out of announcements.csv: " + e.getMessage());
+            }
+        }
     }
 
-    /**
-     * Checks if an announcement was posted on the specific day.
-     *
-     * @param announcement the Announcement to check
-     * @param day the specific day to check against
-     * @return true if the announcement was posted on the specific day, false otherwise
-     */
-    private boolean isOnDay(Announcement announcement, LocalDate day)
+    private static String loadBody(BlobStore.Ref ref)
     {
-        LocalDateTime postedAt = DateTimeUtil.parseDateTime(announcement.getPostedAt());
-        return postedAt != null && postedAt.toLocalDate().equals(day);
+        try
+        {
+            return BODIES.get(ref);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Could not read announcement body: " + e.getMessage());
+            return "";
+        }
     }
 
     /**
@@ -170,14 +246,25 @@ public class AnnouncementsRepository
      * @param record Map representing a CSV row with snake_case keys
      * @return Announcement object populated from the CSV data
      */
-    private Announcement mapToAnnouncement(Map<String, String> record)
+    private static Announcement mapToAnnouncement(Map<String, String> record)
     {
         Announcement announcement = new Announcement();
         announcement.setAnnouncementId(record.get("announcement_id"));
         announcement.setCourseId(record.get("course_id"));
         announcement.setTitle(record.get("title"));
         announcement.setPostedAt(record.get("posted_at"));
-        announcement.setMessage(record.get("body"));
+
+        BlobStore.Ref ref = BlobStore.Ref.parse(record.get("body_ref"));
+        if (ref != null)
+        {
+            announcement.setLazyMessage(ref.toString(), () -> loadBody(ref));
+        }
+        else
+        {
+            // Rows written before bodies moved out of line still carry them in a "body" column
+            String body = record.get("body");
+            announcement.setMessage(body != null ? body : "");
+        }
         return announcement;
     }
 
@@ -187,14 +274,15 @@ public class AnnouncementsRepository
      * @param announcement the Announcement object to convert
      * @return Map representing a CSV row with snake_case keys
      */
-    private Map<String, String> announcementToMap(Announcement announcement)
+    private static Map<String, String> announcementToMap(Announcement announcement)
     {
         Map<String, String> record = new HashMap<>();
         record.put("announcement_id", announcement.getAnnouncementId());
         record.put("course_id", announcement.getCourseId());
         record.put("title", announcement.getTitle());
         record.put("posted_at", announcement.getPostedAt());
-        record.put("body", announcement.getMessage() != null ? announcement.getMessage() : "");
+        // Bodies are written to the blob store by storeBodies before a row is encoded
+        record.put("body_ref", announcement.getMessageRef() != null ? announcement.getMessageRef() : "");
         return record;
     }
 }
@@ -1,14 +1,15 @@
 package csusm.cougarplanner.io;
 
 import csusm.cougarplanner.models.Assignment;
+import csusm.cougarplanner.util.DateTimeUtil;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Repository class for managing Assignment data persistence in assignments.csv.
  * Implements upsert logic to preserve local difficulty settings during sync.
+ * Rows are held in a shared {@link RecordTable} indexed by id and due date.
  */
 public class AssignmentsRepository {
 
@@ -21,150 +22,141 @@ public class AssignmentsRepository {
         "difficulty",
         "created_at",
     };
-    private final CsvReader csvReader;
-    private final CsvWriter csvWriter;
+
+    private static final RecordCodec<Assignment> CODEC = new RecordCodec<>() {
+        @Override
+        public String[] headers() {
+            return HEADERS;
+        }
+
+        @Override
+        public Assignment decode(Map<String, String> record) {
+            return mapToAssignment(record);
+        }
+
+        @Override
+        public Map<String, String> encode(Assignment assignment) {
+            return assignmentToMap(assignment);
+        }
+
+        @Override
+        public String id(Map<String, String> record) {
+            return record.get("assignment_id");
+        }
+
+        @Override
+        public LocalDate indexDate(Map<String, String> record) {
+            return DateTimeUtil.parseDate(record.get("due_date"));
+        }
+    };
+
+    private final RecordTable<Assignment> table;
 
     /**
-     * Constructs a new AssignmentsRepository with CSV reader/writer.
+     * Constructs a new AssignmentsRepository backed by the shared assignments table.
      */
     public AssignmentsRepository() {
-        this.csvReader = new CsvReader();
-        this.csvWriter = new CsvWriter();
+        this.table = RecordTable.open(CsvPaths.getAssignmentsPath(), CODEC);
+    }
+
+    /**
+     * Moves assignments.csv into the layout {@link CsvPaths} selects if it was last written in the other one.
+     * Called once at startup, after the layout is selected and before any repository is created.
+     */
+    public static void convertLayout() {
+        RecordTable.convertLayout(CsvPaths.getAssignmentsPath(), CODEC);
     }
 
     /**
-     * Reads entire assignments.csv file
-     * Each CSV row becomes a Map with keys assignment_id and so forth.
-     * Converts each Map to an Assignment object.
+     * Gets every assignment in assignments.csv.
+     * Files are only parsed again if they changed since they were last loaded.
      *
      * @return List of all assignments
      * @throws IOException if the CSV file cannot be read
      */
     public List<Assignment> findAll() throws IOException {
-        List<Map<String, String>> records = csvReader.readAll(CsvPaths.getAssignmentsPath());
-        return records.stream().map(this::mapToAssignment).collect(Collectors.toList());
+        return table.findAll();
     }
 
     /**
      * Finds all assignments due within the specific week.
+     * Answered from the due date index; only the week's partition is read when partitioned.
+     * Weeks of archived terms are also looked up in their archive.
      *
      * @param weekStart the start date of the week
      * @param weekEnd the end date of the week
      * @return List of assignments due within the specific week
-     * @throws IOException if the CSV file cannot be read
+     * @throws IOException if the CSV file or an archive cannot be read
      */
     public List<Assignment> findByWeek(LocalDate weekStart, LocalDate weekEnd) throws IOException {
-        return findAll()
-            .stream()
-            .filter(assignment -> isInWeek(assignment, weekStart, weekEnd))
-            .collect(Collectors.toList());
+        return SemesterArchiver.withArchived(CsvPaths.getAssignmentsPath(), CODEC, weekStart, weekEnd,
+                table.findByDateRange(weekStart, weekEnd));
     }
 
     /**
      * Finds all assignments due on the specific day.
+     * Answered from the due date index; only the week's partition is read when partitioned.
      *
      * @param day the specific day to filter assignments by
      * @return List of assignments due on the specific day
-     * @throws IOException if the CSV file cannot be read
+     * @throws IOException if the CSV file or an archive cannot be read
      */
     public List<Assignment> findByDay(LocalDate day) throws IOException {
-        return findAll()
-            .stream()
-            .filter(assignment -> isOnDay(assignment, day))
-            .collect(Collectors.toList());
+        return SemesterArchiver.withArchived(CsvPaths.getAssignmentsPath(), CODEC, day, day,
+                table.findByDateRange(day, day));
     }
 
     /**
-     * Updates an existing assignment or inserts a new one.
+     * Moves assignments due before the archive horizon into their term archives.
      *
-     * @param assignment the Assignment object to update or insert
-     * @throws IOException if the CSV file cannot be written
+     * @return how many assignments were archived
+     * @throws IOException if the CSV file or an archive cannot be read or written
      */
-    public void upsert(Assignment assignment) throws IOException {
-        List<Assignment> allAssignments = findAll();
-
-        // Removes existing assignment with same ID
-        allAssignments.removeIf(a -> a.getAssignmentId().equals(assignment.getAssignmentId()));
-
-        // Adds updated assignment
-        allAssignments.add(assignment);
-
-        // Writes back to file
-        List<Map<String, String>> records = allAssignments
-            .stream()
-            .map(this::assignmentToMap)
-            .collect(Collectors.toList());
-
-        csvWriter.writeAll(CsvPaths.getAssignmentsPath(), records, HEADERS);
+    public int archive() throws IOException {
+        return SemesterArchiver.archive(CsvPaths.getAssignmentsPath(), table, CODEC);
     }
 
     /**
-     * Performs upsert operation on multiple assignments and preserves difficulty level.
-     * This is used during Canvas API sync.
+     * Finds an assignment by its id.
+     * Answered with a few positional reads through the sidecar index if the table is not loaded yet.
      *
-     * @param assignments List of assignments to upsert
-     * @throws IOException if the CSV file cannot be written
+     * @param assignmentId the assignment's id
+     * @return the assignment, or empty if there is none
+     * @throws IOException if the CSV file cannot be read
      */
-    public void upsertAll(List<Assignment> assignments) throws IOException {
-        Map<String, Assignment> assignmentMap = new HashMap<>();
-
-        // Loads existing assignments
-        for (Assignment existing : findAll()) {
-            assignmentMap.put(existing.getAssignmentId(), existing);
-        }
-
-        // Updates with new assignments
-        for (Assignment assignment : assignments) {
-            Assignment existing = assignmentMap.get(assignment.getAssignmentId());
-            if (existing != null && existing.getDifficulty() != null) {
-                assignment.setDifficulty(existing.getDifficulty());
-            }
-            assignmentMap.put(assignment.getAssignmentId(), assignment);
-        }
-
-        // Writes back
-        List<Map<String, String>> records = assignmentMap
-            .values()
-            .stream()
-            .map(this::assignmentToMap)
-            .collect(Collectors.toList());
-
-        csvWriter.writeAll(CsvPaths.getAssignmentsPath(), records, HEADERS);
+    public Optional<Assignment> findById(String assignmentId) throws IOException {
+        return table.findById(assignmentId);
     }
 
     /**
-     * Checks if an assignment's due date is within the specific week range.
+     * Updates an existing assignment or inserts a new one.
      *
-     * @param assignment the Assignment to check
-     * @param weekStart the start date of the week
-     * @param weekEnd the end date of the week
-     * @return true if the assignment is due within the week range, false otherwise
+     * @param assignment the Assignment object to update or insert
+     * @return how many rows were inserted, changed or left unchanged
+     * @throws IOException if the CSV file cannot be written
      */
-    private boolean isInWeek(Assignment assignment, LocalDate weekStart, LocalDate weekEnd) {
-        if (assignment.getDueDate() == null || assignment.getDueDate().isEmpty()) return false;
-        try {
-            LocalDate dueDate = LocalDate.parse(assignment.getDueDate());
-            return !dueDate.isBefore(weekStart) && !dueDate.isAfter(weekEnd);
-        } catch (Exception e) {
-            return false;
-        }
+    public UpsertResult upsert(Assignment assignment) throws IOException {
+        return table.upsertAll(List.of(assignment));
     }
 
     /**
-     * Checks if an assignment is due on the specific day.
+     * Performs upsert operation on multiple assignments and preserves difficulty level.
+     * This is used during Canvas API sync.
      *
-     * @param assignment the Assignment to check
-     * @param day the specific day to check against
-     * @return true if the assignment is due on the specified day, false otherwise
+     * @param assignments List of assignments to upsert
+     * @return how many rows were inserted, changed or left unchanged
+     * @throws IOException if the CSV file cannot be written
      */
-    private boolean isOnDay(Assignment assignment, LocalDate day) {
-        if (assignment.getDueDate() == null || assignment.getDueDate().isEmpty()) return false;
-        try {
-            LocalDate dueDate = LocalDate.parse(assignment.getDueDate());
-            return dueDate.equals(day);
-        } catch (Exception e) {
-            return false;
+    public UpsertResult upsertAll(List<Assignment> assignments) throws IOException {
+        // Keeps the difficulty the user set locally
+        for (Assignment assignment : assignments) {
+            Optional<Assignment> existing = table.findById(assignment.getAssignmentId());
+            if (existing.isPresent() && existing.get().getDifficulty() != null) {
+                assignment.setDifficulty(existing.get().getDifficulty());
+            }
         }
+
+        return table.upsertAll(assignments);
     }
 
     /**
@@ -174,7 +166,7 @@ public class AssignmentsRepository {
      * @param record Map representing a CSV row with snake_case keys
      * @return Assignment object populated from the CSV data
      */
-    private Assignment mapToAssignment(Map<String, String> record) {
+    private static Assignment mapToAssignment(Map<String, String> record) {
         Assignment assignment = new Assignment();
         assignment.setAssignmentId(record.get("assignment_id"));
         assignment.setCourseId(record.get("course_id"));
@@ -201,7 +193,7 @@ public class AssignmentsRepository {
      * @param assignment the Assignment object to convert
      * @return Map representing a CSV row with snake_case keys
      */
-    private Map<String, String> assignmentToMap(Assignment assignment) {
+    private static Map<String, String> assignmentToMap(Assignment assignment) {
         Map<String, String> record = new HashMap<>();
         record.put("assignment_id", assignment.getAssignmentId());
         record.put("course_id", assignment.getCourseId());
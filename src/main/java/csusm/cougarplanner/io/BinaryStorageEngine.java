@@ -0,0 +1,511 @@
+package csusm.cougarplanner.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * {@link StorageEngine} that keeps each table in a compact binary file next to its CSV
+ * (data/assignments.csv is stored in data/assignments.bin).
+ *
+ * File layout, all integers big-endian:
+ * <pre>
+ *   "CPBT"  u16 version
+ *   block*  where block = i32 length, payload, i32 CRC32C of the payload
+ * </pre>
+ * The first block holds the schema (i32 column count, then each header name).
+ * Every further block holds rows: i32 row count, then one tagged field per column.
+ * A field is a one-byte tag followed by its value:
+ * ABSENT (no value), STRING (i32 length + UTF-8), DATE (i32 epoch day) or
+ * DATE_TIME (i32 epoch day + i16 minute of day). Dates are only stored as numbers when
+ * formatting them back gives the exact original text, so every value round-trips.
+ *
+ * Appending rows adds one block, so a new row costs the same as with CSV. A torn last
+ * block (e.g. after a crash mid-append) is cut off with a warning; a bad checksum
+ * anywhere else fails the read.
+ */
+public class BinaryStorageEngine implements StorageEngine
+{
+    private static final byte[] MAGIC = {'C', 'P', 'B', 'T'};
+    private static final short VERSION = 1;
+
+    // Field tags
+    private static final byte ABSENT = 0;
+    private static final byte STRING = 1;
+    private static final byte DATE = 2;
+    private static final byte DATE_TIME = 3;
+
+    private final CsvReader csvReader = new CsvReader();
+    private final CsvWriter csvWriter = new CsvWriter();
+
+    // Rows of a file plus how many of its bytes were intact
+    private record Decoded(List<Map<String, String>> records, int validLength) {}
+
+    @Override
+    public String name()
+    {
+        return StorageEngines.BINARY;
+    }
+
+    @Override
+    public Path dataFile(Path tablePath)
+    {
+        String fileName = tablePath.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        return tablePath.resolveSibling((dot > 0 ? fileName.substring(0, dot) : fileName) + ".bin");
+    }
+
+    /**
+     * Reads every row of a table, importing its CSV first if there is no binary file yet.
+     * Header names come back in lowercase, as {@link CsvReader} returns them.
+     */
+    @Override
+    public List<Map<String, String>> readAll(Path tablePath) throws IOException
+    {
+        importCsvIfMissing(tablePath);
+        return FileLocks.shared(dataFile(tablePath), () -> readLocked(DataTransaction.resolve(dataFile(tablePath))));
+    }
+
+    private List<Map<String, String>> readLocked(Path dataFile) throws IOException
+    {
+        FileStamp stamp = FileStamp.of(dataFile);
+        if (stamp.equals(FileStamp.MISSING))
+        {
+            return List.of();
+        }
+
+        List<Map<String, String>> cached = ParsedFileCache.get(dataFile, stamp);
+        if (cached != null)
+        {
+            return cached;
+        }
+
+        byte[] bytes = Files.readAllBytes(dataFile);
+        Decoded decoded = decodeFile(dataFile, bytes);
+        if (decoded.validLength() < bytes.length)
+        {
+            // Cuts the torn block off so the next append doesn't land behind it
+            System.err.println("Dropping torn block at byte " + decoded.validLength() + " of " + dataFile);
+            try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.WRITE))
+            {
+                channel.truncate(decoded.validLength());
+            }
+            ParsedFileCache.invalidate(dataFile);
+        }
+        else if (stamp.equals(FileStamp.of(dataFile)))
+        {
+            ParsedFileCache.put(dataFile, stamp, decoded.records());
+        }
+        return decoded.records();
+    }
+
+    @Override
+    public Path writeTemp(Path tablePath, List<Map<String, String>> records, String[] headers) throws IOException
+    {
+        CsvPaths.ensureDataDirectory();
+        Path dataFile = dataFile(tablePath);
+        Path tempFile = CsvPaths.getTempPath(dataFile);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MAGIC);
+        out.writeShort(VERSION);
+        writeBlock(out, encodeSchema(headers));
+        writeBlock(out, encodeRows(records, headers));
+        out.flush();
+
+        Files.write(tempFile, bytes.toByteArray());
+        return tempFile;
+    }
+
+    @Override
+    public void publish(Path tempFile, Path tablePath) throws IOException
+    {
+        Path dataFile = dataFile(tablePath);
+        if (DataTransaction.stage(tempFile, dataFile))
+        {
+            return;
+        }
+        FileLocks.exclusive(dataFile, () -> {
+            Files.move(tempFile, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            ParsedFileCache.invalidate(dataFile);
+            return null;
+        });
+    }
+
+    /**
+     * Appends the rows as a single block, or rewrites the file if its columns differ from {@code headers}.
+     */
+    @Override
+    public void appendAll(Path tablePath, List<Map<String, String>> records, String[] headers) throws IOException
+    {
+        importCsvIfMissing(tablePath);
+        // The schema check and the append must see the same file, and readers must not see half a block
+        FileLocks.exclusive(dataFile(tablePath), () -> {
+            appendLocked(tablePath, records, headers);
+            return null;
+        });
+    }
+
+    private void appendLocked(Path tablePath, List<Map<String, String>> records, String[] headers) throws IOException
+    {
+        Path dataFile = dataFile(tablePath);
+        // A transaction needs a staged copy rather than a change in place
+        if (DataTransaction.isActive() || !Files.exists(dataFile) || !Arrays.equals(readSchema(dataFile), headers))
+        {
+            List<Map<String, String>> all = new ArrayList<>(CsvReader.keyedByHeader(readAll(tablePath), headers));
+            all.addAll(records);
+            writeAll(tablePath, all, headers);
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeBlock(out, encodeRows(records, headers));
+        out.flush();
+
+        Files.write(dataFile, bytes.toByteArray(), StandardOpenOption.APPEND);
+        ParsedFileCache.invalidate(dataFile);
+    }
+
+    /**
+     * Converts a table's CSV file into its binary file, replacing any binary file there.
+     *
+     * @param tablePath the table's CSV path
+     * @throws IOException if the CSV cannot be read or the binary file cannot be written
+     */
+    public void importCsv(Path tablePath) throws IOException
+    {
+        String[] headers = csvReader.readHeaders(tablePath);
+        writeAll(tablePath, CsvReader.keyedByHeader(csvReader.readAll(tablePath), headers), headers);
+    }
+
+    /**
+     * Writes a table's binary file back out as its CSV file, e.g. to open it in a spreadsheet.
+     *
+     * @param tablePath the table's CSV path
+     * @throws IOException if the binary file cannot be read or the CSV cannot be written
+     */
+    public void exportCsv(Path tablePath) throws IOException
+    {
+        String[] headers = readSchema(dataFile(tablePath));
+        csvWriter.writeAll(tablePath, CsvReader.keyedByHeader(readAll(tablePath), headers), headers);
+    }
+
+    /**
+     * Imports the CSV if it was changed after the binary file was written (or there is no binary file).
+     */
+    void importCsvIfNewer(Path tablePath) throws IOException
+    {
+        if (isNewer(tablePath, dataFile(tablePath)))
+        {
+            importCsv(tablePath);
+        }
+    }
+
+    /**
+     * Exports the binary file if it was changed after the CSV was written (or there is no CSV).
+     */
+    void exportCsvIfNewer(Path tablePath) throws IOException
+    {
+        if (isNewer(dataFile(tablePath), tablePath))
+        {
+            exportCsv(tablePath);
+        }
+    }
+
+    private void importCsvIfMissing(Path tablePath) throws IOException
+    {
+        if (!Files.exists(dataFile(tablePath)) && Files.exists(tablePath))
+        {
+            importCsv(tablePath);
+        }
+    }
+
+    private static boolean isNewer(Path source, Path target) throws IOException
+    {
+        if (!Files.exists(source))
+        {
+            return false;
+        }
+        return !Files.exists(target)
+                || Files.getLastModifiedTime(source).compareTo(Files.getLastModifiedTime(target)) > 0;
+    }
+
+    /**
+     * Reads only the magic, version and schema block of a binary file.
+     */
+    private static String[] readSchema(Path dataFile) throws IOException
+    {
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(dataFile)))
+        {
+            DataInputStream in = new DataInputStream(stream);
+            checkPreamble(in.readNBytes(MAGIC.length), in.readShort(), dataFile);
+            int length = in.readInt();
+            byte[] payload = in.readNBytes(length);
+            if (payload.length != length || in.readInt() != checksum(payload, 0, length))
+            {
+                throw new IOException("Corrupt schema block in " + dataFile);
+            }
+            return decodeSchema(ByteBuffer.wrap(payload));
+        }
+        catch (EOFException e)
+        {
+            throw new IOException("Truncated table file " + dataFile, e);
+        }
+    }
+
+    private static void checkPreamble(byte[] magic, short version, Path dataFile) throws IOException
+    {
+        if (!Arrays.equals(magic, MAGIC))
+        {
+            throw new IOException("Not a planner table file: " + dataFile);
+        }
+        if (version != VERSION)
+        {
+            throw new IOException("Unsupported table file version " + version + " in " + dataFile);
+        }
+    }
+
+    private static Decoded decodeFile(Path dataFile, byte[] bytes) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.remaining() < MAGIC.length + 2)
+        {
+            throw new IOException("Truncated table file " + dataFile);
+        }
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        checkPreamble(magic, buffer.getShort(), dataFile);
+
+        String[] headers = null;
+        List<Map<String, String>> records = new ArrayList<>();
+        while (buffer.hasRemaining())
+        {
+            int start = buffer.position();
+            int length = buffer.remaining() >= 4 ? buffer.getInt() : -1;
+            if (length < 0 || buffer.remaining() < length + 4)
+            {
+                return new Decoded(Collections.unmodifiableList(records), start);
+            }
+
+            int payloadStart = buffer.position();
+            buffer.position(payloadStart + length);
+            int storedChecksum = buffer.getInt();
+            if (storedChecksum != checksum(bytes, payloadStart, length))
+            {
+                if (!buffer.hasRemaining())
+                {
+                    return new Decoded(Collections.unmodifiableList(records), start);
+                }
+                throw new IOException("Checksum mismatch at byte " + start + " of " + dataFile);
+            }
+
+            ByteBuffer payload = ByteBuffer.wrap(bytes, payloadStart, length).slice();
+            if (headers == null)
+            {
+                headers = decodeSchema(payload);
+                for (int i = 0; i < headers.length; i++)
+                {
+                    headers[i] = headers[i].toLowerCase();
+                }
+            }
+            else
+            {
+                decodeRows(payload, headers, records);
+            }
+        }
+        return new Decoded(Collections.unmodifiableList(records), bytes.length);
+    }
+
+    private static byte[] encodeSchema(String[] headers) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(headers.length);
+        for (String header : headers)
+        {
+            writeString(out, header);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static String[] decodeSchema(ByteBuffer payload)
+    {
+        String[] headers = new String[payload.getInt()];
+        for (int i = 0; i < headers.length; i++)
+        {
+            headers[i] = readString(payload);
+        }
+        return headers;
+    }
+
+    private static byte[] encodeRows(List<Map<String, String>> records, String[] headers) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(records.size());
+        for (Map<String, String> record : records)
+        {
+            for (String header : headers)
+            {
+                writeField(out, record.get(header));
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void decodeRows(ByteBuffer payload, String[] headers, List<Map<String, String>> records)
+    {
+        int count = payload.getInt();
+        for (int row = 0; row < count; row++)
+        {
+            Map<String, String> record = new HashMap<>();
+            for (String header : headers)
+            {
+                String value = readField(payload);
+                if (value != null)
+                {
+                    record.put(header, value);
+                }
+            }
+            records.add(Collections.unmodifiableMap(record));
+        }
+    }
+
+    private static void writeBlock(DataOutputStream out, byte[] payload) throws IOException
+    {
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(checksum(payload, 0, payload.length));
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length)
+    {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes a value with the most compact tag that still gives back the exact same text.
+     */
+    private static void writeField(DataOutputStream out, String value) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeByte(ABSENT);
+            return;
+        }
+
+        LocalDate date = value.length() >= 10 ? parseIsoDate(value) : null;
+        if (date != null && value.length() == 10)
+        {
+            out.writeByte(DATE);
+            out.writeInt((int) date.toEpochDay());
+            return;
+        }
+        if (date != null && value.length() == 16 && value.charAt(10) == ' ' && value.charAt(13) == ':')
+        {
+            int hour = twoDigits(value, 11);
+            int minute = twoDigits(value, 14);
+            if (hour >= 0 && hour < 24 && minute >= 0 && minute < 60)
+            {
+                out.writeByte(DATE_TIME);
+                out.writeInt((int) date.toEpochDay());
+                out.writeShort(hour * 60 + minute);
+                return;
+            }
+        }
+
+        out.writeByte(STRING);
+        writeString(out, value);
+    }
+
+    private static String readField(ByteBuffer payload)
+    {
+        byte tag = payload.get();
+        switch (tag)
+        {
+            case ABSENT:
+                return null;
+            case STRING:
+                return readString(payload);
+            case DATE:
+                return LocalDate.ofEpochDay(payload.getInt()).toString();
+            case DATE_TIME:
+            {
+                String date = LocalDate.ofEpochDay(payload.getInt()).toString();
+                int minutes = payload.getShort();
+                return String.format("%s %02d:%02d", date, minutes / 60, minutes % 60);
+            }
+            default:
+                throw new IllegalStateException("Unknown field tag " + tag);
+        }
+    }
+
+    /**
+     * Parses a leading yyyy-MM-dd that formats back to the same ten characters, else returns null.
+     */
+    private static LocalDate parseIsoDate(String value)
+    {
+        if (value.charAt(4) != '-' || value.charAt(7) != '-')
+        {
+            return null;
+        }
+        int year = twoDigits(value, 0) * 100 + twoDigits(value, 2);
+        int month = twoDigits(value, 5);
+        int day = twoDigits(value, 8);
+        if (year < 1000 || month < 0 || day < 0)
+        {
+            return null;
+        }
+        try
+        {
+            return LocalDate.of(year, month, day);
+        }
+        catch (DateTimeException e)
+        {
+            return null;
+        }
+    }
+
+    private static int twoDigits(String value, int pos)
+    {
+        int high = value.charAt(pos) - '0';
+        int low = value.charAt(pos + 1) - '0';
+        return high < 0 || high > 9 || low < 0 || low > 9 ? -10000 : high * 10 + low;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer payload)
+    {
+        int length = payload.getInt();
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,250 @@
+package csusm.cougarplanner.io;
+
+import csusm.cougarplanner.cache.LinkedListLRUCache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only file of large text values, such as announcement bodies, kept out of the CSV rows.
+ *
+ * Each value is stored once as [i32 length][16-byte content hash][UTF-8 bytes] and addressed by a
+ * {@link Ref} holding the offset and length of the bytes plus the hash. Putting a value that is
+ * already stored returns the existing ref instead of appending it again. Values are read back with
+ * a positional read and kept in a small LRU so re-rendering the same week does not touch disk.
+ *
+ * One instance is shared per path so every writer appends through the same object.
+ */
+public class BlobStore
+{
+    private static final Map<Path, BlobStore> STORES = new ConcurrentHashMap<>();
+
+    private static final int HASH_BYTES = 16;
+    private static final int ENTRY_HEADER_BYTES = Integer.BYTES + HASH_BYTES;
+    private static final int CACHED_VALUES = 64;
+
+    private final Path path;
+    private final LinkedListLRUCache<String> recent = new LinkedListLRUCache<>(CACHED_VALUES);
+    private Map<String, Ref> refsByHash; // Built lazily on the first put
+
+    /**
+     * Location of one stored value.
+     *
+     * @param offset position of the value's first byte in the blob file
+     * @param length number of UTF-8 bytes in the value
+     * @param hash   hex content hash, used for deduplication and to verify reads
+     */
+    public record Ref(long offset, int length, String hash)
+    {
+        /**
+         * Formats the ref as a single CSV field, "offset:length:hash".
+         */
+        @Override
+        public String toString()
+        {
+            return offset + ":" + length + ":" + hash;
+        }
+
+        /**
+         * Parses a ref written by {@link #toString()}.
+         *
+         * @param text the field value
+         * @return the ref, or null if the text is empty or not a ref
+         */
+        public static Ref parse(String text)
+        {
+            if (text == null || text.isEmpty())
+            {
+                return null;
+            }
+            String[] parts = text.split(":");
+            if (parts.length != 3)
+            {
+                return null;
+            }
+            try
+            {
+                return new Ref(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), parts[2]);
+            }
+            catch (NumberFormatException e)
+            {
+                return null;
+            }
+        }
+    }
+
+    private BlobStore(Path path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * Gets the shared blob store for the given file.
+     *
+     * @param path the path of the blob file
+     * @return the store instance for that path
+     */
+    public static BlobStore open(Path path)
+    {
+        return STORES.computeIfAbsent(path.toAbsolutePath().normalize(), BlobStore::new);
+    }
+
+    /**
+     * Stores a value, or finds the copy already stored.
+     *
+     * @param value the text to store
+     * @return the ref to pass to {@link #get(Ref)}
+     * @throws IOException if the blob file cannot be read or appended to
+     */
+    public synchronized Ref put(String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        byte[] digest = hash(bytes);
+        String hash = HexFormat.of().formatHex(digest);
+
+        Map<String, Ref> refs = refsByHash();
+        Ref existing = refs.get(hash);
+        if (existing != null)
+        {
+            return existing;
+        }
+
+        CsvPaths.ensureDataDirectory();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+        {
+            long start = channel.size();
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_BYTES + bytes.length);
+            entry.putInt(bytes.length).put(digest).put(bytes).flip();
+            while (entry.hasRemaining())
+            {
+                channel.write(entry, start + entry.position());
+            }
+
+            Ref ref = new Ref(start + ENTRY_HEADER_BYTES, bytes.length, hash);
+            refs.put(hash, ref);
+            recent.put(hash, value);
+            return ref;
+        }
+    }
+
+    /**
+     * Reads a stored value.
+     *
+     * @param ref a ref returned by {@link #put(String)}
+     * @return the value
+     * @throws IOException if the blob file cannot be read or the bytes do not match the ref's hash
+     */
+    public String get(Ref ref) throws IOException
+    {
+        synchronized (this)
+        {
+            String cached = recent.get(ref.hash());
+            if (cached != null)
+            {
+                return cached;
+            }
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate(ref.length());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            readFully(channel, bytes, ref.offset());
+        }
+
+        if (!HexFormat.of().formatHex(hash(bytes.array())).equals(ref.hash()))
+        {
+            throw new IOException("Blob at offset " + ref.offset() + " in " + path + " does not match its hash");
+        }
+
+        String value = new String(bytes.array(), StandardCharsets.UTF_8);
+        synchronized (this)
+        {
+            recent.put(ref.hash(), value);
+        }
+        return value;
+    }
+
+    /**
+     * Scans the blob file once to learn which values are already stored. Guarded by this.
+     * A torn entry at the end (from a crash mid-append) is cut off so the next append starts clean.
+     */
+    private Map<String, Ref> refsByHash() throws IOException
+    {
+        if (refsByHash != null)
+        {
+            return refsByHash;
+        }
+
+        Map<String, Ref> refs = new HashMap<>();
+        if (Files.exists(path))
+        {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE))
+            {
+                long size = channel.size();
+                long position = 0;
+                ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_BYTES);
+                while (position + ENTRY_HEADER_BYTES <= size)
+                {
+                    header.clear();
+                    readFully(channel, header, position);
+                    header.flip();
+                    int length = header.getInt();
+                    byte[] digest = new byte[HASH_BYTES];
+                    header.get(digest);
+
+                    long valueOffset = position + ENTRY_HEADER_BYTES;
+                    if (length < 0 || valueOffset + length > size)
+                    {
+                        break;
+                    }
+                    String hash = HexFormat.of().formatHex(digest);
+                    refs.putIfAbsent(hash, new Ref(valueOffset, length, hash));
+                    position = valueOffset + length;
+                }
+                if (position < size)
+                {
+                    System.err.println("Discarding torn entry at the end of " + path);
+                    channel.truncate(position);
+                }
+            }
+        }
+        refsByHash = refs;
+        return refs;
+    }
+
+    private void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new IOException("Unexpected end of " + path + " at offset " + position);
+            }
+        }
+    }
+
+    private static byte[] hash(byte[] bytes)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return Arrays.copyOf(digest, HASH_BYTES);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
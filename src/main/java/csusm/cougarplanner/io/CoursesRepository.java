@@ -3,11 +3,12 @@ package csusm.cougarplanner.io;
 import csusm.cougarplanner.models.Course;
 
 import java.io.IOException;
+import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Repository class for managing Course data persistence in courses.csv.
+ * Rows are held in a shared {@link RecordTable} indexed by id.
  *
  * Part of T03: Implement CSV layer for courses.csv with upsert by ID functionality.
  */
@@ -15,85 +16,85 @@ public class CoursesRepository
 {
     // CSV column headers matching the courses.csv file specification
     private static final String[] HEADERS = {"course_id", "course_name"};
-    private final CsvReader csvReader;
-    private final CsvWriter csvWriter;
+
+    private static final RecordCodec<Course> CODEC = new RecordCodec<>()
+    {
+        @Override
+        public String[] headers()
+        {
+            return HEADERS;
+        }
+
+        @Override
+        public Course decode(Map<String, String> record)
+        {
+            return mapToCourse(record);
+        }
+
+        @Override
+        public Map<String, String> encode(Course course)
+        {
+            return courseToMap(course);
+        }
+
+        @Override
+        public String id(Map<String, String> record)
+        {
+            return record.get("course_id");
+        }
+
+        @Override
+        public LocalDate indexDate(Map<String, String> record)
+        {
+            return null; // Courses have no date to index
+        }
+    };
+
+    private final RecordTable<Course> table;
 
     /**
-     * Constructs a new CoursesRepository with default CSV reader/writer.
+     * Constructs a new CoursesRepository backed by the shared courses table.
      */
     public CoursesRepository()
     {
-        this.csvReader = new CsvReader();
-        this.csvWriter = new CsvWriter();
+        this.table = RecordTable.open(CsvPaths.getCoursesPath(), CODEC);
     }
 
     /**
      * Retrieves all courses from the courses.csv file.
      * Courses are used as reference data for assignments and announcements.
+     * Files are only parsed again if they changed since they were last loaded.
      *
      * @return List of all Course objects in the database
      * @throws IOException if the CSV file cannot be read
      */
     public List<Course> findAll() throws IOException
     {
-        List<Map<String, String>> records = csvReader.readAll(CsvPaths.getCoursesPath());
-        return records.stream()
-                .map(this::mapToCourse)
-                .collect(Collectors.toList());
+        return table.findAll();
     }
 
     /**
      * Updates an existing course or inserts a new one.
      *
      * @param course the Course object to update or insert
+     * @return how many rows were inserted, changed or left unchanged
      * @throws IOException if the CSV file cannot be written
      */
-    public void upsert(Course course) throws IOException
+    public UpsertResult upsert(Course course) throws IOException
     {
-        List<Course> allCourses = findAll();
-
-        // Removes existing course with same ID
-        allCourses.removeIf(c -> c.getCourseId().equals(course.getCourseId()));
-
-        // Adds updated course
-        allCourses.add(course);
-
-        // Writes back to file
-        List<Map<String, String>> records = allCourses.stream()
-                .map(this::courseToMap)
-                .collect(Collectors.toList());
-
-        csvWriter.writeAll(CsvPaths.getCoursesPath(), records, HEADERS);
+        return table.upsertAll(List.of(course));
     }
 
     /**
      * Upsert operation on multiple courses.
      *
      * @param courses List of courses to upsert
+     * @return how many rows were inserted, changed or left unchanged
      * @throws IOException if the CSV file cannot be written
      */
-    public void upsertAll(List<Course> courses) throws IOException
+    public UpsertResult upsertAll(List<Course> courses) throws IOException
     {
-        Map<String, Course> courseMap = new HashMap<>();
-
-        // Loads existing courses
-        for (Course existing : findAll())
-        {
-            courseMap.put(existing.getCourseId(), existing);
-        }
-
-        // Updates with new courses
-        for (Course course : courses)
-        {
-            courseMap.put(course.getCourseId(), course);
-        }
-
-        // Writes back
-        List<Map<String, String>> records = courseMap.values().stream()
-                .map(this::courseToMap)
-                .collect(Collectors.toList());
-
-        csvWriter.writeAll(CsvPaths.getCoursesPath(), records, HEADERS);
+        return table.upsertAll(courses);
     }
 
     /**
@@ -103,7 +104,7 @@ public class CoursesRepository
      * @param record Map representing a CSV row with snake_case keys
      * @return Course object populated from the CSV data
      */
-    private Course mapToCourse(Map<String, String> record)
+    private static Course mapToCourse(Map<String, String> record)
     {
         Course course = new Course();
         course.setCourseId(record.get("course_id"));
@@ -118,7 +119,7 @@ public class CoursesRepository
      * @param course the Course object to convert
      * @return Map representing a CSV row with snake_case keys
      */
-    private Map<String, String> courseToMap(Course course)
+    private static Map<String, String> courseToMap(Course course)
     {
         Map<String, String> record = new HashMap<>();
         record.put("course_id", course.getCourseId());
@@ -2,6 +2,7 @@ package csusm.cougarplanner.io;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 /**
  * Centralizes all file system paths for CSV data storage and JSON snapshots.
@@ -11,7 +12,20 @@ import java.nio.file.Paths;
 public class CsvPaths
 {
     // Root directory for all application data files
-    private static final String DATA_DIR = "data";
+    private static volatile Path dataDirectory = Paths.get("data");
+
+    // When true, assignments and announcements are stored one file per ISO week
+    private static volatile boolean weekPartitioned;
+
+    /**
+     * Gets the paths of every table a {@link StorageEngine} stores.
+     *
+     * @return the CSV paths of courses, assignments, announcements and tasks
+     */
+    public static List<Path> getTablePaths()
+    {
+        return List.of(getCoursesPath(), getAssignmentsPath(), getAnnouncementsPath(), getTasksPath());
+    }
 
     /**
      * Gets the file system path for the courses.csv file.
@@ -21,7 +35,7 @@ public class CsvPaths
      */
     public static Path getCoursesPath()
     {
-        return Paths.get(DATA_DIR, "courses.csv");
+        return dataDirectory.resolve("courses.csv");
     }
 
     /**
@@ -32,7 +46,7 @@ public class CsvPaths
      */
     public static Path getAssignmentsPath()
     {
-        return Paths.get(DATA_DIR, "assignments.csv");
+        return dataDirectory.resolve("assignments.csv");
     }
 
     /**
@@ -42,17 +56,130 @@ public class CsvPaths
      */
     public static Path getAnnouncementsPath()
     {
-        return Paths.get(DATA_DIR, "announcements.csv");
+        return dataDirectory.resolve("announcements.csv");
     }
 
     /**
-     * Gets the file system path for the announcements.csv file.
+     * Gets the file system path for the announcement_bodies.blob file.
+     * Holds the HTML bodies that announcements.csv rows point to by offset.
      *
-     * @return Path to announcements.csv in the data directory
+     * @return Path to announcement_bodies.blob in the data directory
+     */
+    public static Path getAnnouncementBodiesPath()
+    {
+        return dataDirectory.resolve("announcement_bodies.blob");
+    }
+
+    /**
+     * Gets the file system path for the tasks.csv file.
+     *
+     * @return Path to tasks.csv in the data directory
      */
     public static Path getTasksPath()
     {
-        return Paths.get(DATA_DIR, "tasks.csv");
+        return dataDirectory.resolve("tasks.csv");
+    }
+
+    /**
+     * Gets the file system path for the tasks.journal file.
+     * Holds task mutations appended since tasks.csv was last compacted.
+     *
+     * @return Path to tasks.journal in the data directory
+     */
+    public static Path getTasksJournalPath()
+    {
+        return dataDirectory.resolve("tasks.journal");
+    }
+
+    /**
+     * Gets the file system path for the undo.journal file.
+     * Holds the task undo/redo history, so it survives restarts.
+     *
+     * @return Path to undo.journal in the data directory
+     */
+    public static Path getUndoJournalPath()
+    {
+        return dataDirectory.resolve("undo.journal");
+    }
+
+    /**
+     * Moves every path this class hands out under another root directory.
+     * Meant for tests, which must never touch the user's data directory;
+     * like {@link #setWeekPartitioned}, it must be called before any repository is created.
+     *
+     * @param directory the directory to keep the data files in
+     */
+    public static void setDataDirectory(Path directory)
+    {
+        dataDirectory = directory;
+    }
+
+    /**
+     * Gets the root directory all data files are kept in.
+     *
+     * @return the data directory, "data" unless {@link #setDataDirectory} moved it
+     */
+    public static Path getDataDirectory()
+    {
+        return dataDirectory;
+    }
+
+    /**
+     * Selects the storage layout for assignments and announcements.
+     * Must be called before any repository is created.
+     *
+     * @param partitioned true to store one file per ISO week, false for a single file per table
+     */
+    public static void setWeekPartitioned(boolean partitioned)
+    {
+        weekPartitioned = partitioned;
+    }
+
+    /**
+     * Checks whether a table is stored one file per ISO week.
+     * Only assignments and announcements are ever partitioned; they are the tables
+     * that grow all semester and are almost always queried one week at a time.
+     *
+     * @param tablePath the table's CSV path
+     * @return true if the table uses the week-partitioned layout
+     */
+    public static boolean isWeekPartitioned(Path tablePath)
+    {
+        return weekPartitioned && (tablePath.equals(getAssignmentsPath()) || tablePath.equals(getAnnouncementsPath()));
+    }
+
+    /**
+     * Gets the directory holding a table's week partitions and manifest,
+     * e.g. data/assignments/ for assignments.csv.
+     *
+     * @param tablePath the table's CSV path
+     * @return Path to the partition directory in the data directory
+     */
+    public static Path getPartitionDirectory(Path tablePath)
+    {
+        String fileName = tablePath.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        return tablePath.resolveSibling(dot > 0 ? fileName.substring(0, dot) : fileName);
+    }
+
+    /**
+     * Gets the directory {@link DataTransaction} stages tables and keeps its manifest in.
+     *
+     * @return Path to the generations directory in the data directory
+     */
+    public static Path getGenerationsDirectory()
+    {
+        return dataDirectory.resolve("generations");
+    }
+
+    /**
+     * Gets the directory {@link SemesterArchiver} keeps its compressed per-term archives in.
+     *
+     * @return Path to the archive directory in the data directory
+     */
+    public static Path getArchiveDirectory()
+    {
+        return dataDirectory.resolve("archive");
     }
 
     /**
@@ -62,7 +189,19 @@ public class CsvPaths
      */
     public static Path getSnapshotsPath()
     {
-        return Paths.get(DATA_DIR, "snapshots.json");
+        return dataDirectory.resolve("snapshots.json");
+    }
+
+    /**
+     * Gets the temporary sibling a file is written to before it replaces the file.
+     * The name carries this process's id, so two processes rewriting the same file never share one.
+     *
+     * @param file the file about to be replaced
+     * @return Path to the temporary file, e.g. data/tasks.csv.4711.tmp
+     */
+    static Path getTempPath(Path file)
+    {
+        return file.resolveSibling(file.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
     }
 
     /**
@@ -70,7 +209,7 @@ public class CsvPaths
      */
     public static void ensureDataDirectory()
     {
-        Path dataDir = Paths.get(DATA_DIR);
+        Path dataDir = dataDirectory;
         if (!dataDir.toFile().exists())
         {
             dataDir.toFile().mkdirs();
@@ -1,10 +1,14 @@
 package csusm.cougarplanner.io;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * CSV file reader that parses CSV files into lists of maps.
@@ -14,53 +18,293 @@ import java.util.stream.Collectors;
  */
 public class CsvReader
 {
+    // Files at least this large are parsed on several cores (see parseParallel)
+    private static volatile long parallelParseThreshold = 4L * 1024 * 1024;
+
+    // Smallest byte range worth handing to its own task
+    private static final int MIN_CHUNK_BYTES = 256 * 1024;
+
+    /**
+     * Sets the file size from which {@link #readAll(Path)} parses in parallel.
+     * Smaller files are parsed on the calling thread, where splitting would cost more than it saves.
+     *
+     * @param bytes the threshold in bytes; {@link Long#MAX_VALUE} disables parallel parsing
+     */
+    public static void setParallelParseThreshold(long bytes)
+    {
+        parallelParseThreshold = bytes;
+    }
 
     /**
      * Reads and parses CSV file into a list of record maps.
      *
      * Returns empty list if file doesn't exist or is empty
      * Normalizes headers to snake_case and lowercase
-     * Handles quoted values containing commas
+     * Handles quoted values containing commas or newlines
      * Trims whitespace from all values
      * Handles rows with missing columns
+     * Returns the cached result while the file is unchanged (see {@link ParsedFileCache})
      *
      * @param filePath the path to the CSV file to read
-     * @return List of maps, where each map represents a row with header→value mappings
+     * @return immutable List of immutable maps, where each map represents a row with header→value mappings
      * @throws IOException if the file exists but cannot be read (permission issues, etc.)
      */
     public List<Map<String, String>> readAll(Path filePath) throws IOException
+    {
+        FileStamp stamp = FileStamp.of(filePath);
+        if (stamp.equals(FileStamp.MISSING))
+        {
+            return List.of();
+        }
+
+        List<Map<String, String>> cached = ParsedFileCache.get(filePath, stamp);
+        if (cached != null)
+        {
+            return cached;
+        }
+
+        List<Map<String, String>> records = stamp.size() >= parallelParseThreshold
+                ? parseParallel(Files.readAllBytes(filePath))
+                : parse(Files.readString(filePath));
+
+        // Only caches if the file was not replaced while it was being read
+        if (stamp.equals(FileStamp.of(filePath)))
+        {
+            ParsedFileCache.put(filePath, stamp, records);
+        }
+        return records;
+    }
+
+    /**
+     * Reads just the header row of a CSV file, keeping the headers' original case.
+     *
+     * @param filePath the path to the CSV file
+     * @return the column headers in file order, empty if the file doesn't exist or is empty
+     * @throws IOException if the file exists but cannot be read
+     */
+    String[] readHeaders(Path filePath) throws IOException
     {
         if (!Files.exists(filePath))
         {
-            return new ArrayList<>();
+            return new String[0];
+        }
+        try (BufferedReader reader = Files.newBufferedReader(filePath))
+        {
+            String line = reader.readLine();
+            return line == null ? new String[0] : Arrays.stream(line.split(","))
+                    .map(String::trim)
+                    .toArray(String[]::new);
+        }
+    }
+
+    /**
+     * Re-keys rows read with lowercase keys by the original headers, which is how writers look values up.
+     */
+    static List<Map<String, String>> keyedByHeader(List<Map<String, String>> records, String[] headers)
+    {
+        List<Map<String, String>> rows = new ArrayList<>(records.size());
+        for (Map<String, String> record : records)
+        {
+            Map<String, String> row = new HashMap<>();
+            for (String header : headers)
+            {
+                row.put(header, record.get(header.toLowerCase()));
+            }
+            rows.add(row);
         }
+        return rows;
+    }
 
-        List<String> lines = Files.readAllLines(filePath);
+    /**
+     * Parses CSV text, header row first, into immutable record maps.
+     */
+    static List<Map<String, String>> parse(String text)
+    {
+        // Splits on newlines outside quotes so multi-line values stay in one record
+        List<String> lines = splitRecords(text);
         if (lines.isEmpty())
         {
-            return new ArrayList<>();
+            return List.of();
+        }
+
+        String[] headers = parseHeaders(lines.get(0));
+        List<Map<String, String>> records = new ArrayList<>();
+        for (int i = 1; i < lines.size(); i++)
+        {
+            records.add(toRecord(headers, lines.get(i)));
+        }
+
+        return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * Parses a large CSV file on the common {@link ForkJoinPool}, giving the same result as {@link #parse(String)}.
+     *
+     * The bytes are cut into equal ranges. Each range is moved forward to the first record boundary,
+     * i.e. the first newline outside quotes. Whether a range starts inside quotes depends only on
+     * how many quote characters come before it, so the ranges count their quotes in parallel
+     * first and a prefix sum of those counts gives each range's starting state. The resynchronized
+     * chunks are then decoded and parsed in parallel and concatenated in file order.
+     * Scanning raw bytes is safe for UTF-8, where '"' and '\n' never occur inside a multi-byte character.
+     */
+    static List<Map<String, String>> parseParallel(byte[] bytes)
+    {
+        int headerEnd = nextRecordStart(bytes, 0, false);
+        String headerLine = new String(bytes, 0, headerEnd, StandardCharsets.UTF_8).strip();
+        if (headerLine.isEmpty())
+        {
+            return List.of();
         }
+        String[] headers = parseHeaders(headerLine);
+
+        int bodyLength = bytes.length - headerEnd;
+        int ranges = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, bodyLength / MIN_CHUNK_BYTES));
+        int[] rangeStarts = new int[ranges + 1];
+        for (int i = 0; i <= ranges; i++)
+        {
+            rangeStarts[i] = headerEnd + (int) ((long) bodyLength * i / ranges);
+        }
+
+        // Pass 1: quote parity of each range, then a prefix sum for the state at each range start
+        int[] quoteCounts = IntStream.range(0, ranges).parallel()
+                .map(i -> countQuotes(bytes, rangeStarts[i], rangeStarts[i + 1]))
+                .toArray();
+        boolean[] startsInQuotes = new boolean[ranges];
+        int quotesBefore = 0;
+        for (int i = 0; i < ranges; i++)
+        {
+            startsInQuotes[i] = (quotesBefore & 1) == 1;
+            quotesBefore += quoteCounts[i];
+        }
+
+        // Pass 2: move each range start to the record boundary at or after it
+        int[] chunkStarts = new int[ranges + 1];
+        chunkStarts[0] = headerEnd;
+        chunkStarts[ranges] = bytes.length;
+        IntStream.range(1, ranges).parallel()
+                .forEach(i -> chunkStarts[i] = nextRecordStart(bytes, rangeStarts[i], startsInQuotes[i]));
+
+        // Pass 3: parse the chunks; the ordered stream keeps them in file order
+        List<List<Map<String, String>>> chunks = IntStream.range(0, ranges).parallel()
+                .mapToObj(i -> parseChunk(bytes, chunkStarts[i], chunkStarts[i + 1], headers))
+                .toList();
 
-        // Parses headers
-        String[] headers = Arrays.stream(lines.get(0).split(","))
+        List<Map<String, String>> records = new ArrayList<>();
+        for (List<Map<String, String>> chunk : chunks)
+        {
+            records.addAll(chunk);
+        }
+        return Collections.unmodifiableList(records);
+    }
+
+    private static List<Map<String, String>> parseChunk(byte[] bytes, int start, int end, String[] headers)
+    {
+        if (start >= end)
+        {
+            return List.of();
+        }
+        List<Map<String, String>> records = new ArrayList<>();
+        for (String line : splitRecords(new String(bytes, start, end - start, StandardCharsets.UTF_8)))
+        {
+            records.add(toRecord(headers, line));
+        }
+        return records;
+    }
+
+    /**
+     * Finds the first record start at or after a position: the byte after a newline outside quotes.
+     *
+     * @param inQuotes whether the position is inside a quoted value
+     * @return the index of the next record's first byte, or the array length if there is none
+     */
+    static int nextRecordStart(byte[] bytes, int from, boolean inQuotes)
+    {
+        for (int i = from; i < bytes.length; i++)
+        {
+            if (bytes[i] == '"')
+            {
+                inQuotes = !inQuotes;
+            }
+            else if (bytes[i] == '\n' && !inQuotes)
+            {
+                return i + 1;
+            }
+        }
+        return bytes.length;
+    }
+
+    private static int countQuotes(byte[] bytes, int from, int to)
+    {
+        int quotes = 0;
+        for (int i = from; i < to; i++)
+        {
+            if (bytes[i] == '"')
+            {
+                quotes++;
+            }
+        }
+        return quotes;
+    }
+
+    /**
+     * Normalizes a header line to trimmed, lowercase column names.
+     */
+    private static String[] parseHeaders(String line)
+    {
+        return Arrays.stream(line.split(","))
                 .map(String::trim)
                 .map(String::toLowerCase)
                 .toArray(String[]::new);
+    }
 
-        // Parses data rows
-        List<Map<String, String>> records = new ArrayList<>();
-        for (int i = 1; i < lines.size(); i++)
+    /**
+     * Parses one data record into an immutable map, ignoring values past the last header.
+     */
+    static Map<String, String> toRecord(String[] headers, String line)
+    {
+        String[] values = parseCsvLine(line);
+        Map<String, String> record = new HashMap<>();
+        for (int j = 0; j < Math.min(headers.length, values.length); j++)
         {
-            String[] values = parseCsvLine(lines.get(i));
-            Map<String, String> record = new HashMap<>();
+            record.put(headers[j], values[j].trim());
+        }
+        return Collections.unmodifiableMap(record);
+    }
 
-            for (int j = 0; j < Math.min(headers.length, values.length); j++)
+    /**
+     * Splits CSV text into records on newlines that are not inside quotes,
+     * so quoted values may span several lines.
+     *
+     * Drops a trailing carriage return from each record
+     * Skips empty records
+     *
+     * @param text the CSV text to split
+     * @return List of raw record strings, ready for {@link #parseCsvLine(String)}
+     */
+    static List<String> splitRecords(String text)
+    {
+        List<String> records = new ArrayList<>();
+        boolean inQuotes = false;
+        int start = 0;
+
+        for (int i = 0; i <= text.length(); i++)
+        {
+            char c = i < text.length() ? text.charAt(i) : '\n';
+            if (c == '"')
             {
-                record.put(headers[j], values[j].trim());
+                inQuotes = !inQuotes;
+            }
+            else if (c == '\n' && (!inQuotes || i == text.length()))
+            {
+                int end = (i > start && text.charAt(i - 1) == '\r') ? i - 1 : i;
+                if (end > start)
+                {
+                    records.add(text.substring(start, end));
+                }
+                start = i + 1;
+                inQuotes = false;
             }
-            records.add(record);
         }
-
         return records;
     }
 
@@ -69,21 +313,32 @@ public class CsvReader
      *
      * Tracks quote state to handle embedded commas
      * Handles double quotes for escaping
+     * Shared with {@link RecordJournal} and {@link SidecarIndex} so every reader splits fields identically
      *
      * @param line the CSV line to parse
      * @return array of string values from the CSV line
      */
-    private String[] parseCsvLine(String line)
+    static String[] parseCsvLine(String line)
     {
         List<String> values = new ArrayList<>();
         StringBuilder currentValue = new StringBuilder();
         boolean inQuotes = false;
 
-        for (char c : line.toCharArray())
+        for (int i = 0; i < line.length(); i++)
         {
+            char c = line.charAt(i);
             if (c == '"')
             {
-                inQuotes = !inQuotes;
+                // A doubled quote inside a quoted value is a literal quote (RFC 4180)
+                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"')
+                {
+                    currentValue.append('"');
+                    i++;
+                }
+                else
+                {
+                    inQuotes = !inQuotes;
+                }
             }
             else if (c == ',' && !inQuotes)
             {
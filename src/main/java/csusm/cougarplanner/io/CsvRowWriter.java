@@ -0,0 +1,397 @@
+package csusm.cougarplanner.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Streams CSV rows straight into a file.
+ *
+ * Fields are escaped as they are copied into a char buffer, which is encoded to UTF-8 and
+ * written to the file's channel whenever it fills, so a rewrite allocates nothing per row
+ * and holds at most one buffer of the file in memory. The buffers and the encoder are kept
+ * per thread and reused by the next writer opened on it.
+ *
+ * Every row, including the header, ends with the platform line separator.
+ * When writing an indexed table the writer also tracks the byte offset of each row and
+ * hands it, with the row's id and date fields, to a {@link SidecarIndex.Builder}.
+ */
+public final class CsvRowWriter implements Closeable
+{
+    private static final int BUFFER_CHARS = 32 * 1024;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private static final class Buffers
+    {
+        final CharBuffer chars = CharBuffer.allocate(BUFFER_CHARS);
+        // A UTF-16 char never needs more than three UTF-8 bytes, so one encode always fits
+        final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_CHARS * 3);
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        boolean inUse;
+    }
+
+    private final FileChannel channel;
+    private final Buffers buffers;
+    private boolean rowStarted;
+
+    // Only maintained while indexing
+    private SidecarIndex.Builder index;
+    private int idColumn = -1;
+    private int dateColumn = -1;
+    private int column;
+    private String rowId;
+    private String rowDate;
+    private long position; // Byte offset in the file of the next char written
+    private long rowStart;
+
+    private CsvRowWriter(FileChannel channel) throws IOException
+    {
+        this.channel = channel;
+        this.position = channel.size();
+        this.rowStart = position;
+        Buffers pooled = BUFFERS.get();
+        // A writer opened while another is still open on this thread gets its own buffers
+        this.buffers = pooled.inUse ? new Buffers() : pooled;
+        this.buffers.inUse = true;
+    }
+
+    /**
+     * Opens a file for writing from the start, replacing anything in it.
+     *
+     * @param file the file to write
+     * @return a writer positioned at the start of the empty file
+     * @throws IOException if the file cannot be opened
+     */
+    public static CsvRowWriter create(Path file) throws IOException
+    {
+        return new CsvRowWriter(FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Opens an existing file for appending rows. If the file's last row was written without
+     * a trailing line separator (as older versions did), one is written first.
+     *
+     * @param file the file to append to
+     * @return a writer positioned at the start of a new row
+     * @throws IOException if the file cannot be opened or read
+     */
+    public static CsvRowWriter append(Path file) throws IOException
+    {
+        boolean endsWithNewline = endsWithNewline(file);
+        CsvRowWriter writer = new CsvRowWriter(FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+        if (!endsWithNewline)
+        {
+            writer.write(LINE_SEPARATOR);
+            writer.position += LINE_SEPARATOR.length(); // ASCII, and not counted before indexing starts
+            writer.rowStart = writer.position;
+        }
+        return writer;
+    }
+
+    /**
+     * Reports every row written from now on to an index builder.
+     *
+     * @param builder the builder collecting the table's index
+     * @param headers the table's column headers, to find the indexed columns
+     */
+    void indexInto(SidecarIndex.Builder builder, String[] headers)
+    {
+        this.index = builder;
+        this.idColumn = Arrays.asList(headers).indexOf(builder.spec().idColumn());
+        this.dateColumn = Arrays.asList(headers).indexOf(builder.spec().dateColumn());
+        this.rowStart = position;
+    }
+
+    /**
+     * Writes the header row. Header names are written as they are, without quoting.
+     *
+     * @param headers column headers, in order
+     * @throws IOException if the file cannot be written
+     */
+    public void header(String[] headers) throws IOException
+    {
+        for (int i = 0; i < headers.length; i++)
+        {
+            if (i > 0)
+            {
+                put(',');
+            }
+            write(headers[i]);
+        }
+        write(LINE_SEPARATOR);
+        rowStart = position;
+    }
+
+    /**
+     * Writes a row from a record map, one field per header; missing values are written empty.
+     *
+     * @param headers column headers, in order
+     * @param record the row's values by header
+     * @throws IOException if the file cannot be written
+     */
+    public void row(String[] headers, Map<String, String> record) throws IOException
+    {
+        for (String header : headers)
+        {
+            field(record.get(header));
+        }
+        endRow();
+    }
+
+    /**
+     * Writes the next field of the current row, quoting it per RFC 4180 if it contains
+     * a comma, quote or newline.
+     *
+     * @param value the field value, null is written empty
+     * @throws IOException if the file cannot be written
+     */
+    public void field(String value) throws IOException
+    {
+        if (rowStarted)
+        {
+            put(',');
+        }
+        rowStarted = true;
+        if (index != null)
+        {
+            if (column == idColumn)
+            {
+                rowId = value;
+            }
+            else if (column == dateColumn)
+            {
+                rowDate = value;
+            }
+            column++;
+        }
+        if (value == null || value.isEmpty())
+        {
+            return;
+        }
+
+        int special = firstSpecial(value);
+        if (special < 0)
+        {
+            write(value);
+            return;
+        }
+
+        // Everything before the first special character is copied as is
+        put('"');
+        write(value, 0, special);
+        for (int i = special; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == '"')
+            {
+                put('"');
+            }
+            put(c);
+        }
+        put('"');
+    }
+
+    /**
+     * Ends the current row.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void endRow() throws IOException
+    {
+        write(LINE_SEPARATOR);
+        rowStarted = false;
+        if (index != null)
+        {
+            index.add(rowId, rowDate, rowStart, position - rowStart);
+            rowStart = position;
+            column = 0;
+            rowId = null;
+            rowDate = null;
+        }
+    }
+
+    /**
+     * Writes out everything buffered and closes the file.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            drain(true);
+            check(buffers.encoder.flush(buffers.bytes));
+            writeBytes();
+        }
+        finally
+        {
+            buffers.encoder.reset();
+            buffers.chars.clear();
+            buffers.bytes.clear();
+            buffers.inUse = false;
+            channel.close();
+        }
+    }
+
+    /**
+     * Escapes a value the same way {@link #field(String)} writes it.
+     *
+     * @param value the value to escape
+     * @return the value, quoted if needed
+     */
+    static String escape(String value)
+    {
+        if (value == null)
+        {
+            return "";
+        }
+        int special = firstSpecial(value);
+        if (special < 0)
+        {
+            return value;
+        }
+
+        StringBuilder escaped = new StringBuilder(value.length() + 8).append('"').append(value, 0, special);
+        for (int i = special; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == '"')
+            {
+                escaped.append('"');
+            }
+            escaped.append(c);
+        }
+        return escaped.append('"').toString();
+    }
+
+    /**
+     * Finds the first character that forces a value to be quoted.
+     *
+     * @return its index, or -1 if the value can be written as is
+     */
+    private static int firstSpecial(String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n')
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void put(char c) throws IOException
+    {
+        if (!buffers.chars.hasRemaining())
+        {
+            drain(false);
+        }
+        buffers.chars.put(c);
+        if (index != null)
+        {
+            position += utf8Length(c);
+        }
+    }
+
+    private void write(String text) throws IOException
+    {
+        write(text, 0, text.length());
+    }
+
+    private void write(String text, int start, int end) throws IOException
+    {
+        CharBuffer chars = buffers.chars;
+        while (start < end)
+        {
+            if (!chars.hasRemaining())
+            {
+                drain(false);
+            }
+            int count = Math.min(end - start, chars.remaining());
+            chars.put(text, start, start + count);
+            if (index != null)
+            {
+                for (int i = start; i < start + count; i++)
+                {
+                    position += utf8Length(text.charAt(i));
+                }
+            }
+            start += count;
+        }
+    }
+
+    /**
+     * Bytes a char takes in UTF-8; each half of a surrogate pair counts for half of its four bytes.
+     */
+    private static int utf8Length(char c)
+    {
+        if (c < 0x80)
+        {
+            return 1;
+        }
+        if (c < 0x800 || Character.isSurrogate(c))
+        {
+            return 2;
+        }
+        return 3;
+    }
+
+    /**
+     * Encodes the buffered chars and writes them out. A high surrogate at the very end is kept
+     * back until its pair arrives, unless this is the end of the input.
+     */
+    private void drain(boolean endOfInput) throws IOException
+    {
+        CharBuffer chars = buffers.chars;
+        chars.flip();
+        check(buffers.encoder.encode(chars, buffers.bytes, endOfInput));
+        chars.compact();
+        writeBytes();
+    }
+
+    private void writeBytes() throws IOException
+    {
+        ByteBuffer bytes = buffers.bytes;
+        bytes.flip();
+        while (bytes.hasRemaining())
+        {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    private static void check(CoderResult result) throws IOException
+    {
+        if (result.isError())
+        {
+            result.throwException();
+        }
+    }
+
+    private static boolean endsWithNewline(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size == 0)
+            {
+                return true;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, size - 1);
+            return last.get(0) == '\n';
+        }
+    }
+}
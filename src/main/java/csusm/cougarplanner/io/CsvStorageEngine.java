@@ -0,0 +1,80 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The default {@link StorageEngine}: each table is the CSV file at its own path,
+ * read with {@link CsvReader} and written with {@link CsvWriter}.
+ */
+public class CsvStorageEngine implements StorageEngine
+{
+    private final CsvReader csvReader = new CsvReader();
+    private final CsvWriter csvWriter = new CsvWriter();
+
+    @Override
+    public String name()
+    {
+        return StorageEngines.CSV;
+    }
+
+    @Override
+    public Path dataFile(Path tablePath)
+    {
+        return tablePath;
+    }
+
+    @Override
+    public List<Map<String, String>> readAll(Path tablePath) throws IOException
+    {
+        return FileLocks.shared(tablePath, () -> csvReader.readAll(DataTransaction.resolve(tablePath)));
+    }
+
+    @Override
+    public Path writeTemp(Path tablePath, List<Map<String, String>> records, String[] headers) throws IOException
+    {
+        return csvWriter.writeTemp(tablePath, records, headers);
+    }
+
+    @Override
+    public <T> Path writeTemp(Path tablePath, Collection<T> values, RecordCodec<T> codec) throws IOException
+    {
+        return csvWriter.writeTemp(tablePath, values, codec);
+    }
+
+    @Override
+    public void publish(Path tempFile, Path tablePath) throws IOException
+    {
+        csvWriter.publish(tempFile, tablePath);
+    }
+
+    @Override
+    public void appendAll(Path tablePath, List<Map<String, String>> records, String[] headers) throws IOException
+    {
+        // The header check and the append must see the same file
+        FileLocks.exclusive(tablePath, () -> {
+            appendLocked(tablePath, records, headers);
+            return null;
+        });
+    }
+
+    private void appendLocked(Path tablePath, List<Map<String, String>> records, String[] headers) throws IOException
+    {
+        String[] existing = csvReader.readHeaders(DataTransaction.resolve(tablePath));
+        if (existing.length > 0 && (!Arrays.equals(existing, headers) || DataTransaction.isActive()))
+        {
+            // The file predates a column change, where appending would misalign every new row,
+            // or a transaction needs a staged copy rather than a change in place
+            List<Map<String, String>> all = new ArrayList<>(CsvReader.keyedByHeader(readAll(tablePath), headers));
+            all.addAll(records);
+            writeAll(tablePath, all, headers);
+            return;
+        }
+        csvWriter.appendAll(tablePath, records, headers);
+    }
+}
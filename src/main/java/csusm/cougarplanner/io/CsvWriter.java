@@ -4,7 +4,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -28,28 +28,137 @@ public class CsvWriter
      */
     public void writeAll(Path filePath, List<Map<String, String>> records, String[] headers) throws IOException
     {
-        CsvPaths.ensureDataDirectory();
-
-        Path tempFile = filePath.resolveSibling(filePath.getFileName() + ".tmp");
-        List<String> lines = new ArrayList<>();
+        Path tempFile = writeTemp(filePath, records, headers);
+        publish(tempFile, filePath);
+    }
 
-        // Writes headers
-        lines.add(String.join(",", headers));
+    /**
+     * Writes the records to the temporary sibling of the target file without replacing it.
+     * Lets a caller do the slow part of a rewrite first and {@link #publish} it later,
+     * e.g. while holding a lock only for the move.
+     *
+     * @param filePath the CSV file the records are meant for
+     * @param records list of maps representing rows, with keys matching headers
+     * @param headers column headers for the CSV file
+     * @return the path of the written temporary file
+     * @throws IOException if the temporary file cannot be written
+     */
+    Path writeTemp(Path filePath, List<Map<String, String>> records, String[] headers) throws IOException
+    {
+        Path tempFile = tempFile(filePath);
+        SidecarIndex.Builder index = SidecarIndex.builder(filePath);
+        try (CsvRowWriter out = CsvRowWriter.create(tempFile))
+        {
+            if (index != null)
+            {
+                out.indexInto(index, headers);
+            }
+            out.header(headers);
+            for (Map<String, String> record : records)
+            {
+                out.row(headers, record);
+            }
+        }
+        writeIndex(index, tempFile, headers);
+        return tempFile;
+    }
 
-        // Writes records
-        for (Map<String, String> record : records)
+    /**
+     * Writes objects to the temporary sibling of the target file, streaming each one through
+     * its codec without building a record map first (see {@link RecordCodec#write}).
+     *
+     * @param filePath the CSV file the values are meant for
+     * @param values objects to write, one row each
+     * @param codec converts the objects to rows
+     * @return the path of the written temporary file
+     * @throws IOException if the temporary file cannot be written
+     */
+    <T> Path writeTemp(Path filePath, Collection<T> values, RecordCodec<T> codec) throws IOException
+    {
+        Path tempFile = tempFile(filePath);
+        SidecarIndex.Builder index = SidecarIndex.builder(filePath);
+        try (CsvRowWriter out = CsvRowWriter.create(tempFile))
         {
-            String[] values = new String[headers.length];
-            for (int i = 0; i < headers.length; i++)
+            if (index != null)
             {
-                String value = record.get(headers[i]);
-                values[i] = escapeCsvValue(value != null ? value : "");
+                out.indexInto(index, codec.headers());
             }
-            lines.add(String.join(",", values));
+            out.header(codec.headers());
+            for (T value : values)
+            {
+                codec.write(value, out);
+            }
+        }
+        writeIndex(index, tempFile, codec.headers());
+        return tempFile;
+    }
+
+    private static Path tempFile(Path filePath)
+    {
+        CsvPaths.ensureDataDirectory();
+        return CsvPaths.getTempPath(filePath);
+    }
+
+    /**
+     * Writes the sidecar index of a just-written file next to it, if the table is indexed.
+     */
+    private static void writeIndex(SidecarIndex.Builder index, Path csvFile, String[] headers) throws IOException
+    {
+        if (index != null)
+        {
+            index.write(csvFile, SidecarIndex.indexPath(csvFile), headers);
         }
+    }
 
-        Files.write(tempFile, lines);
+    /**
+     * Writes objects to a CSV file with atomic operation, streaming each through its codec.
+     *
+     * @param filePath the path to the CSV file to write
+     * @param values objects to write, one row each
+     * @param codec converts the objects to rows
+     * @throws IOException if the file cannot be written
+     */
+    public <T> void writeAll(Path filePath, Collection<T> values, RecordCodec<T> codec) throws IOException
+    {
+        publish(writeTemp(filePath, values, codec), filePath);
+    }
+
+    /**
+     * Atomically replaces the target file with a temporary file from {@link #writeTemp},
+     * holding the file's exclusive {@link FileLocks lock} so no other process reads the file
+     * and its index out of step.
+     *
+     * @param tempFile the written temporary file
+     * @param filePath the CSV file to replace
+     * @throws IOException if the move fails
+     */
+    void publish(Path tempFile, Path filePath) throws IOException
+    {
+        if (DataTransaction.stage(tempFile, filePath))
+        {
+            return;
+        }
+        FileLocks.exclusive(filePath, () -> {
+            replace(tempFile, filePath);
+            return null;
+        });
+    }
+
+    private static void replace(Path tempFile, Path filePath) throws IOException
+    {
         Files.move(tempFile, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ParsedFileCache.invalidate(filePath);
+
+        // The index describes the file by size and modification time, which the move keeps
+        Path tempIndex = SidecarIndex.indexPath(tempFile);
+        if (Files.exists(tempIndex))
+        {
+            Files.move(tempIndex, SidecarIndex.indexPath(filePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        else
+        {
+            SidecarIndex.discard(filePath);
+        }
     }
 
     /**
@@ -64,38 +173,70 @@ public class CsvWriter
     public void append(Path filePath, Map<String, String> record, String[] headers) throws IOException
     {
         CsvPaths.ensureDataDirectory();
+        appendAll(filePath, List.of(record), headers);
+    }
+
+    /**
+     * Appends several records to an existing CSV file in a single write.
+     * Creates the file with headers if it doesn't exist.
+     *
+     * @param filePath the path to the CSV file to append to
+     * @param records the records to append as maps
+     * @param headers column headers for the CSV file
+     * @throws IOException if the file cannot be written or appended to
+     */
+    public void appendAll(Path filePath, List<Map<String, String>> records, String[] headers) throws IOException
+    {
+        // Other processes must not read a partly appended row
+        FileLocks.exclusive(filePath, () -> {
+            appendLocked(filePath, records, headers);
+            return null;
+        });
+    }
 
-        // If file doesn't exist, creates it with headers
+    private void appendLocked(Path filePath, List<Map<String, String>> records, String[] headers) throws IOException
+    {
         if (!Files.exists(filePath))
         {
-            writeAll(filePath, List.of(record), headers);
+            writeAll(filePath, records, headers);
             return;
         }
 
-        // Appends to existing file
-        String line = String.join(",",
-                java.util.Arrays.stream(headers)
-                        .map(header -> escapeCsvValue(record.get(header)))
-                        .toArray(String[]::new)
-        );
+        // Seeded with the current index before the file changes; null if the table has none to extend
+        SidecarIndex.Builder index = SidecarIndex.builderForAppend(filePath);
+        try (CsvRowWriter out = CsvRowWriter.append(filePath))
+        {
+            if (index != null)
+            {
+                out.indexInto(index, headers);
+            }
+            for (Map<String, String> record : records)
+            {
+                out.row(headers, record);
+            }
+        }
+        ParsedFileCache.invalidate(filePath);
 
-        Files.write(filePath, (System.lineSeparator() + line).getBytes(), java.nio.file.StandardOpenOption.APPEND);
+        if (index != null)
+        {
+            index.write(filePath, SidecarIndex.indexPath(filePath), headers);
+        }
+        else
+        {
+            SidecarIndex.discard(filePath);
+        }
     }
 
     /**
      * Escapes CSV values according to RFC 4180 CSV formatting rules.
      * Wraps values in quotes if they contain commas, quotes, or newlines.
+     * Shared with {@link RecordJournal} so journal lines use the same quoting.
      *
      * @param value the string value to escape for CSV
      * @return properly escaped CSV value
      */
-    private String escapeCsvValue(String value)
+    static String escapeCsvValue(String value)
     {
-        if (value == null) return "";
-        if (value.contains(",") || value.contains("\"") || value.contains("\n"))
-        {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
-        }
-        return value;
+        return CsvRowWriter.escape(value);
     }
 }
\ No newline at end of file
@@ -0,0 +1,532 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Groups table writes so they reach disk together, e.g. the courses and announcements
+ * saved by one Canvas sync.
+ *
+ * While a transaction is open on a thread, every table that thread replaces through a
+ * {@link StorageEngine} is staged in a new generation directory (data/generations/&lt;n&gt;/)
+ * instead of over its data file, and reads on that thread see the staged copy; appends
+ * become rewrites of it. {@link #commit()} then
+ * 1. fsyncs the staged files and the generation directory as one group,
+ * 2. writes the list of staged files to data/generations/CURRENT with a single atomic
+ *    rename, which is the commit point, and
+ * 3. moves every staged file over its data file, then deletes the manifest.
+ * A crash before the rename leaves only an unused generation directory; a crash during
+ * step 3 is finished by {@link #recover()} on the next start. Either way, after a crash
+ * every table is found either before or after the whole transaction.
+ *
+ * Each data file is swapped by one atomic rename, but the files are swapped one after another.
+ * A reader that reads several tables and needs them from the same generation does so inside
+ * {@link #readConsistent}, which waits while step 3 runs in this process, so it sees every
+ * table either before or after the whole transaction. Other processes read the data files
+ * directly and get no such guarantee; across processes this is crash atomicity, not isolation.
+ *
+ * While a transaction is open it holds a lock on a "&lt;n&gt;.lock" file next to its generation
+ * directory, so {@link #recover()} in another running instance leaves the directory alone.
+ *
+ * A table written inside a transaction should not be written on another thread until
+ * the transaction ends, or the commit will replace that write.
+ *
+ * Usage: {@code try (DataTransaction transaction = DataTransaction.begin()) { ...; transaction.commit(); }}
+ * Closing a transaction that was not committed rolls it back.
+ */
+public final class DataTransaction implements AutoCloseable
+{
+    private static final String MANIFEST = "CURRENT";
+    private static final ThreadLocal<DataTransaction> ACTIVE = new ThreadLocal<>();
+    private static final AtomicLong NEXT_GENERATION = new AtomicLong(System.currentTimeMillis());
+
+    // Write-held from writing the manifest until its files are installed, so a later commit never
+    // replaces it early and readConsistent() never sees half of it; read-held by readConsistent()
+    private static final ReentrantReadWriteLock GENERATION_LOCK = new ReentrantReadWriteLock();
+
+    private final Path directory;
+    private final FileLock lock; // marks the generation directory as in use, see tryLockGeneration()
+    private final Map<Path, Path> staged = new LinkedHashMap<>(); // data file -> staged copy
+    private final List<Runnable> rollbackActions = new ArrayList<>();
+    private boolean finished;
+
+    private DataTransaction(Path directory, FileLock lock)
+    {
+        this.directory = directory;
+        this.lock = lock;
+    }
+
+    /**
+     * Opens a transaction on the calling thread.
+     *
+     * @return the new transaction
+     * @throws IOException if its generation directory cannot be created
+     * @throws IllegalStateException if the thread already has an open transaction
+     */
+    public static DataTransaction begin() throws IOException
+    {
+        if (ACTIVE.get() != null)
+        {
+            throw new IllegalStateException("A data transaction is already open on this thread");
+        }
+
+        Path root = CsvPaths.getGenerationsDirectory();
+        Files.createDirectories(root);
+        while (true)
+        {
+            Path directory = root.resolve(Long.toString(NEXT_GENERATION.incrementAndGet()));
+            // Locked before the directory exists, so recover() never sees it unlocked
+            FileLock lock = tryLockGeneration(directory);
+            if (lock == null)
+            {
+                continue;
+            }
+            try
+            {
+                Files.createDirectory(directory);
+            }
+            catch (FileAlreadyExistsException e)
+            {
+                lock.channel().close();
+                continue;
+            }
+            catch (IOException e)
+            {
+                unlockGeneration(lock, directory);
+                throw e;
+            }
+            DataTransaction transaction = new DataTransaction(directory, lock);
+            ACTIVE.set(transaction);
+            return transaction;
+        }
+    }
+
+    /**
+     * @return true if the calling thread has an open transaction
+     */
+    static boolean isActive()
+    {
+        return ACTIVE.get() != null;
+    }
+
+    /**
+     * Gets the file to read a data file from on the calling thread: its staged copy if the
+     * thread's transaction replaced it, otherwise the data file itself.
+     */
+    static Path resolve(Path dataFile)
+    {
+        DataTransaction transaction = ACTIVE.get();
+        if (transaction == null)
+        {
+            return dataFile;
+        }
+        return transaction.staged.getOrDefault(dataFile, dataFile);
+    }
+
+    /**
+     * Stages a written temporary file (and its sidecar index, if any) in the calling thread's
+     * transaction instead of publishing it.
+     *
+     * @param tempFile the file from {@link StorageEngine#writeTemp}
+     * @param dataFile the data file it replaces
+     * @return true if it was staged, false if there is no open transaction and the caller should publish it
+     * @throws IOException if the file cannot be moved into the generation directory
+     */
+    static boolean stage(Path tempFile, Path dataFile) throws IOException
+    {
+        DataTransaction transaction = ACTIVE.get();
+        if (transaction == null)
+        {
+            return false;
+        }
+
+        // A table written twice keeps one staged copy
+        Path copy = transaction.staged.get(dataFile);
+        if (copy == null)
+        {
+            copy = transaction.directory.resolve(transaction.staged.size() + "-" + dataFile.getFileName());
+        }
+        Files.move(tempFile, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ParsedFileCache.invalidate(copy);
+
+        Path tempIndex = SidecarIndex.indexPath(tempFile);
+        if (Files.exists(tempIndex))
+        {
+            Files.move(tempIndex, SidecarIndex.indexPath(copy), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        else
+        {
+            Files.deleteIfExists(SidecarIndex.indexPath(copy));
+        }
+        transaction.staged.put(dataFile, copy);
+        return true;
+    }
+
+    /**
+     * Registers an action to run if the calling thread's transaction is rolled back,
+     * e.g. to drop rows a table already holds in memory. Does nothing outside a transaction.
+     *
+     * @param action the action to run on rollback
+     */
+    static void onRollback(Runnable action)
+    {
+        DataTransaction transaction = ACTIVE.get();
+        if (transaction != null)
+        {
+            transaction.rollbackActions.add(action);
+        }
+    }
+
+    /**
+     * Makes every staged table durable and visible at once.
+     * Once the manifest is written the transaction counts as committed even if moving the
+     * files fails; the move is then retried by {@link #recover()} on the next start.
+     *
+     * @throws IOException if the transaction cannot be committed
+     * @throws IllegalStateException if the transaction already ended
+     */
+    public void commit() throws IOException
+    {
+        if (finished)
+        {
+            throw new IllegalStateException("The data transaction already ended");
+        }
+        if (staged.isEmpty())
+        {
+            finished = true;
+            ACTIVE.remove();
+            deleteRecursively(directory);
+            unlockGeneration(lock, directory);
+            return;
+        }
+
+        // The one durability barrier: every staged file, then the directory that names them
+        for (Path copy : staged.values())
+        {
+            forceFile(copy);
+            Path copyIndex = SidecarIndex.indexPath(copy);
+            if (Files.exists(copyIndex))
+            {
+                forceFile(copyIndex);
+            }
+        }
+        forceDirectory(directory);
+
+        GENERATION_LOCK.writeLock().lock();
+        try
+        {
+            writeManifest();
+            finished = true;
+            ACTIVE.remove();
+
+            Set<Path> directories = new LinkedHashSet<>();
+            for (Map.Entry<Path, Path> entry : staged.entrySet())
+            {
+                install(entry.getKey(), entry.getValue());
+                directories.add(parentOf(entry.getKey()));
+            }
+            for (Path dataDirectory : directories)
+            {
+                forceDirectory(dataDirectory);
+            }
+            // Installed, so the next start has nothing to finish
+            Files.deleteIfExists(directory.getParent().resolve(MANIFEST));
+        }
+        finally
+        {
+            GENERATION_LOCK.writeLock().unlock();
+        }
+        deleteRecursively(directory);
+        unlockGeneration(lock, directory);
+    }
+
+    /**
+     * Reads that must see every table from the same generation.
+     */
+    @FunctionalInterface
+    public interface Read<R>
+    {
+        R run() throws IOException;
+    }
+
+    /**
+     * Runs reads of several tables so that no commit in this process installs its files
+     * in between; they see each transaction either not at all or completely.
+     * The reads must not commit a transaction themselves.
+     *
+     * @param read the reads to run
+     * @return what the reads return
+     * @throws IOException if a read fails
+     */
+    public static <R> R readConsistent(Read<R> read) throws IOException
+    {
+        GENERATION_LOCK.readLock().lock();
+        try
+        {
+            return read.run();
+        }
+        finally
+        {
+            GENERATION_LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rolls the transaction back unless it was committed.
+     */
+    @Override
+    public void close()
+    {
+        if (finished)
+        {
+            return;
+        }
+        finished = true;
+        ACTIVE.remove();
+
+        for (Path copy : staged.values())
+        {
+            ParsedFileCache.invalidate(copy);
+        }
+        try
+        {
+            deleteRecursively(directory);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Could not delete " + directory + ": " + e.getMessage());
+        }
+        unlockGeneration(lock, directory);
+        for (Runnable action : rollbackActions)
+        {
+            action.run();
+        }
+    }
+
+    /**
+     * Finishes a transaction that was committed but not fully installed when the app last
+     * stopped, and deletes the generation directories of transactions that never committed.
+     * Generations still locked by a live transaction, e.g. of another running instance, are
+     * left alone; that instance installs or discards them itself.
+     * Must run before any repository opens its files.
+     */
+    public static void recover()
+    {
+        Path root = CsvPaths.getGenerationsDirectory();
+        if (!Files.isDirectory(root))
+        {
+            return;
+        }
+
+        try
+        {
+            Path manifest = root.resolve(MANIFEST);
+            if (Files.exists(manifest))
+            {
+                List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+                Path directory = root.resolve(lines.get(0));
+                FileLock lock = tryLockGeneration(directory);
+                if (lock != null)
+                {
+                    try
+                    {
+                        for (String line : lines.subList(1, lines.size()))
+                        {
+                            String[] entry = line.split("\t", 2);
+                            install(Path.of(entry[0]), directory.resolve(entry[1]));
+                        }
+                        Files.deleteIfExists(manifest);
+                        forceDirectory(root);
+                        deleteRecursively(directory);
+                    }
+                    finally
+                    {
+                        unlockGeneration(lock, directory);
+                    }
+                }
+            }
+
+            try (Stream<Path> generations = Files.list(root))
+            {
+                for (Path generation : generations.filter(Files::isDirectory).toList())
+                {
+                    FileLock lock = tryLockGeneration(generation);
+                    if (lock == null)
+                    {
+                        continue; // Still being staged or committed
+                    }
+                    try
+                    {
+                        deleteRecursively(generation);
+                    }
+                    finally
+                    {
+                        unlockGeneration(lock, generation);
+                    }
+                }
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            System.err.println("Could not recover data transaction in " + root + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes the lock a live transaction holds on its generation directory.
+     *
+     * @param directory the generation directory, which need not exist yet
+     * @return the lock, or null if a transaction of this or another process holds it
+     * @throws IOException if the lock file cannot be opened
+     */
+    private static FileLock tryLockGeneration(Path directory) throws IOException
+    {
+        FileChannel channel = FileChannel.open(lockPathOf(directory), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try
+        {
+            FileLock lock = channel.tryLock();
+            if (lock != null)
+            {
+                return lock;
+            }
+        }
+        catch (OverlappingFileLockException e)
+        {
+            // Held by a transaction of this process
+        }
+        channel.close();
+        return null;
+    }
+
+    /**
+     * Releases a generation's lock and deletes its lock file, once the directory is gone or handed over.
+     */
+    private static void unlockGeneration(FileLock lock, Path directory)
+    {
+        try
+        {
+            lock.channel().close();
+            Files.deleteIfExists(lockPathOf(directory));
+        }
+        catch (IOException e)
+        {
+            System.err.println("Could not release " + lockPathOf(directory) + ": " + e.getMessage());
+        }
+    }
+
+    private static Path lockPathOf(Path directory)
+    {
+        return directory.resolveSibling(directory.getFileName() + ".lock");
+    }
+
+    /**
+     * Writes the list of staged files and swaps it in as the current manifest.
+     * Format: the generation directory's name, then one "data file TAB staged file name" line per table.
+     */
+    private void writeManifest() throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add(directory.getFileName().toString());
+        for (Map.Entry<Path, Path> entry : staged.entrySet())
+        {
+            lines.add(entry.getKey() + "\t" + entry.getValue().getFileName());
+        }
+
+        Path root = directory.getParent();
+        Path temp = root.resolve(MANIFEST + ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        forceFile(temp);
+        Files.move(temp, root.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(root);
+    }
+
+    /**
+     * Moves a staged copy over its data file, under the file's exclusive {@link FileLocks lock}.
+     * Safe to repeat after a crash part way through: a step whose source is gone has already happened.
+     */
+    private static void install(Path dataFile, Path copy) throws IOException
+    {
+        FileLocks.exclusive(dataFile, () -> {
+            installLocked(dataFile, copy);
+            return null;
+        });
+    }
+
+    private static void installLocked(Path dataFile, Path copy) throws IOException
+    {
+        // The index goes first; if only it arrives, it no longer matches the data file and is rebuilt
+        Path copyIndex = SidecarIndex.indexPath(copy);
+        boolean hasIndex = Files.exists(copyIndex);
+        if (hasIndex)
+        {
+            Files.move(copyIndex, SidecarIndex.indexPath(dataFile), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (Files.exists(copy))
+        {
+            if (!hasIndex)
+            {
+                SidecarIndex.discard(dataFile);
+            }
+            Files.createDirectories(parentOf(dataFile));
+            Files.move(copy, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        ParsedFileCache.invalidate(dataFile);
+        ParsedFileCache.invalidate(copy);
+    }
+
+    private static Path parentOf(Path file)
+    {
+        Path parent = file.toAbsolutePath().getParent();
+        return parent != null ? parent : file.toAbsolutePath();
+    }
+
+    /**
+     * Flushes a file's contents to the storage device.
+     */
+    static void forceFile(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            channel.force(true);
+        }
+    }
+
+    private static void forceDirectory(Path directory)
+    {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ))
+        {
+            channel.force(true);
+        }
+        catch (IOException e)
+        {
+            // Some platforms (Windows) cannot open a directory; the file renames are still atomic there
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException
+    {
+        if (!Files.exists(directory))
+        {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory))
+        {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+            {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Advisory locks that keep other processes (a second instance, a headless sync job) from
+ * reading a data file while it is half written, or writing it at the same time as this one.
+ *
+ * Each data file gets a "&lt;file&gt;.lock" sidecar that is never replaced; the data file itself
+ * is swapped by atomic renames, and a lock on it would stay behind with the old file.
+ * Readers take a shared {@link FileLock} on the sidecar and writers an exclusive one.
+ * The JVM holds file locks for the whole process, so threads of this process are kept apart
+ * by a {@link ReentrantReadWriteLock} per file, and the file lock is taken by the first of
+ * them and released by the last.
+ *
+ * Both locks are reentrant, and a thread holding the exclusive lock may also take the shared one.
+ * A thread holding only the shared lock must not ask for the exclusive one.
+ */
+final class FileLocks
+{
+    /**
+     * Work done while a lock is held.
+     */
+    @FunctionalInterface
+    interface IOAction<R>
+    {
+        R run() throws IOException;
+    }
+
+    private static final Map<Path, LockState> STATES = new ConcurrentHashMap<>();
+
+    private static final class LockState
+    {
+        private final ReentrantReadWriteLock threads = new ReentrantReadWriteLock();
+
+        // Guarded by this: the lock on the sidecar, held while any thread of this process holds either lock
+        private FileChannel channel;
+        private FileLock fileLock;
+        private int holders;
+    }
+
+    private FileLocks()
+    {
+    }
+
+    /**
+     * Runs an action while no other thread or process writes a data file.
+     * If the file's directory does not exist yet there is nothing to read, and no lock is taken.
+     *
+     * @param dataFile the data file to read
+     * @param action the reads to do
+     * @return the action's result
+     * @throws IOException if the lock cannot be taken or the action fails
+     */
+    static <R> R shared(Path dataFile, IOAction<R> action) throws IOException
+    {
+        Path lockFile = lockPath(dataFile);
+        if (!Files.isDirectory(lockFile.getParent()))
+        {
+            return action.run();
+        }
+        return locked(lockFile, true, action);
+    }
+
+    /**
+     * Runs an action while no other thread or process reads or writes a data file.
+     *
+     * @param dataFile the data file to write
+     * @param action the writes to do
+     * @return the action's result
+     * @throws IOException if the lock cannot be taken or the action fails
+     */
+    static <R> R exclusive(Path dataFile, IOAction<R> action) throws IOException
+    {
+        Path lockFile = lockPath(dataFile);
+        Files.createDirectories(lockFile.getParent());
+        return locked(lockFile, false, action);
+    }
+
+    /**
+     * Gets the sidecar a data file is locked through, e.g. data/tasks.csv.lock.
+     */
+    static Path lockPath(Path dataFile)
+    {
+        Path absolute = dataFile.toAbsolutePath().normalize();
+        return absolute.resolveSibling(absolute.getFileName() + ".lock");
+    }
+
+    private static <R> R locked(Path lockFile, boolean shared, IOAction<R> action) throws IOException
+    {
+        LockState state = STATES.computeIfAbsent(lockFile, path -> new LockState());
+        Lock threadLock = shared ? state.threads.readLock() : state.threads.writeLock();
+        threadLock.lock();
+        try
+        {
+            acquire(state, lockFile, shared);
+            try
+            {
+                return action.run();
+            }
+            finally
+            {
+                release(state);
+            }
+        }
+        finally
+        {
+            threadLock.unlock();
+        }
+    }
+
+    private static void acquire(LockState state, Path lockFile, boolean shared) throws IOException
+    {
+        synchronized (state)
+        {
+            if (state.holders == 0)
+            {
+                // Blocks until the other process is done; threads of this one wait on the monitor meanwhile
+                FileChannel channel = FileChannel.open(lockFile,
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                try
+                {
+                    state.fileLock = channel.lock(0, Long.MAX_VALUE, shared);
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    channel.close();
+                    throw e;
+                }
+                state.channel = channel;
+            }
+            state.holders++;
+        }
+    }
+
+    private static void release(LockState state) throws IOException
+    {
+        synchronized (state)
+        {
+            if (--state.holders > 0)
+            {
+                return;
+            }
+            try
+            {
+                state.fileLock.release();
+            }
+            finally
+            {
+                state.channel.close();
+                state.fileLock = null;
+                state.channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Size, modification time and file key of a file at one point in time.
+ * Two equal stamps mean the file was (almost certainly) not changed in between,
+ * so whatever was parsed from it is still current.
+ *
+ * @param size the file size in bytes, -1 if the file did not exist
+ * @param lastModified the modification time in milliseconds
+ * @param fileKey the file system's identity for the file, may be null
+ */
+record FileStamp(long size, long lastModified, Object fileKey)
+{
+    static final FileStamp MISSING = new FileStamp(-1, 0, null);
+
+    /**
+     * Reads the current stamp of a file.
+     *
+     * @param path the file to stamp
+     * @return the file's stamp, or {@link #MISSING} if it does not exist
+     * @throws IOException if the attributes cannot be read
+     */
+    static FileStamp of(Path path) throws IOException
+    {
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileStamp(attributes.size(), attributes.lastModifiedTime().toMillis(), attributes.fileKey());
+        }
+        catch (NoSuchFileException e)
+        {
+            return MISSING;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package csusm.cougarplanner.io;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared cache of parsed CSV files, used by {@link CsvReader#readAll(Path)}.
+ *
+ * Each entry remembers the {@link FileStamp} the file had when it was parsed and is
+ * only returned while the file still has that stamp, so an unchanged file is never
+ * parsed twice. {@link CsvWriter} drops the entry for every file it writes, which
+ * covers writes that land within the file system's timestamp resolution.
+ *
+ * Cached results are immutable because every caller gets the same instance.
+ */
+final class ParsedFileCache
+{
+    private record Entry(FileStamp stamp, List<Map<String, String>> records) {}
+
+    private static final Map<Path, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private ParsedFileCache()
+    {
+    }
+
+    /**
+     * Gets the parsed records of a file if they were parsed from its current version.
+     *
+     * @param filePath the parsed file
+     * @param stamp the file's current stamp
+     * @return the cached records, or null if there are none for this stamp
+     */
+    static List<Map<String, String>> get(Path filePath, FileStamp stamp)
+    {
+        Entry entry = ENTRIES.get(key(filePath));
+        return entry != null && entry.stamp().equals(stamp) ? entry.records() : null;
+    }
+
+    /**
+     * Stores the parsed records of a file.
+     *
+     * @param filePath the parsed file
+     * @param stamp the stamp the file had while it was parsed
+     * @param records the parsed records, already immutable
+     */
+    static void put(Path filePath, FileStamp stamp, List<Map<String, String>> records)
+    {
+        ENTRIES.put(key(filePath), new Entry(stamp, records));
+    }
+
+    /**
+     * Drops the cached records of a file, e.g. because it is being written.
+     *
+     * @param filePath the file that changed
+     */
+    static void invalidate(Path filePath)
+    {
+        ENTRIES.remove(key(filePath));
+    }
+
+    private static Path key(Path filePath)
+    {
+        return filePath.toAbsolutePath().normalize();
+    }
+}
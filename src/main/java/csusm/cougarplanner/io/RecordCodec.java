@@ -0,0 +1,60 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Converts between a model object and its CSV record for a {@link ResidentTable}.
+ *
+ * Records use the same snake_case Map form as {@link CsvReader} and {@link CsvWriter}.
+ *
+ * @param <T> the model type stored in the table
+ */
+public interface RecordCodec<T>
+{
+    /**
+     * @return column headers of the CSV file, in file order
+     */
+    String[] headers();
+
+    /**
+     * @param record a CSV row as read by {@link CsvReader}
+     * @return a new model object populated from the row
+     */
+    T decode(Map<String, String> record);
+
+    /**
+     * @param value the model object to convert
+     * @return the CSV row for the object
+     */
+    Map<String, String> encode(T value);
+
+    /**
+     * Streams the object as one CSV row, fields in {@link #headers()} order.
+     * Goes through {@link #encode} by default; codecs for large tables override it
+     * to write their fields directly.
+     *
+     * @param value the model object to write
+     * @param out the writer, positioned at the start of a row
+     * @throws IOException if the row cannot be written
+     */
+    default void write(T value, CsvRowWriter out) throws IOException
+    {
+        out.row(headers(), encode(value));
+    }
+
+    /**
+     * @param record a CSV row
+     * @return the row's primary key
+     */
+    String id(Map<String, String> record);
+
+    /**
+     * Gets the date the table indexes the row by, e.g. an assignment's due date.
+     *
+     * @param record a CSV row
+     * @return the indexed date, or null if the row has none or the table has no date index
+     */
+    LocalDate indexDate(Map<String, String> record);
+}
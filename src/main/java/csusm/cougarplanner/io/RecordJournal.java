@@ -0,0 +1,225 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only log of CSV-encoded records.
+ *
+ * Each record is one CSV line (quoted values may span lines) appended to the end of the file,
+ * so writing a record costs the same no matter how long the log already is.
+ * For compaction the live file is rotated to a ".compacting" sibling; new records keep going
+ * to a fresh live file while the rotated one is folded into its base file and discarded.
+ *
+ * One instance is shared per path so every user of a journal locks on the same object.
+ * Callers that must see the base file and the journal together synchronize on the journal.
+ * Other processes are kept out through the live file's {@link FileLocks lock}: appends,
+ * rotation and deletion take it exclusively, reads shared.
+ */
+public class RecordJournal
+{
+    private static final Map<Path, RecordJournal> JOURNALS = new ConcurrentHashMap<>();
+
+    private final Path livePath;
+    private final Path rotatedPath;
+    private int liveRecordCount = -1; // Counted lazily on first use
+
+    private RecordJournal(Path livePath)
+    {
+        this.livePath = livePath;
+        this.rotatedPath = livePath.resolveSibling(livePath.getFileName() + ".compacting");
+    }
+
+    /**
+     * Gets the shared journal for the given file.
+     *
+     * @param livePath the path of the journal file
+     * @return the journal instance for that path
+     */
+    public static RecordJournal open(Path livePath)
+    {
+        return JOURNALS.computeIfAbsent(livePath.toAbsolutePath().normalize(), RecordJournal::new);
+    }
+
+    /**
+     * Replaces the whole journal with the given records, e.g. to drop records a newer one made moot.
+     * The new live file is written aside and swapped in with an atomic move.
+     *
+     * @param records the records to keep, each an array of field values
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void rewrite(List<String[]> records) throws IOException
+    {
+        CsvPaths.ensureDataDirectory();
+        byte[] bytes = encode(records).getBytes(StandardCharsets.UTF_8);
+        FileLocks.exclusive(livePath, () -> {
+            Path temp = CsvPaths.getTempPath(livePath);
+            Files.write(temp, bytes);
+            Files.move(temp, livePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(rotatedPath);
+            liveRecordCount = records.size();
+            return null;
+        });
+    }
+
+    /**
+     * Appends records to the live journal in a single write.
+     *
+     * @param records records to append, each an array of field values
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void append(List<String[]> records) throws IOException
+    {
+        if (records.isEmpty())
+        {
+            return;
+        }
+        CsvPaths.ensureDataDirectory();
+
+        byte[] bytes = encode(records).getBytes(StandardCharsets.UTF_8);
+        FileLocks.exclusive(livePath, () -> {
+            int known = liveRecordCount();
+            Files.write(livePath, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            liveRecordCount = known + records.size();
+            return null;
+        });
+    }
+
+    /**
+     * Reads every record not yet compacted: the rotated file first, then the live file.
+     *
+     * @return records in the order they were appended
+     * @throws IOException if a journal file exists but cannot be read
+     */
+    public synchronized List<String[]> readAll() throws IOException
+    {
+        return FileLocks.shared(livePath, () -> {
+            List<String[]> records = readFile(rotatedPath);
+            records.addAll(readFile(livePath));
+            return records;
+        });
+    }
+
+    /**
+     * Gets the number of records in the live file.
+     *
+     * @return records appended since the last rotation
+     * @throws IOException if the live file cannot be read for the initial count
+     */
+    public synchronized int size() throws IOException
+    {
+        return liveRecordCount();
+    }
+
+    /**
+     * Moves the live file aside for compaction.
+     * If an earlier compaction never finished, its rotated file is kept and the live file is left alone.
+     *
+     * @return true if there is a rotated file to compact
+     * @throws IOException if the live file cannot be moved
+     */
+    public synchronized boolean rotate() throws IOException
+    {
+        return FileLocks.exclusive(livePath, this::rotateLocked);
+    }
+
+    private boolean rotateLocked() throws IOException
+    {
+        if (Files.exists(rotatedPath))
+        {
+            return true;
+        }
+        if (!Files.exists(livePath))
+        {
+            return false;
+        }
+        Files.move(livePath, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+        liveRecordCount = 0;
+        return true;
+    }
+
+    /**
+     * Reads the records of the rotated file.
+     *
+     * @return records awaiting compaction, empty if nothing is rotated
+     * @throws IOException if the rotated file cannot be read
+     */
+    public synchronized List<String[]> readRotated() throws IOException
+    {
+        return FileLocks.shared(livePath, () -> readFile(rotatedPath));
+    }
+
+    /**
+     * Deletes the rotated file once its records are part of the base file.
+     *
+     * @throws IOException if the rotated file cannot be deleted
+     */
+    public synchronized void discardRotated() throws IOException
+    {
+        FileLocks.exclusive(livePath, () -> Files.deleteIfExists(rotatedPath));
+    }
+
+    /**
+     * Deletes both journal files, e.g. after the base file was rewritten from scratch.
+     *
+     * @throws IOException if a journal file cannot be deleted
+     */
+    public synchronized void clear() throws IOException
+    {
+        FileLocks.exclusive(livePath, () -> {
+            Files.deleteIfExists(rotatedPath);
+            Files.deleteIfExists(livePath);
+            liveRecordCount = 0;
+            return null;
+        });
+    }
+
+    private static String encode(List<String[]> records)
+    {
+        StringBuilder out = new StringBuilder();
+        for (String[] record : records)
+        {
+            for (int i = 0; i < record.length; i++)
+            {
+                if (i > 0)
+                {
+                    out.append(',');
+                }
+                out.append(CsvWriter.escapeCsvValue(record[i]));
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    private int liveRecordCount() throws IOException
+    {
+        if (liveRecordCount < 0)
+        {
+            liveRecordCount = readFile(livePath).size();
+        }
+        return liveRecordCount;
+    }
+
+    private static List<String[]> readFile(Path path) throws IOException
+    {
+        List<String[]> records = new ArrayList<>();
+        if (!Files.exists(path))
+        {
+            return records;
+        }
+        for (String line : CsvReader.splitRecords(Files.readString(path, StandardCharsets.UTF_8)))
+        {
+            records.add(CsvReader.parseCsvLine(line));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,109 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keyed, date-indexed store for one table, shared by every repository of that table.
+ *
+ * {@link ResidentTable} keeps the whole table in one file and in memory;
+ * {@link WeekPartitionedTable} splits it into one file per ISO week.
+ * {@link #open} picks between them according to {@link CsvPaths#isWeekPartitioned(Path)}.
+ *
+ * @param <T> the model type stored in the table
+ */
+public interface RecordTable<T>
+{
+    /**
+     * Gets the shared table for a table path in the layout {@link CsvPaths} selects.
+     *
+     * @param tablePath the table's CSV path
+     * @param codec converts between rows and model objects
+     * @return the table instance
+     */
+    static <T> RecordTable<T> open(Path tablePath, RecordCodec<T> codec)
+    {
+        return CsvPaths.isWeekPartitioned(tablePath)
+                ? WeekPartitionedTable.open(tablePath, codec)
+                : ResidentTable.open(tablePath, codec);
+    }
+
+    /**
+     * Carries a table's rows over from the other layout if it was written in that layout
+     * since it was last written in the selected one, e.g. on the first launch after the
+     * layout setting changed. Run once at startup, before the table is first opened.
+     *
+     * @param tablePath the table's CSV path
+     * @param codec converts between rows and model objects
+     */
+    static <T> void convertLayout(Path tablePath, RecordCodec<T> codec)
+    {
+        StorageEngine engine = StorageEngines.getDefault();
+        try
+        {
+            if (CsvPaths.isWeekPartitioned(tablePath))
+            {
+                WeekPartitionedTable.splitIfNewer(tablePath, codec, engine);
+            }
+            else
+            {
+                WeekPartitionedTable.flattenIfNewer(tablePath, codec, engine);
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Could not convert " + tablePath + " to the selected layout: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets every row.
+     *
+     * @return List of all objects in the table
+     * @throws IOException if the table cannot be read
+     */
+    List<T> findAll() throws IOException;
+
+    /**
+     * Looks up a row by its id.
+     *
+     * @param id the primary key
+     * @return the object with that id, or empty if there is none
+     * @throws IOException if the table cannot be read
+     */
+    Optional<T> findById(String id) throws IOException;
+
+    /**
+     * Gets the rows whose index date falls within [from, to] (both inclusive), ordered by date.
+     *
+     * @param from first date to include
+     * @param to last date to include
+     * @return List of matching objects
+     * @throws IOException if the table cannot be read
+     */
+    List<T> findByDateRange(LocalDate from, LocalDate to) throws IOException;
+
+    /**
+     * Inserts or replaces rows by id and persists the change.
+     * Rows whose content matches the stored row are not written.
+     *
+     * @param values objects to insert or replace
+     * @return how many rows were inserted, changed or left unchanged
+     * @throws IOException if the table cannot be read or written
+     */
+    UpsertResult upsertAll(Collection<T> values) throws IOException;
+
+    /**
+     * Removes rows by id and persists the change, e.g. once they were archived.
+     * Ids that are not in the table are ignored; if none are, nothing is written.
+     *
+     * @param ids primary keys of the rows to remove
+     * @return how many rows were removed
+     * @throws IOException if the table cannot be read or written
+     */
+    int removeAll(Collection<String> ids) throws IOException;
+}
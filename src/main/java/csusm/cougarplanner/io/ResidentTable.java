@@ -0,0 +1,321 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of a CSV file, kept resident between repository calls.
+ *
+ * The file is parsed once and its rows are held in a primary index by id and a
+ * secondary index by date, so lookups and week/day range queries no longer touch
+ * the disk. The table compares the file's size and modification time before every
+ * call and reloads only if something else changed the file.
+ *
+ * Writes go to memory first and then to disk through the default {@link StorageEngine}:
+ * rows with new ids are appended, and the table is rewritten from memory only when an
+ * existing row changed. Each row carries a {@link RowHash}, so re-upserting rows that
+ * match what is stored costs no I/O at all.
+ *
+ * Until the table is first loaded (or while it is stale), point and date-range lookups on an
+ * indexed table are answered from its {@link SidecarIndex} instead, so a cold start that only
+ * needs one week or one row does not parse the whole file.
+ *
+ * Writes hold the file's exclusive {@link FileLocks lock} from the stamp check to the write.
+ * If another process changed the file since it was loaded, the table reloads it under the
+ * lock and applies its own rows on top, so concurrent writers merge rather than overwrite
+ * each other. Encoding and hashing the rows happen before the lock is taken.
+ *
+ * One instance is shared per path so every repository sees the same rows.
+ * Rows are stored as CSV records and decoded on the way out, so callers always get
+ * fresh objects they are free to modify.
+ *
+ * @param <T> the model type stored in the table
+ */
+public class ResidentTable<T> implements RecordTable<T>
+{
+    private static final Map<Path, ResidentTable<?>> TABLES = new ConcurrentHashMap<>();
+
+    private final Path filePath;
+    private final RecordCodec<T> codec;
+    private final StorageEngine engine;
+    private final String[] headers;
+
+    // Guarded by this
+    private final Map<String, Map<String, String>> byId = new LinkedHashMap<>();
+    private final NavigableMap<LocalDate, Set<String>> byDate = new TreeMap<>();
+    private FileStamp loadedStamp;
+
+    private ResidentTable(Path filePath, RecordCodec<T> codec)
+    {
+        this.filePath = filePath;
+        this.codec = codec;
+        this.engine = StorageEngines.getDefault();
+        this.headers = RowHash.headers(codec.headers());
+    }
+
+    /**
+     * Gets the shared table for the given file.
+     *
+     * @param filePath the table's CSV path
+     * @param codec converts between rows and model objects
+     * @return the table instance for that path
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ResidentTable<T> open(Path filePath, RecordCodec<T> codec)
+    {
+        return (ResidentTable<T>) TABLES.computeIfAbsent(filePath.toAbsolutePath().normalize(),
+                path -> new ResidentTable<>(filePath, codec));
+    }
+
+    @Override
+    public synchronized List<T> findAll() throws IOException
+    {
+        refresh();
+        List<T> values = new ArrayList<>(byId.size());
+        for (Map<String, String> record : byId.values())
+        {
+            values.add(codec.decode(record));
+        }
+        return values;
+    }
+
+    @Override
+    public synchronized Optional<T> findById(String id) throws IOException
+    {
+        SidecarIndex index = indexIfNotLoaded();
+        if (index != null)
+        {
+            return index.findById(id).map(codec::decode);
+        }
+
+        refresh();
+        Map<String, String> record = byId.get(id);
+        return record != null ? Optional.of(codec.decode(record)) : Optional.empty();
+    }
+
+    @Override
+    public synchronized List<T> findByDateRange(LocalDate from, LocalDate to) throws IOException
+    {
+        SidecarIndex index = indexIfNotLoaded();
+        if (index != null)
+        {
+            List<T> values = new ArrayList<>();
+            for (Map<String, String> record : index.findByDateRange(from, to))
+            {
+                values.add(codec.decode(record));
+            }
+            return values;
+        }
+
+        refresh();
+        List<T> values = new ArrayList<>();
+        if (from.isAfter(to))
+        {
+            return values;
+        }
+        for (Set<String> ids : byDate.subMap(from, true, to, true).values())
+        {
+            for (String id : ids)
+            {
+                values.add(codec.decode(byId.get(id)));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Inserts or replaces rows by id and persists the change.
+     * Rows identical to the stored ones are skipped; if nothing else is left the file is not touched.
+     * Otherwise appends to the file if every remaining row is new, or rewrites it from memory.
+     */
+    @Override
+    public synchronized UpsertResult upsertAll(Collection<T> values) throws IOException
+    {
+        List<Map<String, String>> records = new ArrayList<>(values.size());
+        for (T value : values)
+        {
+            Map<String, String> record = codec.encode(value);
+            records.add(RowHash.stamped(record, RowHash.of(record, codec.headers())));
+        }
+        return FileLocks.exclusive(engine.dataFile(filePath), () -> upsertLocked(records));
+    }
+
+    private UpsertResult upsertLocked(List<Map<String, String>> records) throws IOException
+    {
+        // The version check: reloads only if the file changed since this table last read or wrote it
+        refresh();
+
+        List<Map<String, String>> added = new ArrayList<>();
+        int changed = 0;
+        int unchanged = 0;
+        for (Map<String, String> stamped : records)
+        {
+            String hash = stamped.get(RowHash.COLUMN);
+            Map<String, String> existing = byId.get(codec.id(stamped));
+            if (existing == null)
+            {
+                put(stamped);
+                added.add(stamped);
+            }
+            else if (!hash.equals(RowHash.stored(existing, codec.headers())))
+            {
+                put(stamped);
+                changed++;
+            }
+            else
+            {
+                unchanged++;
+            }
+        }
+
+        UpsertResult result = new UpsertResult(added.size(), changed, unchanged);
+        if (!result.wroteRows())
+        {
+            return result;
+        }
+
+        try
+        {
+            if (changed > 0 || loadedStamp.equals(FileStamp.MISSING))
+            {
+                engine.writeAll(filePath, new ArrayList<>(byId.values()), headers);
+            }
+            else
+            {
+                engine.appendAll(filePath, added, headers);
+            }
+            loadedStamp = FileStamp.of(engine.dataFile(filePath));
+            DataTransaction.onRollback(this::forget);
+        }
+        catch (IOException e)
+        {
+            loadedStamp = null; // byId ran ahead of the disk; reload it next time
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Drops the rows in memory so the next call reloads them, e.g. when the transaction
+     * that wrote them is rolled back.
+     */
+    private synchronized void forget()
+    {
+        loadedStamp = null;
+    }
+
+    @Override
+    public synchronized int removeAll(Collection<String> ids) throws IOException
+    {
+        return FileLocks.exclusive(engine.dataFile(filePath), () -> removeLocked(ids));
+    }
+
+    private int removeLocked(Collection<String> ids) throws IOException
+    {
+        refresh();
+
+        int removed = 0;
+        for (String id : ids)
+        {
+            Map<String, String> previous = byId.remove(id);
+            if (previous != null)
+            {
+                unindexDate(id, previous);
+                removed++;
+            }
+        }
+
+        if (removed > 0)
+        {
+            try
+            {
+                engine.writeAll(filePath, new ArrayList<>(byId.values()), headers);
+                loadedStamp = FileStamp.of(engine.dataFile(filePath));
+                DataTransaction.onRollback(this::forget);
+            }
+            catch (IOException e)
+            {
+                loadedStamp = null;
+                throw e;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Gets the file's sidecar index if the rows in memory are not current, or null if
+     * the memory copy should be used (or the table has no index).
+     */
+    private SidecarIndex indexIfNotLoaded() throws IOException
+    {
+        Path dataFile = engine.dataFile(filePath);
+        if (FileStamp.of(dataFile).equals(loadedStamp))
+        {
+            return null;
+        }
+        return SidecarIndex.open(dataFile);
+    }
+
+    /**
+     * Reloads the indexes if the file changed since it was last loaded or written.
+     */
+    private void refresh() throws IOException
+    {
+        FileStamp current = FileStamp.of(engine.dataFile(filePath));
+        if (current.equals(loadedStamp))
+        {
+            return;
+        }
+
+        byId.clear();
+        byDate.clear();
+        for (Map<String, String> record : engine.readAll(filePath))
+        {
+            put(record);
+        }
+        // Re-stamps: a first read through the binary engine may have just created the file
+        loadedStamp = FileStamp.of(engine.dataFile(filePath));
+    }
+
+    /**
+     * Adds a row to both indexes, replacing any row with the same id.
+     *
+     * @return the replaced row, or null if the id was new
+     */
+    private Map<String, String> put(Map<String, String> record)
+    {
+        String id = codec.id(record);
+        Map<String, String> previous = byId.put(id, record);
+        if (previous != null)
+        {
+            unindexDate(id, previous);
+        }
+
+        LocalDate date = codec.indexDate(record);
+        if (date != null)
+        {
+            byDate.computeIfAbsent(date, d -> new LinkedHashSet<>()).add(id);
+        }
+        return previous;
+    }
+
+    /**
+     * Removes a row that was replaced or deleted from the date index.
+     */
+    private void unindexDate(String id, Map<String, String> record)
+    {
+        LocalDate date = codec.indexDate(record);
+        if (date != null)
+        {
+            Set<String> ids = byDate.get(date);
+            ids.remove(id);
+            if (ids.isEmpty())
+            {
+                byDate.remove(date);
+            }
+        }
+    }
+}
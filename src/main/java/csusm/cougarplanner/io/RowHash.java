@@ -0,0 +1,84 @@
+package csusm.cougarplanner.io;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Content hash of a row, stored in an extra row_hash column next to the row's data.
+ *
+ * Lets a {@link RecordTable} tell whether an upserted row differs from the stored one
+ * by comparing two short strings instead of every field, and skip the write when it doesn't.
+ * Rows written before the column existed have their hash computed when first compared.
+ */
+final class RowHash
+{
+    static final String COLUMN = "row_hash";
+
+    // 64 bits: collisions are negligible for tables of a few thousand rows
+    private static final int HASH_BYTES = 8;
+
+    private RowHash() {}
+
+    /**
+     * Gets a codec's headers with the hash column appended, as the table stores them.
+     */
+    static String[] headers(String[] dataHeaders)
+    {
+        String[] headers = Arrays.copyOf(dataHeaders, dataHeaders.length + 1);
+        headers[dataHeaders.length] = COLUMN;
+        return headers;
+    }
+
+    /**
+     * Computes the hash of a row's data columns. Missing values hash the same as empty ones,
+     * since that is how they are written.
+     */
+    static String of(Map<String, String> record, String[] dataHeaders)
+    {
+        StringBuilder content = new StringBuilder();
+        for (String header : dataHeaders)
+        {
+            String value = record.get(header);
+            if (value == null)
+            {
+                value = "";
+            }
+            // Length-prefixed so ("a,", "b") and ("a", ",b") cannot hash alike
+            content.append(value.length()).append(':').append(value);
+        }
+
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, HASH_BYTES);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Gets the stored hash of a row, computing it if the row predates the hash column.
+     */
+    static String stored(Map<String, String> record, String[] dataHeaders)
+    {
+        String hash = record.get(COLUMN);
+        return hash != null && !hash.isEmpty() ? hash : of(record, dataHeaders);
+    }
+
+    /**
+     * Copies a freshly encoded row with its hash column filled in.
+     */
+    static Map<String, String> stamped(Map<String, String> record, String hash)
+    {
+        Map<String, String> stamped = new HashMap<>(record);
+        stamped.put(COLUMN, hash);
+        return stamped;
+    }
+}
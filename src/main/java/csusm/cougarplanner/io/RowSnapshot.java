@@ -0,0 +1,129 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The id, {@link RowHash row hash} and date of every row of one data file, as read at some point.
+ * Two snapshots of the same file tell which rows were added, changed or removed in between
+ * without comparing any field but the hash.
+ */
+public final class RowSnapshot
+{
+    public static final RowSnapshot EMPTY = new RowSnapshot(Map.of());
+
+    private record Row(String hash, LocalDate date) {}
+
+    /**
+     * Rows that differ between two snapshots.
+     *
+     * @param added ids only in the newer snapshot
+     * @param changed ids in both whose hash differs
+     * @param removed ids only in the older snapshot
+     * @param dates the dates of every affected row, before and after the change
+     */
+    public record Changes(Set<String> added, Set<String> changed, Set<String> removed, Set<LocalDate> dates)
+    {
+        public boolean isEmpty()
+        {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private final Map<String, Row> rows;
+
+    private RowSnapshot(Map<String, Row> rows)
+    {
+        this.rows = rows;
+    }
+
+    /**
+     * Reads a table file through the default {@link StorageEngine}.
+     * Rows written by a {@link RecordTable} carry their hash; it is computed for any other row.
+     *
+     * @param tablePath the file's CSV path, e.g. data/courses.csv or a week partition
+     * @param idColumn the primary key column, in lowercase
+     * @param dateOf gets a row's date, or null; rows are in {@link CsvReader} form
+     * @return the snapshot, empty if the file does not exist
+     * @throws IOException if the file cannot be read
+     */
+    public static RowSnapshot read(Path tablePath, String idColumn, Function<Map<String, String>, LocalDate> dateOf)
+            throws IOException
+    {
+        Map<String, Row> rows = new HashMap<>();
+        for (Map<String, String> record : StorageEngines.getDefault().readAll(tablePath))
+        {
+            String id = record.get(idColumn);
+            if (id != null && !id.isEmpty())
+            {
+                rows.put(id, new Row(RowHash.stored(record, dataHeaders(record)), dateOf.apply(record)));
+            }
+        }
+        return new RowSnapshot(rows);
+    }
+
+    /**
+     * Compares this snapshot with a newer one of the same file.
+     *
+     * @param newer the later snapshot
+     * @return the rows the newer snapshot added, changed or removed
+     */
+    public Changes diff(RowSnapshot newer)
+    {
+        Set<String> added = new HashSet<>();
+        Set<String> changed = new HashSet<>();
+        Set<String> removed = new HashSet<>();
+        Set<LocalDate> dates = new HashSet<>();
+
+        for (Map.Entry<String, Row> entry : newer.rows.entrySet())
+        {
+            Row before = rows.get(entry.getKey());
+            Row after = entry.getValue();
+            if (before == null)
+            {
+                added.add(entry.getKey());
+            }
+            else if (!before.hash().equals(after.hash()))
+            {
+                changed.add(entry.getKey());
+                addDate(dates, before.date());
+            }
+            else
+            {
+                continue;
+            }
+            addDate(dates, after.date());
+        }
+        for (Map.Entry<String, Row> entry : rows.entrySet())
+        {
+            if (!newer.rows.containsKey(entry.getKey()))
+            {
+                removed.add(entry.getKey());
+                addDate(dates, entry.getValue().date());
+            }
+        }
+        return new Changes(added, changed, removed, dates);
+    }
+
+    private static void addDate(Set<LocalDate> dates, LocalDate date)
+    {
+        if (date != null)
+        {
+            dates.add(date);
+        }
+    }
+
+    /**
+     * Gets a row's data columns in a fixed order, for hashing rows written without a hash column.
+     */
+    private static String[] dataHeaders(Map<String, String> record)
+    {
+        return record.keySet().stream()
+                .filter(header -> !header.equals(RowHash.COLUMN))
+                .sorted()
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,307 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves assignments and announcements older than a horizon out of their tables into
+ * gzip-compressed archives, one per table and term, e.g. data/archive/assignments-2025-spring.csv.gz.
+ * Keeps the tables every view reads at about one horizon of rows no matter how many
+ * terms the account has been synced for.
+ *
+ * Terms follow the CSUSM calendar: spring is January to May, summer June and July,
+ * fall August to December. An archive is a plain CSV file with the table's headers,
+ * so it can be opened with any gzip tool.
+ *
+ * Archives are read only when a query reaches into an archived term
+ * (see {@link #withArchived}), and parsed archives are kept in {@link ParsedFileCache}.
+ */
+public final class SemesterArchiver
+{
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    // Rows dated this many days before today or earlier are archived
+    private static volatile int horizonDays = 180;
+
+    // Single daemon thread so archiving never delays startup or keeps the JVM alive
+    private static final ExecutorService ARCHIVER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "semester-archiver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private SemesterArchiver()
+    {
+    }
+
+    /**
+     * Sets how old a row must be before it is archived.
+     *
+     * @param days the horizon in days
+     */
+    public static void setHorizonDays(int days)
+    {
+        horizonDays = days;
+    }
+
+    /**
+     * Archives old assignments and announcements on a background thread.
+     * The repositories are passed in so their tables are opened on the caller's thread.
+     *
+     * @param assignments the assignments repository
+     * @param announcements the announcements repository
+     */
+    public static void archiveInBackground(AssignmentsRepository assignments, AnnouncementsRepository announcements)
+    {
+        ARCHIVER.execute(() -> {
+            try
+            {
+                assignments.archive();
+                announcements.archive();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Could not archive past terms: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Moves the rows of a table dated before the horizon into their term archives.
+     * The archives are written and synced to disk before the rows leave the table, so a crash in
+     * between only leaves rows in both places; the next run merges them into the archive again.
+     *
+     * @param tablePath the table's CSV path
+     * @param table the table
+     * @param codec the table's codec
+     * @return how many rows were archived
+     * @throws IOException if the table or an archive cannot be read or written
+     */
+    static <T> int archive(Path tablePath, RecordTable<T> table, RecordCodec<T> codec) throws IOException
+    {
+        LocalDate cutoff = LocalDate.now().minusDays(horizonDays);
+        Map<String, List<Map<String, String>>> byTerm = new TreeMap<>();
+        List<String> ids = new ArrayList<>();
+        for (T value : table.findAll())
+        {
+            Map<String, String> record = lowercased(codec.encode(value));
+            LocalDate date = codec.indexDate(record);
+            if (date != null && date.isBefore(cutoff))
+            {
+                byTerm.computeIfAbsent(termOf(date), term -> new ArrayList<>()).add(record);
+                ids.add(codec.id(record));
+            }
+        }
+        if (ids.isEmpty())
+        {
+            return 0;
+        }
+
+        Files.createDirectories(CsvPaths.getArchiveDirectory());
+        for (Map.Entry<String, List<Map<String, String>>> entry : byTerm.entrySet())
+        {
+            merge(archivePath(tablePath, entry.getKey()), entry.getValue(), codec);
+        }
+        return table.removeAll(ids);
+    }
+
+    /**
+     * Adds archived rows to rows read from a table, if the date range reaches into an archived term.
+     * A row in both (see {@link #archive}) is returned once, from the table.
+     *
+     * @param tablePath the table's CSV path
+     * @param codec the table's codec
+     * @param from first date to include
+     * @param to last date to include
+     * @param fromTable the rows the table returned for the range
+     * @return the combined rows ordered by date, or {@code fromTable} if no archive covers the range
+     * @throws IOException if an archive cannot be read
+     */
+    static <T> List<T> withArchived(Path tablePath, RecordCodec<T> codec, LocalDate from, LocalDate to, List<T> fromTable)
+            throws IOException
+    {
+        List<Map<String, String>> archived = new ArrayList<>();
+        for (String term : termsBetween(from, to))
+        {
+            for (Map<String, String> record : read(archivePath(tablePath, term)))
+            {
+                LocalDate date = codec.indexDate(record);
+                if (date != null && !date.isBefore(from) && !date.isAfter(to))
+                {
+                    archived.add(record);
+                }
+            }
+        }
+        if (archived.isEmpty())
+        {
+            return fromTable;
+        }
+
+        Map<String, Map<String, String>> rows = new LinkedHashMap<>();
+        for (Map<String, String> record : archived)
+        {
+            rows.put(codec.id(record), record);
+        }
+        for (T value : fromTable)
+        {
+            Map<String, String> record = lowercased(codec.encode(value));
+            rows.put(codec.id(record), record);
+        }
+
+        List<Map<String, String>> sorted = new ArrayList<>(rows.values());
+        sorted.sort(Comparator.comparing(codec::indexDate));
+        List<T> values = new ArrayList<>(sorted.size());
+        for (Map<String, String> record : sorted)
+        {
+            values.add(codec.decode(record));
+        }
+        return values;
+    }
+
+    /**
+     * Gets the term a date falls in, e.g. "2025-fall".
+     */
+    static String termOf(LocalDate date)
+    {
+        int month = date.getMonthValue();
+        String season = month <= 5 ? "spring" : month <= 7 ? "summer" : "fall";
+        return date.getYear() + "-" + season;
+    }
+
+    /**
+     * Lists the terms overlapping [from, to] in order.
+     */
+    static List<String> termsBetween(LocalDate from, LocalDate to)
+    {
+        List<String> terms = new ArrayList<>();
+        for (LocalDate start = termStart(from); !start.isAfter(to); start = nextTermStart(start))
+        {
+            terms.add(termOf(start));
+        }
+        return terms;
+    }
+
+    private static LocalDate termStart(LocalDate date)
+    {
+        int month = date.getMonthValue();
+        return LocalDate.of(date.getYear(), month <= 5 ? 1 : month <= 7 ? 6 : 8, 1);
+    }
+
+    private static LocalDate nextTermStart(LocalDate termStart)
+    {
+        return switch (termStart.getMonthValue())
+        {
+            case 1 -> termStart.withMonth(6);
+            case 6 -> termStart.withMonth(8);
+            default -> LocalDate.of(termStart.getYear() + 1, 1, 1);
+        };
+    }
+
+    private static Path archivePath(Path tablePath, String term)
+    {
+        String fileName = tablePath.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String table = dot > 0 ? fileName.substring(0, dot) : fileName;
+        return CsvPaths.getArchiveDirectory().resolve(table + "-" + term + ".csv.gz");
+    }
+
+    /**
+     * Rewrites a term archive with the given rows added, replacing archived rows with the same id.
+     * Holds the archive's exclusive {@link FileLocks lock}, so rows another process archives at the same time are kept.
+     */
+    private static <T> void merge(Path archive, List<Map<String, String>> records, RecordCodec<T> codec) throws IOException
+    {
+        FileLocks.exclusive(archive, () -> {
+            mergeLocked(archive, records, codec);
+            return null;
+        });
+    }
+
+    private static <T> void mergeLocked(Path archive, List<Map<String, String>> records, RecordCodec<T> codec) throws IOException
+    {
+        Map<String, Map<String, String>> rows = new LinkedHashMap<>();
+        for (Map<String, String> record : read(archive))
+        {
+            rows.put(codec.id(record), record);
+        }
+        for (Map<String, String> record : records)
+        {
+            rows.put(codec.id(record), record);
+        }
+
+        String[] headers = codec.headers();
+        Path temp = CsvPaths.getTempPath(archive);
+        try (Writer out = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8))
+        {
+            out.write(String.join(",", headers));
+            out.write(LINE_SEPARATOR);
+            for (Map<String, String> record : rows.values())
+            {
+                for (int i = 0; i < headers.length; i++)
+                {
+                    if (i > 0)
+                    {
+                        out.write(',');
+                    }
+                    out.write(CsvRowWriter.escape(record.get(headers[i].toLowerCase())));
+                }
+                out.write(LINE_SEPARATOR);
+            }
+        }
+        DataTransaction.forceFile(temp);
+        Files.move(temp, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ParsedFileCache.invalidate(archive);
+    }
+
+    /**
+     * Reads a term archive in {@link CsvReader} form, or nothing if there is no archive for the term.
+     */
+    private static List<Map<String, String>> read(Path archive) throws IOException
+    {
+        FileStamp stamp = FileStamp.of(archive);
+        if (stamp.equals(FileStamp.MISSING))
+        {
+            return List.of();
+        }
+
+        List<Map<String, String>> cached = ParsedFileCache.get(archive, stamp);
+        if (cached != null)
+        {
+            return cached;
+        }
+
+        String text;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(archive)))
+        {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        List<Map<String, String>> records = CsvReader.parse(text);
+        ParsedFileCache.put(archive, stamp, records);
+        return records;
+    }
+
+    /**
+     * Re-keys an encoded row by lowercase header, the form rows are read back in.
+     */
+    private static Map<String, String> lowercased(Map<String, String> record)
+    {
+        Map<String, String> lowercased = new HashMap<>();
+        for (Map.Entry<String, String> entry : record.entrySet())
+        {
+            lowercased.put(entry.getKey().toLowerCase(), entry.getValue());
+        }
+        return lowercased;
+    }
+}
@@ -0,0 +1,544 @@
+package csusm.cougarplanner.io;
+
+import csusm.cougarplanner.util.DateTimeUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Sidecar index next to a CSV file (e.g. data/assignments.csv.idx) mapping ids and dates to the
+ * byte ranges of their rows, so a single row or a narrow date range is read with a few
+ * positional reads instead of parsing the whole file.
+ *
+ * Layout: magic "CPIX", u16 version, the CSV's size and modification time when indexed,
+ * the header line, then two sorted sections of fixed-width entries:
+ * [i64 id hash][i64 offset][i32 length] ordered by hash then offset, and
+ * [i32 epoch day][i64 offset][i32 length] ordered by day then offset.
+ * Fixed-width entries let a lookup binary-search the file itself, so a point lookup costs
+ * O(log n) small reads plus one read of the row. Hashes can collide; the row's id is checked.
+ *
+ * {@link CsvWriter} maintains the index while it writes a table; a missing or stale index
+ * (the CSV changed behind the writer's back) is rebuilt from the CSV on first use.
+ * Only tables with an {@link #specFor(Path) index spec} get one.
+ */
+public final class SidecarIndex
+{
+    private static final byte[] MAGIC = {'C', 'P', 'I', 'X'};
+    private static final short VERSION = 1;
+    private static final int ID_ENTRY_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int DATE_ENTRY_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final DateTimeFormatter TASK_DUE_DATE = DateTimeFormatter.ofPattern("MM-dd-yyyy");
+
+    private static final Map<Path, SidecarIndex> OPEN = new ConcurrentHashMap<>();
+
+    /**
+     * Which columns of a table are indexed.
+     *
+     * @param idColumn the primary key column, as written in the header
+     * @param dateColumn the date column, as written in the header
+     * @param dateParser parses the date column, returning null for empty or invalid values
+     */
+    record Spec(String idColumn, String dateColumn, Function<String, LocalDate> dateParser) {}
+
+    private final Path csvPath;
+    private final Path indexPath;
+    private final long csvSize;
+    private final long csvModified;
+    private final String[] headers;
+    private final long idSectionStart;
+    private final int idCount;
+    private final long dateSectionStart;
+    private final int dateCount;
+
+    private SidecarIndex(Path csvPath, Path indexPath, long csvSize, long csvModified, String[] headers,
+                         long idSectionStart, int idCount, long dateSectionStart, int dateCount)
+    {
+        this.csvPath = csvPath;
+        this.indexPath = indexPath;
+        this.csvSize = csvSize;
+        this.csvModified = csvModified;
+        this.headers = headers;
+        this.idSectionStart = idSectionStart;
+        this.idCount = idCount;
+        this.dateSectionStart = dateSectionStart;
+        this.dateCount = dateCount;
+    }
+
+    /**
+     * Gets the index spec for a table file, or null if the table is not indexed.
+     * Assignments are indexed by due date; tasks by their MM-dd-yyyy due date.
+     *
+     * @param csvPath the CSV file
+     * @return the spec, or null
+     */
+    static Spec specFor(Path csvPath)
+    {
+        if (csvPath.equals(CsvPaths.getAssignmentsPath()))
+        {
+            return new Spec("assignment_id", "due_date", DateTimeUtil::parseDate);
+        }
+        if (csvPath.equals(CsvPaths.getTasksPath()))
+        {
+            return new Spec("taskID", "dueDate", SidecarIndex::parseTaskDueDate);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the path of a CSV file's index.
+     */
+    static Path indexPath(Path csvPath)
+    {
+        return csvPath.resolveSibling(csvPath.getFileName() + ".idx");
+    }
+
+    /**
+     * Opens the index of a CSV file, rebuilding it first if it is missing or stale.
+     *
+     * @param csvPath the CSV file
+     * @return the index, or null if the table is not indexed or the CSV does not exist
+     * @throws IOException if the CSV or the index cannot be read, or the index cannot be rebuilt
+     */
+    public static SidecarIndex open(Path csvPath) throws IOException
+    {
+        Spec spec = specFor(csvPath);
+        if (spec == null)
+        {
+            return null;
+        }
+        FileStamp csvStamp = FileStamp.of(csvPath);
+        if (csvStamp.equals(FileStamp.MISSING))
+        {
+            return null;
+        }
+
+        Path key = csvPath.toAbsolutePath().normalize();
+        SidecarIndex index = OPEN.get(key);
+        if (index != null && index.describes(csvStamp))
+        {
+            return index;
+        }
+
+        index = read(csvPath);
+        if (index == null || !index.describes(csvStamp))
+        {
+            rebuild(csvPath, spec);
+            index = read(csvPath);
+            if (index == null)
+            {
+                return null;
+            }
+        }
+        OPEN.put(key, index);
+        return index;
+    }
+
+    /**
+     * Looks up a row by id.
+     *
+     * @param id the primary key
+     * @return the row in {@link CsvReader} form (lowercase headers), or empty if there is none
+     * @throws IOException if the index or the CSV cannot be read
+     */
+    public Optional<Map<String, String>> findById(String id) throws IOException
+    {
+        long hash = hash(id);
+        String idColumn = specFor(csvPath).idColumn().toLowerCase();
+        try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.READ);
+             FileChannel csv = FileChannel.open(csvPath, StandardOpenOption.READ))
+        {
+            // Lower bound of the hash, then every entry with that hash; the last match wins, as in a reload
+            int low = 0;
+            int high = idCount;
+            ByteBuffer entry = ByteBuffer.allocate(ID_ENTRY_BYTES);
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                readFully(index, entry.clear(), idSectionStart + (long) mid * ID_ENTRY_BYTES);
+                if (entry.getLong(0) < hash)
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    high = mid;
+                }
+            }
+
+            Map<String, String> found = null;
+            for (int i = low; i < idCount; i++)
+            {
+                readFully(index, entry.clear(), idSectionStart + (long) i * ID_ENTRY_BYTES);
+                if (entry.getLong(0) != hash)
+                {
+                    break;
+                }
+                Map<String, String> record = readRow(csv, entry.getLong(8), entry.getInt(16));
+                if (id.equals(record.get(idColumn)))
+                {
+                    found = record;
+                }
+            }
+            return Optional.ofNullable(found);
+        }
+    }
+
+    /**
+     * Gets the rows dated within [from, to] (both inclusive), ordered by date and then file order.
+     *
+     * @param from first date to include
+     * @param to last date to include
+     * @return rows in {@link CsvReader} form
+     * @throws IOException if the index or the CSV cannot be read
+     */
+    public List<Map<String, String>> findByDateRange(LocalDate from, LocalDate to) throws IOException
+    {
+        List<Map<String, String>> rows = new ArrayList<>();
+        if (from.isAfter(to))
+        {
+            return rows;
+        }
+
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.READ);
+             FileChannel csv = FileChannel.open(csvPath, StandardOpenOption.READ))
+        {
+            int low = 0;
+            int high = dateCount;
+            ByteBuffer entry = ByteBuffer.allocate(DATE_ENTRY_BYTES);
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                readFully(index, entry.clear(), dateSectionStart + (long) mid * DATE_ENTRY_BYTES);
+                if (entry.getInt(0) < fromDay)
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    high = mid;
+                }
+            }
+
+            for (int i = low; i < dateCount; i++)
+            {
+                readFully(index, entry.clear(), dateSectionStart + (long) i * DATE_ENTRY_BYTES);
+                if (entry.getInt(0) > toDay)
+                {
+                    break;
+                }
+                rows.add(readRow(csv, entry.getLong(4), entry.getInt(12)));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Starts a new index for a table that is about to be written, or null if it is not indexed.
+     */
+    static Builder builder(Path csvPath)
+    {
+        Spec spec = specFor(csvPath);
+        return spec != null ? new Builder(spec) : null;
+    }
+
+    /**
+     * Starts an index for rows about to be appended to a table, seeded with the entries of its
+     * current index. Returns null if the table is not indexed or its index is not current,
+     * in which case the caller should {@link #discard} it.
+     */
+    static Builder builderForAppend(Path csvPath) throws IOException
+    {
+        Spec spec = specFor(csvPath);
+        SidecarIndex current = spec != null ? read(csvPath) : null;
+        if (current == null || !current.describes(FileStamp.of(csvPath)))
+        {
+            return null;
+        }
+
+        Builder builder = new Builder(spec);
+        try (FileChannel index = FileChannel.open(current.indexPath, StandardOpenOption.READ))
+        {
+            ByteBuffer ids = ByteBuffer.allocate(current.idCount * ID_ENTRY_BYTES);
+            readFully(index, ids, current.idSectionStart);
+            ids.flip();
+            while (ids.hasRemaining())
+            {
+                builder.ids.add(new IdEntry(ids.getLong(), ids.getLong(), ids.getInt()));
+            }
+
+            ByteBuffer dates = ByteBuffer.allocate(current.dateCount * DATE_ENTRY_BYTES);
+            readFully(index, dates, current.dateSectionStart);
+            dates.flip();
+            while (dates.hasRemaining())
+            {
+                builder.dates.add(new DateEntry(dates.getInt(), dates.getLong(), dates.getInt()));
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Deletes a table's index, e.g. after a write that could not maintain it.
+     */
+    static void discard(Path csvPath) throws IOException
+    {
+        if (specFor(csvPath) == null)
+        {
+            return;
+        }
+        Files.deleteIfExists(indexPath(csvPath));
+        OPEN.remove(csvPath.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Collects the offsets of the rows as they are written, then writes the index file.
+     */
+    static final class Builder
+    {
+        private final Spec spec;
+        private final List<IdEntry> ids = new ArrayList<>();
+        private final List<DateEntry> dates = new ArrayList<>();
+
+        private Builder(Spec spec)
+        {
+            this.spec = spec;
+        }
+
+        Spec spec()
+        {
+            return spec;
+        }
+
+        /**
+         * Records one row.
+         *
+         * @param id the row's id column
+         * @param date the row's raw date column
+         * @param offset byte offset of the row in the CSV
+         * @param length byte length of the row, including its line separator
+         */
+        void add(String id, String date, long offset, long length)
+        {
+            if (id != null && !id.isEmpty())
+            {
+                ids.add(new IdEntry(hash(id), offset, (int) length));
+            }
+            LocalDate day = date != null && !date.isBlank() ? spec.dateParser().apply(date.trim()) : null;
+            if (day != null)
+            {
+                dates.add(new DateEntry((int) day.toEpochDay(), offset, (int) length));
+            }
+        }
+
+        /**
+         * Writes the index for a CSV file as it is now. The CSV must not change before this returns.
+         *
+         * @param csvFile the CSV file the rows were written to
+         * @param indexFile where to write the index
+         * @param headers the CSV's header row
+         * @throws IOException if the index cannot be written
+         */
+        void write(Path csvFile, Path indexFile, String[] headers) throws IOException
+        {
+            ids.sort(Comparator.comparingLong(IdEntry::hash).thenComparingLong(IdEntry::offset));
+            dates.sort(Comparator.comparingInt(DateEntry::day).thenComparingLong(DateEntry::offset));
+            FileStamp csvStamp = FileStamp.of(csvFile);
+
+            Path temp = CsvPaths.getTempPath(indexFile);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                out.write(MAGIC);
+                out.writeShort(VERSION);
+                out.writeLong(csvStamp.size());
+                out.writeLong(csvStamp.lastModified());
+                byte[] header = String.join(",", headers).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(header.length);
+                out.write(header);
+
+                out.writeInt(ids.size());
+                for (IdEntry entry : ids)
+                {
+                    out.writeLong(entry.hash());
+                    out.writeLong(entry.offset());
+                    out.writeInt(entry.length());
+                }
+                out.writeInt(dates.size());
+                for (DateEntry entry : dates)
+                {
+                    out.writeInt(entry.day());
+                    out.writeLong(entry.offset());
+                    out.writeInt(entry.length());
+                }
+            }
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private record IdEntry(long hash, long offset, int length) {}
+
+    private record DateEntry(int day, long offset, int length) {}
+
+    private boolean describes(FileStamp csvStamp)
+    {
+        return csvStamp.size() == csvSize && csvStamp.lastModified() == csvModified;
+    }
+
+    /**
+     * Reads and parses one row. Values are trimmed and keyed by lowercase header, as in {@link CsvReader}.
+     */
+    private Map<String, String> readRow(FileChannel csv, long offset, int length) throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        readFully(csv, bytes, offset);
+        String line = new String(bytes.array(), StandardCharsets.UTF_8).stripTrailing();
+        return CsvReader.toRecord(headers, line);
+    }
+
+    /**
+     * Reads the fixed part of an index file, or returns null if there is no valid index.
+     */
+    private static SidecarIndex read(Path csvPath) throws IOException
+    {
+        Path indexPath = indexPath(csvPath);
+        if (!Files.exists(indexPath))
+        {
+            return null;
+        }
+
+        try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.READ))
+        {
+            ByteBuffer prefix = ByteBuffer.allocate(MAGIC.length + Short.BYTES + Long.BYTES * 2 + Integer.BYTES);
+            readFully(index, prefix, 0);
+            prefix.flip();
+            byte[] magic = new byte[MAGIC.length];
+            prefix.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || prefix.getShort() != VERSION)
+            {
+                return null;
+            }
+            long csvSize = prefix.getLong();
+            long csvModified = prefix.getLong();
+            int headerLength = prefix.getInt();
+
+            ByteBuffer header = ByteBuffer.allocate(headerLength + Integer.BYTES);
+            readFully(index, header, prefix.capacity());
+            String[] headers = Arrays.stream(new String(header.array(), 0, headerLength, StandardCharsets.UTF_8).split(","))
+                    .map(String::trim)
+                    .map(String::toLowerCase)
+                    .toArray(String[]::new);
+            int idCount = header.getInt(headerLength);
+
+            long idSectionStart = prefix.capacity() + header.capacity();
+            long dateCountAt = idSectionStart + (long) idCount * ID_ENTRY_BYTES;
+            ByteBuffer dateCount = ByteBuffer.allocate(Integer.BYTES);
+            readFully(index, dateCount, dateCountAt);
+
+            return new SidecarIndex(csvPath, indexPath, csvSize, csvModified, headers,
+                    idSectionStart, idCount, dateCountAt + Integer.BYTES, dateCount.getInt(0));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // A truncated or foreign file is treated as no index and rebuilt
+            return null;
+        }
+    }
+
+    /**
+     * Indexes a CSV file from scratch, e.g. after it was edited outside the app.
+     */
+    private static void rebuild(Path csvPath, Spec spec) throws IOException
+    {
+        byte[] bytes = Files.readAllBytes(csvPath);
+        int headerEnd = CsvReader.nextRecordStart(bytes, 0, false);
+        String[] headers = Arrays.stream(new String(bytes, 0, headerEnd, StandardCharsets.UTF_8).strip().split(","))
+                .map(String::trim)
+                .toArray(String[]::new);
+        int idColumn = columnOf(headers, spec.idColumn());
+        int dateColumn = columnOf(headers, spec.dateColumn());
+
+        Builder builder = new Builder(spec);
+        int start = headerEnd;
+        while (start < bytes.length)
+        {
+            int end = CsvReader.nextRecordStart(bytes, start, false);
+            String line = new String(bytes, start, end - start, StandardCharsets.UTF_8).strip();
+            if (!line.isEmpty())
+            {
+                String[] values = CsvReader.parseCsvLine(line);
+                builder.add(valueAt(values, idColumn), valueAt(values, dateColumn), start, end - start);
+            }
+            start = end;
+        }
+        builder.write(csvPath, indexPath(csvPath), headers);
+    }
+
+    private static int columnOf(String[] headers, String column)
+    {
+        for (int i = 0; i < headers.length; i++)
+        {
+            if (headers[i].equalsIgnoreCase(column))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String valueAt(String[] values, int column)
+    {
+        return column >= 0 && column < values.length ? values[column].trim() : null;
+    }
+
+    private static LocalDate parseTaskDueDate(String dueDate)
+    {
+        try
+        {
+            return LocalDate.parse(dueDate, TASK_DUE_DATE);
+        }
+        catch (DateTimeParseException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a hash of an id.
+     */
+    private static long hash(String id)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++)
+        {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new IOException("Unexpected end of file at offset " + position);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk format for the planner's tables.
+ *
+ * A table is named by its CSV path from {@link CsvPaths} (e.g. data/assignments.csv);
+ * each engine decides which file actually holds it. Rows go in and out in the same
+ * Map form {@link CsvReader} produces: header names in lowercase, values as strings.
+ *
+ * The engine in use is chosen once at startup through {@link StorageEngines}.
+ */
+public interface StorageEngine
+{
+    /**
+     * @return the name the engine is selected by in the profile
+     */
+    String name();
+
+    /**
+     * Gets the file this engine keeps a table in.
+     *
+     * @param tablePath the table's CSV path
+     * @return the file holding the table's rows
+     */
+    Path dataFile(Path tablePath);
+
+    /**
+     * Reads every row of a table.
+     *
+     * @param tablePath the table's CSV path
+     * @return immutable List of immutable row maps, empty if the table does not exist yet
+     * @throws IOException if the table exists but cannot be read
+     */
+    List<Map<String, String>> readAll(Path tablePath) throws IOException;
+
+    /**
+     * Replaces a table's rows atomically.
+     *
+     * @param tablePath the table's CSV path
+     * @param records rows to write, with keys matching headers
+     * @param headers column headers, in order
+     * @throws IOException if the table cannot be written
+     */
+    default void writeAll(Path tablePath, List<Map<String, String>> records, String[] headers) throws IOException
+    {
+        publish(writeTemp(tablePath, records, headers), tablePath);
+    }
+
+    /**
+     * Writes a full copy of a table next to its data file without replacing it.
+     *
+     * @param tablePath the table's CSV path
+     * @param records rows to write, with keys matching headers
+     * @param headers column headers, in order
+     * @return the written temporary file, to be passed to {@link #publish}
+     * @throws IOException if the temporary file cannot be written
+     */
+    Path writeTemp(Path tablePath, List<Map<String, String>> records, String[] headers) throws IOException;
+
+    /**
+     * Replaces a table's rows atomically with objects converted by a codec.
+     *
+     * @param tablePath the table's CSV path
+     * @param values objects to write, one row each
+     * @param codec converts the objects to rows
+     * @throws IOException if the table cannot be written
+     */
+    default <T> void writeAll(Path tablePath, Collection<T> values, RecordCodec<T> codec) throws IOException
+    {
+        publish(writeTemp(tablePath, values, codec), tablePath);
+    }
+
+    /**
+     * Writes a full copy of a table from objects converted by a codec, without replacing it.
+     * Encodes every object to a row map by default; engines that can stream rows override it.
+     *
+     * @param tablePath the table's CSV path
+     * @param values objects to write, one row each
+     * @param codec converts the objects to rows
+     * @return the written temporary file, to be passed to {@link #publish}
+     * @throws IOException if the temporary file cannot be written
+     */
+    default <T> Path writeTemp(Path tablePath, Collection<T> values, RecordCodec<T> codec) throws IOException
+    {
+        List<Map<String, String>> records = new ArrayList<>(values.size());
+        for (T value : values)
+        {
+            records.add(codec.encode(value));
+        }
+        return writeTemp(tablePath, records, codec.headers());
+    }
+
+    /**
+     * Atomically replaces a table's data file with a file from {@link #writeTemp}.
+     *
+     * @param tempFile the written temporary file
+     * @param tablePath the table's CSV path
+     * @throws IOException if the move fails
+     */
+    void publish(Path tempFile, Path tablePath) throws IOException;
+
+    /**
+     * Adds rows to the end of a table without rewriting the rows already there.
+     *
+     * @param tablePath the table's CSV path
+     * @param records rows to append, with keys matching headers
+     * @param headers column headers, in order
+     * @throws IOException if the table cannot be written
+     */
+    void appendAll(Path tablePath, List<Map<String, String>> records, String[] headers) throws IOException;
+}
@@ -0,0 +1,105 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Holds the {@link StorageEngine} repositories use and switches between engines.
+ */
+public final class StorageEngines
+{
+    public static final String CSV = "csv";
+    public static final String BINARY = "binary";
+
+    private static volatile StorageEngine defaultEngine = new CsvStorageEngine();
+
+    private StorageEngines()
+    {
+    }
+
+    /**
+     * @return the engine new repositories store their tables with
+     */
+    public static StorageEngine getDefault()
+    {
+        return defaultEngine;
+    }
+
+    /**
+     * Creates the engine for a profile value.
+     *
+     * @param name "csv" or "binary"; anything else gets the CSV engine
+     * @return a new engine instance
+     */
+    public static StorageEngine forName(String name)
+    {
+        return BINARY.equalsIgnoreCase(name) ? new BinaryStorageEngine() : new CsvStorageEngine();
+    }
+
+    /**
+     * Makes the named engine the default and brings its files up to date with the other format,
+     * so switching engines in the profile never loses rows written under the old one.
+     * Must run before any repository is created.
+     *
+     * @param name the storageEngine profile value
+     */
+    public static void use(String name)
+    {
+        StorageEngine engine = forName(name);
+        BinaryStorageEngine binary = engine instanceof BinaryStorageEngine b ? b : new BinaryStorageEngine();
+
+        for (Path tablePath : tablesToConvert())
+        {
+            try
+            {
+                if (engine == binary)
+                {
+                    binary.importCsvIfNewer(tablePath);
+                }
+                else
+                {
+                    binary.exportCsvIfNewer(tablePath);
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Could not convert " + tablePath + " for the " + engine.name() + " engine: " + e.getMessage());
+            }
+        }
+
+        defaultEngine = engine;
+    }
+
+    /**
+     * Lists every table in the data directory: the flat tables plus any week partitions
+     * and manifests, each by its CSV path.
+     */
+    private static Set<Path> tablesToConvert()
+    {
+        Set<Path> tables = new LinkedHashSet<>(CsvPaths.getTablePaths());
+        for (Path tablePath : CsvPaths.getTablePaths())
+        {
+            Path directory = CsvPaths.getPartitionDirectory(tablePath);
+            if (!Files.isDirectory(directory))
+            {
+                continue;
+            }
+            try (Stream<Path> files = Files.list(directory))
+            {
+                files.map(file -> file.getFileName().toString())
+                        .filter(name -> name.endsWith(".csv") || name.endsWith(".bin"))
+                        .map(name -> directory.resolve(name.substring(0, name.length() - 4) + ".csv"))
+                        .forEach(tables::add);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Could not list " + directory + ": " + e.getMessage());
+            }
+        }
+        return tables;
+    }
+}
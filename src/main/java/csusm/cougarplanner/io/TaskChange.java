@@ -0,0 +1,64 @@
+package csusm.cougarplanner.io;
+
+import csusm.cougarplanner.models.Task;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single mutation of tasks.csv, as written to the tasks journal and applied by
+ * {@link TasksRepository#applyAll(java.util.List)}.
+ *
+ * Every kind is idempotent (completion is recorded as the resulting value, not as a toggle),
+ * so replaying a journal that was already partly folded into tasks.csv gives the same result.
+ *
+ * A PATCH carries only the columns an edit changed, so retitling a task journals its
+ * id and the new title rather than the whole row.
+ *
+ * @param kind what the mutation does
+ * @param taskId the affected task, null for CLEAR
+ * @param task the full task for UPSERT, null otherwise
+ * @param completed the new completed flag for SET_COMPLETED
+ * @param fields the changed columns for PATCH, keyed by lowercase column name; null otherwise
+ */
+public record TaskChange(Kind kind, String taskId, Task task, boolean completed, Map<String, String> fields)
+{
+    public enum Kind { UPSERT, DELETE, SET_COMPLETED, PATCH, CLEAR }
+
+    public static TaskChange upsert(Task task)
+    {
+        return new TaskChange(Kind.UPSERT, task.getTaskId(), task, task.isCompleted(), null);
+    }
+
+    public static TaskChange delete(String taskId)
+    {
+        return new TaskChange(Kind.DELETE, taskId, null, false, null);
+    }
+
+    public static TaskChange setCompleted(String taskId, boolean completed)
+    {
+        return new TaskChange(Kind.SET_COMPLETED, taskId, null, completed, null);
+    }
+
+    /**
+     * Changes some columns of a task, leaving the others as they are. A patch to a task that
+     * doesn't exist does nothing. The id column can't be patched and is dropped, and a null
+     * value is stored as empty, the way it reads back from tasks.csv.
+     *
+     * @param taskId the task to change
+     * @param fields the new values by lowercase column name, as {@link TasksRepository#toRecord} keys them
+     */
+    public static TaskChange patch(String taskId, Map<String, String> fields)
+    {
+        Map<String, String> columns = new LinkedHashMap<>();
+        fields.forEach((column, value) -> columns.put(column, value == null ? "" : value));
+        columns.remove("taskid");
+        return new TaskChange(Kind.PATCH, taskId, null, false, Collections.unmodifiableMap(columns));
+    }
+
+    public static TaskChange clear()
+    {
+        return new TaskChange(Kind.CLEAR, null, null, false, null);
+    }
+}
@@ -3,15 +3,30 @@ package csusm.cougarplanner.io;
 import csusm.cougarplanner.models.Task;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
  * Repository class for managing Task data persistence in tasks.csv.
  *
+ * In log-structured mode (the default) a mutation appends one record to tasks.journal
+ * instead of rewriting tasks.csv, so its cost does not grow with the number of tasks.
+ * Reads replay the journal over tasks.csv, and once the journal passes
+ * {@link #COMPACTION_THRESHOLD} records a background thread folds it into a fresh
+ * tasks.csv with an atomic move.
+ *
  * Part of T03: Implement CSV layer for task.csv with upsert by ID functionality.
  */
 public class TasksRepository {
@@ -21,141 +36,547 @@ public class TasksRepository {
             "dueDate", "courseId", "status", "priority", "completed"
     };
 
-    private final CsvReader csvReader;
-    private final CsvWriter csvWriter;
+    private static final RecordCodec<Task> CODEC = new RecordCodec<>()
+    {
+        @Override
+        public String[] headers()
+        {
+            return HEADERS;
+        }
+
+        @Override
+        public Task decode(Map<String, String> record)
+        {
+            return mapToTask(record);
+        }
+
+        @Override
+        public Map<String, String> encode(Task task)
+        {
+            return taskToMap(task);
+        }
+
+        @Override
+        public void write(Task task, CsvRowWriter out) throws IOException
+        {
+            // Same columns as HEADERS, written without building a map per task
+            out.field(task.getTaskId());
+            out.field(task.getTitle());
+            out.field(task.getDescription());
+            out.field(task.getCreatedDate());
+            out.field(task.getDueDate());
+            out.field(task.getCourseId());
+            out.field(task.getStatus());
+            out.field(task.getPriority());
+            out.field(String.valueOf(task.isCompleted()));
+            out.endRow();
+        }
+
+        @Override
+        public String id(Map<String, String> record)
+        {
+            return record.get("taskid");
+        }
+
+        @Override
+        public LocalDate indexDate(Map<String, String> record)
+        {
+            return null; // tasks.csv has no date index
+        }
+    };
+
+    // Journal records allowed to pile up before they are folded into tasks.csv
+    private static final int COMPACTION_THRESHOLD = 256;
+
+    // Single daemon thread so compaction never overlaps itself or keeps the JVM alive
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tasks-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    // Keeps a scheduled compaction and a direct compact() call from folding the same journal at once
+    private static final Object COMPACTION_LOCK = new Object();
+
+    // Stamps of tasks.csv and its journal right after this process last wrote them, see isAsLastWritten()
+    private static volatile List<FileStamp> ownWriteStamps = List.of();
+
+    private final StorageEngine engine;
+    private final RecordJournal journal; // null when mutations rewrite tasks.csv directly
 
     /**
-     * Constructs a new TasksRepository with default CSV reader/writer.
+     * Constructs a new TasksRepository in log-structured mode.
      */
     public TasksRepository()
     {
-        this.csvReader = new CsvReader();
-        this.csvWriter = new CsvWriter();
+        this(true);
     }
 
     /**
-     * Retrieves all tasks from the tasks.csv file.
+     * Constructs a new TasksRepository with the default storage engine.
+     *
+     * @param logStructured true to journal mutations, false to rewrite tasks.csv on every change
+     */
+    public TasksRepository(boolean logStructured)
+    {
+        this.engine = StorageEngines.getDefault();
+        this.journal = logStructured ? RecordJournal.open(CsvPaths.getTasksJournalPath()) : null;
+    }
+
+    /**
+     * Retrieves all tasks, replaying any journaled changes over tasks.csv.
      *
      * @return List of all Task objects in the database
-     * @throws IOException if the CSV file cannot be read
+     * @throws IOException if the CSV file or journal cannot be read
      */
     public List<Task> findAll() throws IOException
     {
-        List<Map<String, String>> records = csvReader.readAll(CsvPaths.getTasksPath());
-        return records.stream()
-                .map(this::mapToTask)
-                .collect(Collectors.toList());
+        if (journal == null)
+        {
+            return readBase();
+        }
+
+        // Holding the journal keeps a compaction, in this process or another, from swapping tasks.csv between the two reads
+        synchronized (journal)
+        {
+            return FileLocks.shared(CsvPaths.getTasksJournalPath(), () -> {
+                Map<String, Task> tasks = index(readBase());
+                for (String[] record : journal.readAll())
+                {
+                    TaskChange change = decodeChange(record);
+                    if (change != null)
+                    {
+                        replay(tasks, change);
+                    }
+                }
+                return new ArrayList<>(tasks.values());
+            });
+        }
+    }
+
+    /**
+     * Finds a task by id without loading every task when tasks.csv has a sidecar index:
+     * the row is read with a few positional reads and only that task's journal records are replayed.
+     *
+     * @param taskId the task's id
+     * @return the task, or empty if there is none
+     * @throws IOException if the CSV file or journal cannot be read
+     */
+    public Optional<Task> findById(String taskId) throws IOException
+    {
+        if (journal == null)
+        {
+            return findBaseById(taskId);
+        }
+
+        synchronized (journal)
+        {
+            return FileLocks.shared(CsvPaths.getTasksJournalPath(), () -> {
+                Map<String, Task> tasks = new HashMap<>();
+                findBaseById(taskId).ifPresent(task -> tasks.put(taskId, task));
+                for (String[] record : journal.readAll())
+                {
+                    TaskChange change = decodeChange(record);
+                    if (change != null && (change.kind() == TaskChange.Kind.CLEAR || taskId.equals(change.taskId())))
+                    {
+                        replay(tasks, change);
+                    }
+                }
+                return Optional.ofNullable(tasks.get(taskId));
+            });
+        }
     }
 
     /**
      * Updates an existing task or inserts a new one.
      *
      * @param task the Task object to update or insert
-     * @throws IOException if the CSV file cannot be written
+     * @throws IOException if the change cannot be written
      */
     public void upsert(Task task) throws IOException
     {
-        List<Task> allTasks = findAll();
-
-        // Removes existing task with same ID
-        allTasks.removeIf(t -> t.getTaskId().equals(task.getTaskId()));
-
-        // Adds updated task
-        allTasks.add(task);
-
-        // Writes back to file
-        List<Map<String, String>> records = allTasks.stream()
-                .map(this::taskToMap)
-                .collect(Collectors.toList());
-
-        csvWriter.writeAll(CsvPaths.getTasksPath(), records, HEADERS);
+        applyAll(List.of(TaskChange.upsert(task)));
     }
 
     /**
      * Upsert operation for multiple tasks.
      *
      * @param tasks List of tasks to upsert
-     * @throws IOException if the CSV file cannot be written
+     * @throws IOException if the changes cannot be written
      */
     public void upsertAll(List<Task> tasks) throws IOException
     {
-        Map<String, Task> taskMap = new HashMap<>();
+        applyAll(tasks.stream()
+                .map(TaskChange::upsert)
+                .collect(Collectors.toList()));
+    }
 
-        // Loads existing tasks
-        for (Task existing : findAll())
+    /**
+     * Changes some columns of a task. In log-structured mode only the id and the changed
+     * columns are appended to the journal, so the cost doesn't depend on the number of tasks.
+     *
+     * @param taskId the task to change
+     * @param fields the new values by lowercase column name, e.g. "title"
+     * @throws IOException if the change cannot be written
+     */
+    public void patch(String taskId, Map<String, String> fields) throws IOException
+    {
+        applyAll(List.of(TaskChange.patch(taskId, fields)));
+    }
+
+    /**
+     * Sets a task's completed flag.
+     * Preferred over {@link #toggleCompleted(String)} when the caller already knows the new value,
+     * since it needs no read.
+     *
+     * @param taskId the task to update
+     * @param completed the new completed value
+     * @throws IOException if the change cannot be written
+     */
+    public void setCompleted(String taskId, boolean completed) throws IOException
+    {
+        applyAll(List.of(TaskChange.setCompleted(taskId, completed)));
+    }
+
+    /**
+     * update task as completed
+     */
+    public void toggleCompleted(String taskId) throws IOException {
+        // The journal stores the resulting value rather than a toggle, so look up the current one
+        Optional<Task> current = findById(taskId);
+        if (current.isPresent())
         {
-            taskMap.put(existing.getTaskId(), existing);
+            setCompleted(taskId, !current.get().isCompleted());
         }
+    }
 
-        // Updates with new tasks
-        for (Task task : tasks)
+    /**
+     * Delete task by id
+     */
+    public void deleteById(String taskId) throws IOException {
+        applyAll(List.of(TaskChange.delete(taskId)));
+    }
+
+    /**
+     * Delete all tasks
+     */
+    public void deleteAll() throws IOException {
+        applyAll(List.of(TaskChange.clear()));
+    }
+
+    /**
+     * Applies a batch of changes in order with a single write.
+     * In log-structured mode the batch is appended to the journal; otherwise tasks.csv
+     * is read, updated in memory and rewritten once, under its exclusive lock so a change
+     * another process made in between is read and kept.
+     *
+     * @param changes the changes to apply, oldest first
+     * @throws IOException if the changes cannot be written
+     */
+    public void applyAll(List<TaskChange> changes) throws IOException
+    {
+        if (changes.isEmpty())
         {
-            taskMap.put(task.getTaskId(), task);
+            return;
         }
 
-        // Writes back
-        List<Map<String, String>> records = taskMap.values().stream()
-                .map(this::taskToMap)
-                .collect(Collectors.toList());
+        if (journal == null)
+        {
+            FileLocks.exclusive(engine.dataFile(CsvPaths.getTasksPath()), () -> {
+                Map<String, Task> tasks = index(readBase());
+                for (TaskChange change : changes)
+                {
+                    replay(tasks, change);
+                }
+                writeBase(tasks.values());
+                return null;
+            });
+            recordOwnWrite();
+            return;
+        }
 
-        csvWriter.writeAll(CsvPaths.getTasksPath(), records, HEADERS);
+        journal.append(changes.stream()
+                .map(this::encodeChange)
+                .collect(Collectors.toList()));
+        recordOwnWrite();
+        if (journal.size() >= COMPACTION_THRESHOLD)
+        {
+            scheduleCompaction();
+        }
     }
 
     /**
-     * update task as completed
+     * Folds the journal into a fresh tasks.csv and discards the folded records.
+     * Appends made while this runs go to a new journal file and are kept.
+     * Safe to re-run after a crash: every journal record is idempotent.
+     * If another process replaced tasks.csv while this one was folding (it compacted the same
+     * rotated file), the result is dropped rather than published over the newer file.
+     *
+     * @throws IOException if the journal or CSV file cannot be read or written
      */
-    public void toggleCompleted(String taskId) throws IOException {
-        // list of all tasks
-        List<Task> allTasks = findAll();
-        // look through all tasks
-        for (Task t : allTasks) {
-            // find tasks with taskId from parameter
-            if (t.getTaskId().equals(taskId)) {
-                // flip the boolean from false to true
-                t.setCompleted(!t.isCompleted());
-                // stop
-                break;
+    public void compact() throws IOException
+    {
+        if (journal == null)
+        {
+            return;
+        }
+
+        synchronized (COMPACTION_LOCK)
+        {
+            if (!journal.rotate())
+            {
+                return;
+            }
+            recordOwnWrite();
+
+            // Parsing and writing the temp file happen outside the journal lock
+            Path dataFile = engine.dataFile(CsvPaths.getTasksPath());
+            FileStamp baseStamp = FileStamp.of(dataFile);
+            Map<String, Task> tasks = index(readBase());
+            for (String[] record : journal.readRotated())
+            {
+                TaskChange change = decodeChange(record);
+                if (change != null)
+                {
+                    replay(tasks, change);
+                }
+            }
+            Path tempFile = engine.writeTemp(CsvPaths.getTasksPath(), tasks.values(), CODEC);
+
+            synchronized (journal)
+            {
+                FileLocks.exclusive(CsvPaths.getTasksJournalPath(), () -> {
+                    if (!FileStamp.of(dataFile).equals(baseStamp))
+                    {
+                        Files.deleteIfExists(tempFile);
+                        Files.deleteIfExists(SidecarIndex.indexPath(tempFile));
+                        return null;
+                    }
+                    engine.publish(tempFile, CsvPaths.getTasksPath());
+                    journal.discardRotated();
+                    return null;
+                });
             }
+            recordOwnWrite();
         }
-        // write back to csv
-        List<Map<String, String>> records = allTasks.stream()
-                .map(this::taskToMap)
-                .collect(Collectors.toList());
+    }
 
-        csvWriter.writeAll(CsvPaths.getTasksPath(), records, HEADERS);
+    /**
+     * Tells whether tasks.csv and its journal are exactly as this process last wrote them, so a
+     * file change event for them is an echo of the app's own write and has nothing to reload.
+     * A write by another process in the moment between this process's write and its stamp being
+     * taken would be missed, as would a change that keeps a file's size and modification time.
+     *
+     * @return true if neither file changed since this process's last write
+     * @throws IOException if a file's attributes cannot be read
+     */
+    public static boolean isAsLastWritten() throws IOException
+    {
+        List<FileStamp> expected = ownWriteStamps;
+        return !expected.isEmpty() && currentStamps().equals(expected);
     }
 
+    private static void recordOwnWrite()
+    {
+        try
+        {
+            ownWriteStamps = currentStamps();
+        }
+        catch (IOException e)
+        {
+            ownWriteStamps = List.of(); // Unknown, so the next event is treated as external
+        }
+    }
+
+    private static List<FileStamp> currentStamps() throws IOException
+    {
+        return List.of(FileStamp.of(StorageEngines.getDefault().dataFile(CsvPaths.getTasksPath())),
+                FileStamp.of(CsvPaths.getTasksJournalPath()));
+    }
+
+    private void scheduleCompaction()
+    {
+        if (!compactionScheduled.compareAndSet(false, true))
+        {
+            return;
+        }
+        COMPACTOR.execute(() -> {
+            try
+            {
+                compact();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Could not compact tasks journal: " + e.getMessage());
+            }
+            finally
+            {
+                compactionScheduled.set(false);
+            }
+        });
+    }
 
     /**
-     * Delete task by id
+     * Applies one change to an id-ordered map of tasks.
+     * Upserts move the task to the end, matching the original rewrite-on-upsert order.
      */
-    public void deleteById(String taskId) throws IOException {
-        // get list of all tasks
-        List<Task> allTasks = findAll();
-        // remove task with the id == taskId in parameter
-        allTasks.removeIf(t -> t.getTaskId().equals(taskId));
-        // write back to csv
-        List<Map<String, String>> records = allTasks.stream()
-                .map(this::taskToMap)
-                .collect(Collectors.toList());
+    private static void replay(Map<String, Task> tasks, TaskChange change)
+    {
+        switch (change.kind())
+        {
+            case UPSERT ->
+            {
+                tasks.remove(change.taskId());
+                tasks.put(change.taskId(), change.task());
+            }
+            case DELETE -> tasks.remove(change.taskId());
+            case SET_COMPLETED ->
+            {
+                Task existing = tasks.get(change.taskId());
+                if (existing != null)
+                {
+                    Task updated = new Task(existing);
+                    updated.setCompleted(change.completed());
+                    tasks.put(change.taskId(), updated);
+                }
+            }
+            case PATCH ->
+            {
+                // In place: an edit doesn't move the task the way an upsert does
+                Task existing = tasks.get(change.taskId());
+                if (existing != null)
+                {
+                    tasks.put(change.taskId(), patched(existing, change.fields()));
+                }
+            }
+            case CLEAR -> tasks.clear();
+        }
+    }
 
-        csvWriter.writeAll(CsvPaths.getTasksPath(), records, HEADERS);
+    /**
+     * Gets a copy of a task with some columns replaced.
+     *
+     * @param task the task
+     * @param fields the new values by lowercase column name, as {@link #toRecord} keys them
+     * @return the patched copy
+     */
+    public static Task patched(Task task, Map<String, String> fields)
+    {
+        Map<String, String> record = toRecord(task);
+        record.putAll(fields);
+        return mapToTask(record);
     }
 
     /**
-     * Delete all tasks
+     * Encodes a change as a journal record: an op letter followed by its fields.
      */
-    public void deleteAll() throws IOException {
-        // create an empty list of tasks
-        List<Task> emptyList = new ArrayList<>();
-        // convert empty list to CSV rows
-        List<Map<String, String>> records = emptyList.stream()
-                .map(this::taskToMap)
+    private String[] encodeChange(TaskChange change)
+    {
+        return switch (change.kind())
+        {
+            case UPSERT ->
+            {
+                Map<String, String> record = taskToMap(change.task());
+                String[] fields = new String[HEADERS.length + 1];
+                fields[0] = "U";
+                for (int i = 0; i < HEADERS.length; i++)
+                {
+                    fields[i + 1] = record.get(HEADERS[i]);
+                }
+                yield fields;
+            }
+            case DELETE -> new String[]{"D", change.taskId()};
+            case SET_COMPLETED -> new String[]{"S", change.taskId(), String.valueOf(change.completed())};
+            case PATCH ->
+            {
+                // "P", the id, then a column name and value per changed column
+                String[] fields = new String[2 + 2 * change.fields().size()];
+                fields[0] = "P";
+                fields[1] = change.taskId();
+                int i = 2;
+                for (Map.Entry<String, String> field : change.fields().entrySet())
+                {
+                    fields[i++] = field.getKey();
+                    fields[i++] = field.getValue();
+                }
+                yield fields;
+            }
+            case CLEAR -> new String[]{"C"};
+        };
+    }
+
+    /**
+     * Decodes a journal record, or returns null for a torn or unknown record.
+     */
+    private TaskChange decodeChange(String[] fields)
+    {
+        switch (fields[0].trim())
+        {
+            case "U":
+                if (fields.length < HEADERS.length + 1) return null;
+                Map<String, String> record = new HashMap<>();
+                for (int i = 0; i < HEADERS.length; i++)
+                {
+                    // Same lowercase keys CsvReader produces, so mapToTask works unchanged
+                    record.put(HEADERS[i].toLowerCase(), fields[i + 1].trim());
+                }
+                return TaskChange.upsert(mapToTask(record));
+            case "D":
+                return fields.length < 2 ? null : TaskChange.delete(fields[1].trim());
+            case "S":
+                return fields.length < 3 ? null : TaskChange.setCompleted(fields[1].trim(), Boolean.parseBoolean(fields[2].trim()));
+            case "P":
+                if (fields.length < 2) return null;
+                Map<String, String> columns = new LinkedHashMap<>();
+                for (int i = 2; i + 1 < fields.length; i += 2)
+                {
+                    columns.put(fields[i].trim().toLowerCase(), fields[i + 1]);
+                }
+                return TaskChange.patch(fields[1].trim(), columns);
+            case "C":
+                return TaskChange.clear();
+            default:
+                return null;
+        }
+    }
+
+    private List<Task> readBase() throws IOException
+    {
+        List<Map<String, String>> records = engine.readAll(CsvPaths.getTasksPath());
+        return records.stream()
+                .map(TasksRepository::mapToTask)
                 .collect(Collectors.toList());
-        // write empty CSV back to file
-        csvWriter.writeAll(CsvPaths.getTasksPath(), records, HEADERS);
     }
 
+    /**
+     * Looks a task up in tasks.csv alone, through its sidecar index if the engine keeps one.
+     */
+    private Optional<Task> findBaseById(String taskId) throws IOException
+    {
+        SidecarIndex index = SidecarIndex.open(engine.dataFile(CsvPaths.getTasksPath()));
+        if (index == null)
+        {
+            return readBase().stream()
+                    .filter(task -> task.getTaskId().equals(taskId))
+                    .reduce((first, second) -> second);
+        }
+        return index.findById(taskId).map(TasksRepository::mapToTask);
+    }
+
+    private void writeBase(Collection<Task> tasks) throws IOException
+    {
+        engine.writeAll(CsvPaths.getTasksPath(), tasks, CODEC);
+    }
+
+    private static Map<String, Task> index(List<Task> tasks)
+    {
+        Map<String, Task> byId = new LinkedHashMap<>();
+        for (Task task : tasks)
+        {
+            byId.put(task.getTaskId(), task);
+        }
+        return byId;
+    }
 
     /**
      * Converts a CSV record Map to a Task object.
@@ -163,7 +584,7 @@ public class TasksRepository {
      * @param record Map representing a CSV row with snake_case keys
      * @return Task object populated from the CSV data
      */
-    private Task mapToTask(Map<String, String> record)
+    private static Task mapToTask(Map<String, String> record)
     {
         // CsvReader lowercases all header names, so lookup keys must be lowercase too.
         // Mismatched case (e.g. "taskID") silently returns null and triggers the UUID
@@ -191,13 +612,53 @@ public class TasksRepository {
         return task;
     }
 
+    /**
+     * Gets the content hash of a task as it would be written to the tasks file, so two
+     * versions of a task can be compared without comparing every field.
+     *
+     * @param task the task
+     * @return the task's row hash
+     */
+    public static String rowHash(Task task)
+    {
+        return RowHash.of(taskToMap(task), HEADERS);
+    }
+
+    /**
+     * Gets a task's fields keyed the way {@link CsvReader} returns them, i.e. by lowercase column name.
+     *
+     * @param task the task
+     * @return the task's record, in column order
+     */
+    public static Map<String, String> toRecord(Task task)
+    {
+        Map<String, String> source = taskToMap(task);
+        Map<String, String> record = new LinkedHashMap<>();
+        for (String header : HEADERS)
+        {
+            record.put(header.toLowerCase(), source.get(header));
+        }
+        return record;
+    }
+
+    /**
+     * Builds a task from a record keyed by lowercase column name, as {@link #toRecord} returns.
+     *
+     * @param record the task's fields
+     * @return the task
+     */
+    public static Task fromRecord(Map<String, String> record)
+    {
+        return mapToTask(record);
+    }
+
     /**
      * Converts a Task object to a CSV record Map.
      *
      * @param task the Task object to convert
      * @return Map representing a CSV row with snake_case keys
      */
-    private Map<String, String> taskToMap(Task task)
+    private static Map<String, String> taskToMap(Task task)
     {
         Map<String, String> record = new HashMap<>();
         record.put("taskID", task.getTaskId());
@@ -0,0 +1,30 @@
+package csusm.cougarplanner.io;
+
+/**
+ * What an upsert did to a table, counted per row.
+ *
+ * @param inserted rows whose id was not in the table
+ * @param changed rows that replaced a row with different content
+ * @param unchanged rows identical to the stored row, which were not written
+ */
+public record UpsertResult(int inserted, int changed, int unchanged)
+{
+    /**
+     * Checks whether the upsert had to write anything.
+     *
+     * @return true if at least one row was inserted or changed
+     */
+    public boolean wroteRows()
+    {
+        return inserted > 0 || changed > 0;
+    }
+
+    /**
+     * Formats the counts for log messages, e.g. "2 inserted, 1 changed, 40 unchanged".
+     */
+    @Override
+    public String toString()
+    {
+        return inserted + " inserted, " + changed + " changed, " + unchanged + " unchanged";
+    }
+}
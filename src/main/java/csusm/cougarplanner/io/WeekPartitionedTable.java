@@ -0,0 +1,516 @@
+package csusm.cougarplanner.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * {@link RecordTable} that stores a table as one file per ISO week of its index date.
+ *
+ * data/assignments.csv becomes a data/assignments/ directory holding e.g. 2025-W41.csv
+ * for every week with rows, undated.csv for rows without a date, and manifest.csv
+ * mapping every id to its week. All files go through the default {@link StorageEngine},
+ * so with the binary engine they are .bin files instead.
+ *
+ * A week query reads only the partitions of the weeks it covers, and an upsert rewrites
+ * only the partitions whose rows changed, compared by {@link RowHash}. The manifest is small (two short columns) and
+ * is the only file read to find where an id lives.
+ *
+ * Writes hold the manifest's exclusive {@link FileLocks lock}, which stands for the whole table,
+ * and re-read the manifest under it if another process changed it, so their rows are kept.
+ */
+public class WeekPartitionedTable<T> implements RecordTable<T>
+{
+    private static final String MANIFEST = "manifest.csv";
+    private static final String UNDATED = "undated";
+    private static final String[] MANIFEST_HEADERS = {"id", "week"};
+
+    private static final Map<Path, WeekPartitionedTable<?>> TABLES = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final RecordCodec<T> codec;
+    private final StorageEngine engine;
+    private final String[] headers;
+
+    // Guarded by this: week of every id, as last read from or written to the manifest
+    private final Map<String, String> weekById = new LinkedHashMap<>();
+    private FileStamp manifestStamp;
+
+    private WeekPartitionedTable(Path directory, RecordCodec<T> codec)
+    {
+        this.directory = directory;
+        this.codec = codec;
+        this.engine = StorageEngines.getDefault();
+        this.headers = RowHash.headers(codec.headers());
+    }
+
+    /**
+     * Gets the shared partitioned table for a table path.
+     *
+     * @param tablePath the table's CSV path; partitions live in {@link CsvPaths#getPartitionDirectory(Path)}
+     * @param codec converts between rows and model objects
+     * @return the table instance for that path
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> WeekPartitionedTable<T> open(Path tablePath, RecordCodec<T> codec)
+    {
+        Path directory = CsvPaths.getPartitionDirectory(tablePath);
+        return (WeekPartitionedTable<T>) TABLES.computeIfAbsent(directory.toAbsolutePath().normalize(),
+                path -> new WeekPartitionedTable<>(directory, codec));
+    }
+
+    @Override
+    public synchronized List<T> findAll() throws IOException
+    {
+        refresh();
+        List<T> values = new ArrayList<>();
+        for (String week : new TreeSet<>(weekById.values()))
+        {
+            for (Map<String, String> record : readPartition(week).values())
+            {
+                values.add(codec.decode(record));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public synchronized Optional<T> findById(String id) throws IOException
+    {
+        refresh();
+        String week = weekById.get(id);
+        Map<String, String> record = week != null ? readPartition(week).get(id) : null;
+        return record != null ? Optional.of(codec.decode(record)) : Optional.empty();
+    }
+
+    /**
+     * Gets the rows dated within [from, to] (both inclusive), reading only the weeks the range covers.
+     */
+    @Override
+    public synchronized List<T> findByDateRange(LocalDate from, LocalDate to) throws IOException
+    {
+        refresh();
+        Set<String> known = new HashSet<>(weekById.values());
+        List<Map<String, String>> matches = new ArrayList<>();
+        for (String week : weeksBetween(from, to))
+        {
+            if (!known.contains(week))
+            {
+                continue;
+            }
+            for (Map<String, String> record : readPartition(week).values())
+            {
+                LocalDate date = codec.indexDate(record);
+                if (date != null && !date.isBefore(from) && !date.isAfter(to))
+                {
+                    matches.add(record);
+                }
+            }
+        }
+
+        // Stable, so rows on the same day keep their file order
+        matches.sort(Comparator.comparing(codec::indexDate));
+        List<T> values = new ArrayList<>(matches.size());
+        for (Map<String, String> record : matches)
+        {
+            values.add(codec.decode(record));
+        }
+        return values;
+    }
+
+    /**
+     * Inserts or replaces rows by id, rewriting only the partitions that gain, change or lose a row.
+     * A row whose date moved to another week is removed from its old partition; a row identical
+     * to the stored one leaves its partition untouched.
+     */
+    @Override
+    public synchronized UpsertResult upsertAll(Collection<T> values) throws IOException
+    {
+        return FileLocks.exclusive(engine.dataFile(manifestPath()), () -> upsertLocked(values));
+    }
+
+    private UpsertResult upsertLocked(Collection<T> values) throws IOException
+    {
+        refresh();
+
+        Map<String, Map<String, Map<String, String>>> partitions = new HashMap<>();
+        Set<String> dirty = new TreeSet<>();
+        List<Map<String, String>> newManifestRows = new ArrayList<>();
+        boolean moved = false;
+        int changed = 0;
+        int unchanged = 0;
+
+        for (T value : values)
+        {
+            Map<String, String> record = codec.encode(value);
+            String hash = RowHash.of(record, codec.headers());
+            String id = codec.id(record);
+            String week = weekKey(codec.indexDate(record));
+            String previousWeek = weekById.get(id);
+
+            if (week.equals(previousWeek))
+            {
+                Map<String, String> existing = partition(partitions, week).get(id);
+                if (existing != null && hash.equals(RowHash.stored(existing, codec.headers())))
+                {
+                    unchanged++;
+                    continue;
+                }
+            }
+
+            weekById.put(id, week);
+            if (previousWeek == null)
+            {
+                newManifestRows.add(Map.of("id", id, "week", week));
+            }
+            else
+            {
+                changed++;
+                if (!previousWeek.equals(week))
+                {
+                    partition(partitions, previousWeek).remove(id);
+                    dirty.add(previousWeek);
+                    moved = true;
+                }
+            }
+            partition(partitions, week).put(id, RowHash.stamped(record, hash));
+            dirty.add(week);
+        }
+
+        UpsertResult result = new UpsertResult(newManifestRows.size(), changed, unchanged);
+        if (dirty.isEmpty())
+        {
+            return result;
+        }
+
+        try
+        {
+            Files.createDirectories(directory);
+            for (String week : dirty)
+            {
+                writePartition(week, partitions.get(week));
+            }
+
+            // Written after the partitions, so the manifest never points at a row that isn't there yet
+            if (moved)
+            {
+                engine.writeAll(manifestPath(), manifestRows(), MANIFEST_HEADERS);
+            }
+            else if (!newManifestRows.isEmpty())
+            {
+                engine.appendAll(manifestPath(), newManifestRows, MANIFEST_HEADERS);
+            }
+            manifestStamp = FileStamp.of(engine.dataFile(manifestPath()));
+            DataTransaction.onRollback(this::forget);
+        }
+        catch (IOException e)
+        {
+            manifestStamp = null; // weekById ran ahead of the disk; reload it next time
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Removes rows by id, rewriting only the partitions they were in and then the manifest.
+     */
+    @Override
+    public synchronized int removeAll(Collection<String> ids) throws IOException
+    {
+        return FileLocks.exclusive(engine.dataFile(manifestPath()), () -> removeLocked(ids));
+    }
+
+    private int removeLocked(Collection<String> ids) throws IOException
+    {
+        refresh();
+
+        Map<String, Set<String>> idsByWeek = new TreeMap<>();
+        for (String id : ids)
+        {
+            String week = weekById.get(id);
+            if (week != null)
+            {
+                idsByWeek.computeIfAbsent(week, w -> new HashSet<>()).add(id);
+            }
+        }
+        if (idsByWeek.isEmpty())
+        {
+            return 0;
+        }
+
+        int removed = 0;
+        try
+        {
+            for (Map.Entry<String, Set<String>> entry : idsByWeek.entrySet())
+            {
+                Map<String, Map<String, String>> rows = new LinkedHashMap<>(readPartition(entry.getKey()));
+                rows.keySet().removeAll(entry.getValue());
+                writePartition(entry.getKey(), rows);
+                weekById.keySet().removeAll(entry.getValue());
+                removed += entry.getValue().size();
+            }
+
+            // Written after the partitions, as in upsertAll; a crash in between leaves ids pointing at no row, which reads skip
+            engine.writeAll(manifestPath(), manifestRows(), MANIFEST_HEADERS);
+            manifestStamp = FileStamp.of(engine.dataFile(manifestPath()));
+            DataTransaction.onRollback(this::forget);
+        }
+        catch (IOException e)
+        {
+            manifestStamp = null;
+            throw e;
+        }
+        return removed;
+    }
+
+    /**
+     * Splits a single-file table into week partitions if it was written after the partitions
+     * (or there are none yet), e.g. on the first launch with the partitioned layout.
+     *
+     * @param tablePath the table's CSV path
+     * @param codec converts between rows and model objects
+     * @param engine the engine both layouts are stored with
+     * @throws IOException if the table cannot be read or the partitions cannot be written
+     */
+    static <T> void splitIfNewer(Path tablePath, RecordCodec<T> codec, StorageEngine engine) throws IOException
+    {
+        Path directory = CsvPaths.getPartitionDirectory(tablePath);
+        if (!isNewer(engine.dataFile(tablePath), lastModifiedIn(directory)))
+        {
+            return;
+        }
+
+        Map<String, Map<String, Map<String, String>>> partitions = new TreeMap<>();
+        List<Map<String, String>> manifest = new ArrayList<>();
+        for (Map<String, String> record : engine.readAll(tablePath))
+        {
+            String id = codec.id(record);
+            String week = weekKey(codec.indexDate(record));
+            if (partitions.computeIfAbsent(week, w -> new LinkedHashMap<>()).put(id, record) == null)
+            {
+                manifest.add(Map.of("id", id, "week", week));
+            }
+        }
+
+        clearDirectory(directory);
+        Files.createDirectories(directory);
+        for (Map.Entry<String, Map<String, Map<String, String>>> entry : partitions.entrySet())
+        {
+            engine.writeAll(directory.resolve(entry.getKey() + ".csv"),
+                    new ArrayList<>(entry.getValue().values()), RowHash.headers(codec.headers()));
+        }
+        engine.writeAll(directory.resolve(MANIFEST), manifest, MANIFEST_HEADERS);
+    }
+
+    /**
+     * Writes the partitions back into a single-file table if they were changed after it,
+     * e.g. on the first launch after switching back to the single-file layout.
+     *
+     * @param tablePath the table's CSV path
+     * @param codec converts between rows and model objects
+     * @param engine the engine both layouts are stored with
+     * @throws IOException if the partitions cannot be read or the table cannot be written
+     */
+    static <T> void flattenIfNewer(Path tablePath, RecordCodec<T> codec, StorageEngine engine) throws IOException
+    {
+        Path directory = CsvPaths.getPartitionDirectory(tablePath);
+        FileTime partitionsModified = lastModifiedIn(directory);
+        if (partitionsModified == null || !isNewer(partitionsModified, engine.dataFile(tablePath)))
+        {
+            return;
+        }
+
+        List<Map<String, String>> records = new ArrayList<>();
+        for (T value : open(tablePath, codec).findAll())
+        {
+            Map<String, String> record = codec.encode(value);
+            records.add(RowHash.stamped(record, RowHash.of(record, codec.headers())));
+        }
+        engine.writeAll(tablePath, records, RowHash.headers(codec.headers()));
+    }
+
+    /**
+     * Gets the ISO week partition a date belongs to, e.g. "2025-W41".
+     *
+     * @param date the row's index date, may be null
+     * @return the partition name
+     */
+    static String weekKey(LocalDate date)
+    {
+        if (date == null)
+        {
+            return UNDATED;
+        }
+        return String.format("%d-W%02d", date.get(IsoFields.WEEK_BASED_YEAR), date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+    }
+
+    /**
+     * Reloads the id-to-week map if the manifest changed since it was last loaded or written.
+     */
+    private void refresh() throws IOException
+    {
+        FileStamp current = FileStamp.of(engine.dataFile(manifestPath()));
+        if (current.equals(manifestStamp))
+        {
+            return;
+        }
+
+        weekById.clear();
+        for (Map<String, String> record : engine.readAll(manifestPath()))
+        {
+            weekById.put(record.get("id"), record.get("week"));
+        }
+        manifestStamp = current;
+    }
+
+    /**
+     * Drops the id-to-week map so the next call reloads it, e.g. when the transaction
+     * that wrote it is rolled back.
+     */
+    private synchronized void forget()
+    {
+        manifestStamp = null;
+    }
+
+    /**
+     * Reads one partition's rows by id, skipping rows the manifest places in another week
+     * (left behind if a move was interrupted before the old partition was rewritten).
+     */
+    private Map<String, Map<String, String>> readPartition(String week) throws IOException
+    {
+        Map<String, Map<String, String>> rows = new LinkedHashMap<>();
+        for (Map<String, String> record : engine.readAll(partitionPath(week)))
+        {
+            String id = codec.id(record);
+            String manifestWeek = weekById.get(id);
+            if (manifestWeek == null || manifestWeek.equals(week))
+            {
+                rows.put(id, record);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Gets a partition's rows for an upsert to edit, reading each partition at most once per upsert.
+     */
+    private Map<String, Map<String, String>> partition(Map<String, Map<String, Map<String, String>>> partitions, String week)
+            throws IOException
+    {
+        Map<String, Map<String, String>> rows = partitions.get(week);
+        if (rows == null)
+        {
+            rows = new LinkedHashMap<>(readPartition(week));
+            partitions.put(week, rows);
+        }
+        return rows;
+    }
+
+    private void writePartition(String week, Map<String, Map<String, String>> rows) throws IOException
+    {
+        // Inside a transaction an emptied week is written empty instead, so its removal is staged too
+        if (rows.isEmpty() && !DataTransaction.isActive())
+        {
+            Files.deleteIfExists(engine.dataFile(partitionPath(week)));
+            return;
+        }
+        engine.writeAll(partitionPath(week), new ArrayList<>(rows.values()), headers);
+    }
+
+    private List<Map<String, String>> manifestRows()
+    {
+        List<Map<String, String>> rows = new ArrayList<>(weekById.size());
+        for (Map.Entry<String, String> entry : weekById.entrySet())
+        {
+            rows.add(Map.of("id", entry.getKey(), "week", entry.getValue()));
+        }
+        return rows;
+    }
+
+    private Path manifestPath()
+    {
+        return directory.resolve(MANIFEST);
+    }
+
+    private Path partitionPath(String week)
+    {
+        return directory.resolve(week + ".csv");
+    }
+
+    /**
+     * Lists the partitions a date range touches, in order.
+     */
+    private static List<String> weeksBetween(LocalDate from, LocalDate to)
+    {
+        List<String> weeks = new ArrayList<>();
+        if (from.isAfter(to))
+        {
+            return weeks;
+        }
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusWeeks(1))
+        {
+            weeks.add(weekKey(date));
+        }
+        String last = weekKey(to);
+        if (!weeks.contains(last))
+        {
+            weeks.add(last);
+        }
+        return weeks;
+    }
+
+    /**
+     * Gets the newest modification time of any file in a directory, or null if it has none.
+     */
+    private static FileTime lastModifiedIn(Path directory) throws IOException
+    {
+        if (!Files.isDirectory(directory))
+        {
+            return null;
+        }
+        FileTime newest = null;
+        try (Stream<Path> files = Files.list(directory))
+        {
+            for (Path file : (Iterable<Path>) files::iterator)
+            {
+                FileTime modified = Files.getLastModifiedTime(file);
+                if (newest == null || modified.compareTo(newest) > 0)
+                {
+                    newest = modified;
+                }
+            }
+        }
+        return newest;
+    }
+
+    private static boolean isNewer(Path file, FileTime than) throws IOException
+    {
+        return Files.exists(file) && (than == null || Files.getLastModifiedTime(file).compareTo(than) > 0);
+    }
+
+    private static boolean isNewer(FileTime modified, Path than) throws IOException
+    {
+        return !Files.exists(than) || modified.compareTo(Files.getLastModifiedTime(than)) > 0;
+    }
+
+    private static void clearDirectory(Path directory) throws IOException
+    {
+        if (!Files.isDirectory(directory))
+        {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory))
+        {
+            for (Path file : (Iterable<Path>) files::iterator)
+            {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package csusm.cougarplanner.models;
 
+import java.util.function.Supplier;
+
 /**
  * Represents a course announcement with combined datetime posting information.
  */
@@ -10,6 +12,9 @@ public class Announcement
     private String title;
     private String postedAt;
     private String message;
+    // Set instead of message when the body is stored out of line and read on demand
+    private String messageRef;
+    private Supplier<String> messageLoader;
 
     /**
      * Default constructor for CSV reading and object creation.
@@ -118,11 +123,17 @@ public class Announcement
 
     /**
      * Gets the announcement message content.
+     * A lazily loaded message is read each time it is asked for and is not kept on the object,
+     * so lists of announcements stay small; the loader does its own caching.
      *
      * @return the message content, which may be null or empty
      */
     public String getMessage()
     {
+        if (message == null && messageLoader != null)
+        {
+            return messageLoader.get();
+        }
         return message;
     }
 
@@ -134,6 +145,31 @@ public class Announcement
     public void setMessage(String message)
     {
         this.message = message;
+        this.messageRef = null;
+        this.messageLoader = null;
+    }
+
+    /**
+     * Sets the message to be loaded on demand from where the repository stored it.
+     *
+     * @param messageRef opaque reference to the stored message, written back unchanged on save
+     * @param messageLoader reads the message when {@link #getMessage()} is called
+     */
+    public void setLazyMessage(String messageRef, Supplier<String> messageLoader)
+    {
+        this.message = null;
+        this.messageRef = messageRef;
+        this.messageLoader = messageLoader;
+    }
+
+    /**
+     * Gets the reference to the stored message, if the message has not been loaded or replaced.
+     *
+     * @return the reference passed to {@link #setLazyMessage}, or null for an inline message
+     */
+    public String getMessageRef()
+    {
+        return messageRef;
     }
 
     /**
@@ -149,7 +185,7 @@ public class Announcement
                 ", courseId='" + courseId + '\'' +
                 ", title='" + title + '\'' +
                 ", postedAt='" + postedAt + '\'' +
-                ", message='" + message + '\'' +
+                (messageRef != null ? ", messageRef='" + messageRef + '\'' : ", message='" + message + '\'') +
                 '}';
     }
 }
\ No newline at end of file
@@ -12,7 +12,7 @@ public class AnnouncementDisplay
     private final String courseName;
     private final String title;
     private final String postedAt;   // YYYY-MM-DD HH:MM format
-    private final String body;
+    private final Announcement announcement; // Body is read from here only when rendered
 
     /**
      * Constructs a new AnnouncementDisplay by combining Announcement data with course information.
@@ -27,7 +27,7 @@ public class AnnouncementDisplay
         this.courseName = courseName;
         this.title = announcement.getTitle();
         this.postedAt = announcement.getPostedAt();
-        this.body = announcement.getMessage();
+        this.announcement = announcement;
     }
 
     public String getAnnouncementId() { return announcementId; }
@@ -35,5 +35,5 @@ public class AnnouncementDisplay
     public String getCourseName() { return courseName; }
     public String getTitle() { return title; }
     public String getPostedAt() { return postedAt; }
-    public String getBody() { return body; }
+    public String getBody() { return announcement.getMessage(); }
 }
@@ -68,6 +68,14 @@ public class Task
         this.completed   = completed;
     }
 
+    // Copy constructor, used by the repository layer so replayed changes never mutate a caller's task.
+    public Task(Task other)
+    {
+        this(other.taskId, other.title, other.description,
+             other.createdDate, other.dueDate, other.courseId,
+             other.status, other.priority, other.completed);
+    }
+
     public String  getTaskId()                        { return taskId; }
     public void    setTaskId(String taskId)           { this.taskId = taskId; }
 
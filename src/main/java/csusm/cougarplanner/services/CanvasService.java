@@ -7,6 +7,7 @@ import csusm.cougarplanner.cache.CacheManager;
 import csusm.cougarplanner.io.AnnouncementsRepository;
 import csusm.cougarplanner.io.AssignmentsRepository;
 import csusm.cougarplanner.io.CoursesRepository;
+import csusm.cougarplanner.io.DataTransaction;
 import csusm.cougarplanner.models.Announcement;
 import csusm.cougarplanner.models.Assignment;
 import csusm.cougarplanner.models.Course;
@@ -18,6 +19,7 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -79,8 +81,9 @@ public final class CanvasService {
         // 3. Canvas API
         List<Course> fromApi = fetchCoursesFromApi();
         if (!fromApi.isEmpty()) {
-            try {
+            try (DataTransaction transaction = DataTransaction.begin()) {
                 coursesRepository.upsertAll(fromApi);
+                transaction.commit();
             } catch (IOException e) {
                 System.err.println("Error persisting courses to repository: " + e.getMessage());
             }
@@ -106,8 +109,9 @@ public final class CanvasService {
         }
         List<Assignment> fromApi = fetchAssignmentsFromApiAsync(range);
         if (!fromApi.isEmpty()) {
-            try {
+            try (DataTransaction transaction = DataTransaction.begin()) {
                 assignmentsRepository.upsertAll(fromApi);
+                transaction.commit();
             } catch (IOException e) {
                 System.err.println("Error persisting assignments to repository: " + e.getMessage());
             }
@@ -133,8 +137,9 @@ public final class CanvasService {
         }
         List<Announcement> fromApi = fetchAnnouncementsFromApiAsync(range);
         if (!fromApi.isEmpty()) {
-            try {
+            try (DataTransaction transaction = DataTransaction.begin()) {
                 announcementsRepository.upsertAll(fromApi);
+                transaction.commit();
             } catch (IOException e) {
                 System.err.println("Error persisting announcements to repository: " + e.getMessage());
             }
@@ -297,6 +302,25 @@ public final class CanvasService {
         return prefix + range.startIncl() + "/" + range.endExcl();
     }
 
+    /**
+     * Checks whether a key built by {@link #buildWeekCacheKey} covers a date,
+     * so a change to a row can invalidate just the weeks it shows up in.
+     */
+    static boolean weekKeyCovers(String key, LocalDate date) {
+        int colon = key.indexOf(':');
+        int slash = key.indexOf('/', colon + 1);
+        if (colon < 0 || slash < 0) {
+            return false;
+        }
+        try {
+            LocalDate startIncl = LocalDate.parse(key.substring(colon + 1, slash));
+            LocalDate endExcl = LocalDate.parse(key.substring(slash + 1));
+            return !date.isBefore(startIncl) && date.isBefore(endExcl);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
     /**
      * Returns true if the given date falls within the week range [startIncl, endExcl).
      */
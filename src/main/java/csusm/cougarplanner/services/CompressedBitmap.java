@@ -0,0 +1,604 @@
+package csusm.cougarplanner.services;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints, laid out like a roaring bitmap: values are split by
+ * their high 16 bits into chunks of 65536, and each chunk is stored in whichever container
+ * is smaller for its contents. A sparse chunk is a sorted array of its low 16 bits; once it
+ * holds more than {@link #ARRAY_MAX} values it switches to a plain 65536-bit bitmap (8 KB),
+ * and back again when it shrinks. AND, OR and counting work container by container, with
+ * word-wise operations where both sides are bitmaps.
+ * <p>
+ * Used by {@link TaskCache} to index task slots by facet value. Not thread-safe.
+ */
+public final class CompressedBitmap
+{
+    // An array container larger than this would take more space than a bitmap container
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 65536 / 64;
+
+    private char[] keys = new char[0];          // high 16 bits of each chunk, ascending
+    private Container[] containers = new Container[0];
+    private int size;                           // chunks in use
+
+    public CompressedBitmap()
+    {
+    }
+
+    private CompressedBitmap(char[] keys, Container[] containers, int size)
+    {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    /**
+     * @param value the value to add, at least 0
+     * @return true if it wasn't in the set yet
+     */
+    public boolean add(int value)
+    {
+        char key = (char) (value >>> 16);
+        int index = indexOf(key);
+        if (index < 0)
+        {
+            index = -index - 1;
+            insertChunk(index, key, new ArrayContainer());
+        }
+        Container before = containers[index];
+        int cardinality = before.cardinality();
+        containers[index] = before.add((char) value);
+        return containers[index].cardinality() > cardinality;
+    }
+
+    /**
+     * @param value the value to remove
+     * @return true if it was in the set
+     */
+    public boolean remove(int value)
+    {
+        int index = indexOf((char) (value >>> 16));
+        if (index < 0)
+        {
+            return false;
+        }
+        Container before = containers[index];
+        int cardinality = before.cardinality();
+        Container after = before.remove((char) value);
+        if (after.cardinality() == 0)
+        {
+            removeChunk(index);
+        }
+        else
+        {
+            containers[index] = after;
+        }
+        return after.cardinality() < cardinality;
+    }
+
+    public boolean contains(int value)
+    {
+        int index = indexOf((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public int cardinality()
+    {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++)
+        {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @return a new set of the values in both this and the other set
+     */
+    public CompressedBitmap and(CompressedBitmap other)
+    {
+        CompressedBitmap result = new CompressedBitmap(new char[Math.min(size, other.size)],
+                new Container[Math.min(size, other.size)], 0);
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size)
+        {
+            if (keys[i] < other.keys[j])
+            {
+                i++;
+            }
+            else if (keys[i] > other.keys[j])
+            {
+                j++;
+            }
+            else
+            {
+                Container both = containers[i].and(other.containers[j]);
+                if (both.cardinality() > 0)
+                {
+                    result.keys[result.size] = keys[i];
+                    result.containers[result.size++] = both;
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the values in both sets without building the intersection.
+     */
+    public int andCardinality(CompressedBitmap other)
+    {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size)
+        {
+            if (keys[i] < other.keys[j])
+            {
+                i++;
+            }
+            else if (keys[i] > other.keys[j])
+            {
+                j++;
+            }
+            else
+            {
+                count += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return a new set of the values in this set, the other, or both
+     */
+    public CompressedBitmap or(CompressedBitmap other)
+    {
+        CompressedBitmap result = new CompressedBitmap(new char[size + other.size],
+                new Container[size + other.size], 0);
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size)
+        {
+            if (j >= other.size || (i < size && keys[i] < other.keys[j]))
+            {
+                result.keys[result.size] = keys[i];
+                result.containers[result.size++] = containers[i++].copy();
+            }
+            else if (i >= size || keys[i] > other.keys[j])
+            {
+                result.keys[result.size] = other.keys[j];
+                result.containers[result.size++] = other.containers[j++].copy();
+            }
+            else
+            {
+                result.keys[result.size] = keys[i];
+                result.containers[result.size++] = containers[i++].or(other.containers[j++]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a new set of the values in this set but not the other
+     */
+    public CompressedBitmap andNot(CompressedBitmap other)
+    {
+        CompressedBitmap result = new CompressedBitmap(new char[size], new Container[size], 0);
+        int j = 0;
+        for (int i = 0; i < size; i++)
+        {
+            while (j < other.size && other.keys[j] < keys[i])
+            {
+                j++;
+            }
+            Container kept = j < other.size && other.keys[j] == keys[i]
+                    ? containers[i].andNot(other.containers[j])
+                    : containers[i].copy();
+            if (kept.cardinality() > 0)
+            {
+                result.keys[result.size] = keys[i];
+                result.containers[result.size++] = kept;
+            }
+        }
+        return result;
+    }
+
+    public void clear()
+    {
+        keys = new char[0];
+        containers = new Container[0];
+        size = 0;
+    }
+
+    public CompressedBitmap copy()
+    {
+        Container[] copies = new Container[size];
+        for (int i = 0; i < size; i++)
+        {
+            copies[i] = containers[i].copy();
+        }
+        return new CompressedBitmap(Arrays.copyOf(keys, size), copies, size);
+    }
+
+    /**
+     * Passes every value to the action, in ascending order.
+     */
+    public void forEach(IntConsumer action)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    private int indexOf(char key)
+    {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertChunk(int index, char key, Container container)
+    {
+        if (size == keys.length)
+        {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void removeChunk(int index)
+    {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        containers[--size] = null;
+    }
+
+    /**
+     * The values of one chunk, by their low 16 bits. Mutators return the container to
+     * keep, which is a different kind when the chunk crosses {@link #ARRAY_MAX}.
+     */
+    private interface Container
+    {
+        Container add(char value);
+
+        Container remove(char value);
+
+        boolean contains(char value);
+
+        int cardinality();
+
+        Container and(Container other);
+
+        int andCardinality(Container other);
+
+        Container or(Container other);
+
+        Container andNot(Container other);
+
+        Container copy();
+
+        void forEach(int high, IntConsumer action);
+    }
+
+    private static final class ArrayContainer implements Container
+    {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer()
+        {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality)
+        {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public Container add(char value)
+        {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0)
+            {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX)
+            {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length)
+            {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        public Container remove(char value)
+        {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0)
+            {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean contains(char value)
+        {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        public int cardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        public Container and(Container other)
+        {
+            char[] both = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++)
+            {
+                if (other.contains(values[i]))
+                {
+                    both[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(both, count);
+        }
+
+        @Override
+        public int andCardinality(Container other)
+        {
+            int count = 0;
+            for (int i = 0; i < cardinality; i++)
+            {
+                if (other.contains(values[i]))
+                {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public Container or(Container other)
+        {
+            Container result = other.copy();
+            for (int i = 0; i < cardinality; i++)
+            {
+                result = result.add(values[i]);
+            }
+            return result;
+        }
+
+        @Override
+        public Container andNot(Container other)
+        {
+            char[] kept = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++)
+            {
+                if (!other.contains(values[i]))
+                {
+                    kept[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(kept, count);
+        }
+
+        @Override
+        public Container copy()
+        {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(4, cardinality)), cardinality);
+        }
+
+        @Override
+        public void forEach(int high, IntConsumer action)
+        {
+            for (int i = 0; i < cardinality; i++)
+            {
+                action.accept(high | values[i]);
+            }
+        }
+
+        private BitmapContainer toBitmap()
+        {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++)
+            {
+                bitmap.set(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer implements Container
+    {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer()
+        {
+            this(new long[BITMAP_WORDS], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality)
+        {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        void set(char value)
+        {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0)
+            {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+        }
+
+        @Override
+        public Container add(char value)
+        {
+            set(value);
+            return this;
+        }
+
+        @Override
+        public Container remove(char value)
+        {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) != 0)
+            {
+                words[value >>> 6] &= ~bit;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? toArray() : this;
+        }
+
+        @Override
+        public boolean contains(char value)
+        {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public int cardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        public Container and(Container other)
+        {
+            if (other instanceof BitmapContainer bitmap)
+            {
+                long[] both = new long[BITMAP_WORDS];
+                int count = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++)
+                {
+                    both[i] = words[i] & bitmap.words[i];
+                    count += Long.bitCount(both[i]);
+                }
+                BitmapContainer result = new BitmapContainer(both, count);
+                return count <= ARRAY_MAX ? result.toArray() : result;
+            }
+            return other.and(this);
+        }
+
+        @Override
+        public int andCardinality(Container other)
+        {
+            if (other instanceof BitmapContainer bitmap)
+            {
+                int count = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++)
+                {
+                    count += Long.bitCount(words[i] & bitmap.words[i]);
+                }
+                return count;
+            }
+            return other.andCardinality(this);
+        }
+
+        @Override
+        public Container or(Container other)
+        {
+            if (other instanceof BitmapContainer bitmap)
+            {
+                long[] either = new long[BITMAP_WORDS];
+                int count = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++)
+                {
+                    either[i] = words[i] | bitmap.words[i];
+                    count += Long.bitCount(either[i]);
+                }
+                return new BitmapContainer(either, count);
+            }
+            return other.or(this);
+        }
+
+        @Override
+        public Container andNot(Container other)
+        {
+            long[] kept = words.clone();
+            if (other instanceof BitmapContainer bitmap)
+            {
+                for (int i = 0; i < BITMAP_WORDS; i++)
+                {
+                    kept[i] &= ~bitmap.words[i];
+                }
+            }
+            else
+            {
+                other.forEach(0, value -> kept[value >>> 6] &= ~(1L << value));
+            }
+            int count = 0;
+            for (long word : kept)
+            {
+                count += Long.bitCount(word);
+            }
+            BitmapContainer result = new BitmapContainer(kept, count);
+            return count <= ARRAY_MAX ? result.toArray() : result;
+        }
+
+        @Override
+        public Container copy()
+        {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        public void forEach(int high, IntConsumer action)
+        {
+            for (int i = 0; i < BITMAP_WORDS; i++)
+            {
+                long word = words[i];
+                while (word != 0)
+                {
+                    action.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private ArrayContainer toArray()
+        {
+            char[] values = new char[Math.max(4, cardinality)];
+            int[] count = {0};
+            forEach(0, value -> values[count[0]++] = (char) value);
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+}
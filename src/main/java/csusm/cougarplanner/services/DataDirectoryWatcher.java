@@ -0,0 +1,445 @@
+package csusm.cougarplanner.services;
+
+import csusm.cougarplanner.cache.CacheManager;
+import csusm.cougarplanner.io.CsvPaths;
+import csusm.cougarplanner.io.RowSnapshot;
+import csusm.cougarplanner.io.StorageEngine;
+import csusm.cougarplanner.io.StorageEngines;
+import csusm.cougarplanner.io.TasksRepository;
+import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.util.DateTimeUtil;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Watches the data directory for changes made outside the app (a sync script, a second
+ * instance, a hand edit) and applies them to the in-memory state without a full reload.
+ * <p>
+ * A changed Canvas file is diffed against the snapshot taken when it was last seen, by
+ * {@link RowSnapshot row hash}; only the cache entries for the weeks of the added, changed
+ * or removed rows are dropped, so the next view of those weeks reads them from disk.
+ * A change to tasks.csv or its journal is diffed against {@link TaskCache} the same way,
+ * and only the tasks that differ are added, replaced or removed.
+ * <p>
+ * The app's own writes fire events too. Canvas files are diffed and found unchanged; for the
+ * tasks files, which the app writes on every edit, the event is skipped outright while the
+ * files are {@link TasksRepository#isAsLastWritten() as the app last wrote them}, so an edit
+ * never costs a reread of every task. Events are coalesced for a short settle period, so one atomic rewrite is processed once.
+ * Cache and {@link TaskCache} updates run on the UI executor, as every other mutation does.
+ */
+public final class DataDirectoryWatcher
+{
+    // Quiet period after an event before the changed files are read
+    private static final long SETTLE_MS = 200;
+
+    private static DataDirectoryWatcher instance;
+
+    /**
+     * How a watched table's rows are identified and which cache holds them.
+     */
+    private record Table(Path tablePath, String idColumn, Function<Map<String, String>, LocalDate> dateOf, String cacheName) {}
+
+    private final List<Table> tables = List.of(
+            new Table(CsvPaths.getCoursesPath(), "course_id", record -> null, "courses"),
+            new Table(CsvPaths.getAssignmentsPath(), "assignment_id",
+                    record -> DateTimeUtil.parseDate(record.get("due_date")), "assignments"),
+            new Table(CsvPaths.getAnnouncementsPath(), "announcement_id",
+                    DataDirectoryWatcher::postedDate, "announcements"));
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Executor uiExecutor;
+    private final StorageEngine engine = StorageEngines.getDefault();
+    private final String dataExtension; // extension of the engine's data files, e.g. ".csv"
+    private final TaskPersistenceService persistence = TaskPersistenceService.getInstance();
+
+    // Watcher thread only: the rows of each Canvas data file as last seen, by the file's CSV path
+    private final Map<Path, RowSnapshot> snapshots = new HashMap<>();
+
+    private volatile Runnable onTasksChanged = () -> {};
+
+    private DataDirectoryWatcher(Executor uiExecutor) throws IOException
+    {
+        this.uiExecutor = uiExecutor;
+        String sample = engine.dataFile(CsvPaths.getCoursesPath()).getFileName().toString();
+        this.dataExtension = sample.substring(sample.lastIndexOf('.'));
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Starts watching the data directory on a daemon thread. Later calls return the running watcher.
+     *
+     * @param uiExecutor runs cache updates on the UI thread, e.g. {@code Platform::runLater}
+     * @return the watcher
+     * @throws IOException if the data directory cannot be watched
+     */
+    public static synchronized DataDirectoryWatcher start(Executor uiExecutor) throws IOException
+    {
+        if (instance == null)
+        {
+            CsvPaths.ensureDataDirectory();
+            DataDirectoryWatcher watcher = new DataDirectoryWatcher(uiExecutor);
+            Thread thread = new Thread(watcher::run, "data-watcher");
+            thread.setDaemon(true);
+            thread.start();
+            instance = watcher;
+        }
+        return instance;
+    }
+
+    /**
+     * @return the running watcher, or null if {@link #start} was not called
+     */
+    public static synchronized DataDirectoryWatcher getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Sets what runs on the UI thread after tasks changed on disk were applied to {@link TaskCache},
+     * e.g. redrawing the task list. Replaces any earlier callback.
+     */
+    public void setOnTasksChanged(Runnable callback)
+    {
+        onTasksChanged = callback != null ? callback : () -> {};
+    }
+
+    private void run()
+    {
+        try
+        {
+            register(CsvPaths.getTasksPath().getParent());
+            for (Table table : tables)
+            {
+                Path partitions = CsvPaths.getPartitionDirectory(table.tablePath());
+                if (Files.isDirectory(partitions))
+                {
+                    register(partitions);
+                }
+            }
+            // Baseline, so the first change is diffed against what was there at startup
+            for (Path file : canvasFiles())
+            {
+                snapshot(file);
+            }
+
+            while (true)
+            {
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = collect(watchService.take(), changed);
+                WatchKey key;
+                while ((key = watchService.poll(SETTLE_MS, TimeUnit.MILLISECONDS)) != null)
+                {
+                    overflow |= collect(key, changed);
+                }
+                if (overflow)
+                {
+                    canvasFiles().forEach(csvPath -> changed.add(engine.dataFile(csvPath)));
+                    changed.add(engine.dataFile(CsvPaths.getTasksPath()));
+                }
+                process(changed);
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Stopped watching the data directory: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the files of one watch key's events to {@code changed} and re-arms the key.
+     *
+     * @return true if events were lost and every file must be checked
+     */
+    private boolean collect(WatchKey key, Set<Path> changed) throws IOException
+    {
+        boolean overflow = false;
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents())
+        {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null)
+            {
+                overflow = true;
+                continue;
+            }
+            Path file = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file) && isPartitionDirectory(file))
+            {
+                // A table switched to the weekly layout; its week files are new
+                register(file);
+                try (Stream<Path> weeks = Files.list(file))
+                {
+                    weeks.forEach(changed::add);
+                }
+                continue;
+            }
+            changed.add(file);
+        }
+        if (!key.reset())
+        {
+            directories.remove(key);
+        }
+        return overflow;
+    }
+
+    private void process(Set<Path> changed)
+    {
+        boolean tasksChanged = false;
+        for (Path file : changed)
+        {
+            if (isTaskFile(file))
+            {
+                tasksChanged = true;
+                continue;
+            }
+
+            Table table = tableOf(file);
+            if (table == null)
+            {
+                continue;
+            }
+            try
+            {
+                Path csvPath = csvPathOf(file);
+                RowSnapshot before = snapshots.getOrDefault(csvPath, RowSnapshot.EMPTY);
+                RowSnapshot.Changes changes = before.diff(snapshot(csvPath));
+                if (!changes.isEmpty())
+                {
+                    uiExecutor.execute(() -> invalidate(table, changes));
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Could not read changed file " + file + ": " + e.getMessage());
+            }
+        }
+
+        if (tasksChanged && !isOwnTaskWrite())
+        {
+            reloadTasks();
+        }
+    }
+
+    /**
+     * Drops the cache entries a change to a Canvas table affects: the week entries
+     * covering any affected row's date, or the whole list for courses.
+     */
+    private void invalidate(Table table, RowSnapshot.Changes changes)
+    {
+        CacheManager cacheManager = CacheManager.getInstance();
+        if (table.tablePath().equals(CsvPaths.getCoursesPath()))
+        {
+            cacheManager.removeIf(table.cacheName(), key -> true);
+            return;
+        }
+        cacheManager.removeIf(table.cacheName(), key -> changes.dates().stream()
+                .anyMatch(date -> CanvasService.weekKeyCovers(key, date)));
+    }
+
+    private static boolean isOwnTaskWrite()
+    {
+        try
+        {
+            return TasksRepository.isAsLastWritten();
+        }
+        catch (IOException e)
+        {
+            return false; // Reload to be safe
+        }
+    }
+
+    /**
+     * Reads the tasks on this thread, then diffs them against {@link TaskCache} on the UI thread.
+     * The read includes mutations still queued in {@link TaskPersistenceService}; if the app
+     * queued or wrote more while reading, the result is dropped, since that write brings
+     * another event.
+     */
+    private void reloadTasks()
+    {
+        long changeCount = persistence.changeCount();
+        List<Task> onDisk;
+        try
+        {
+            onDisk = persistence.findAll();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Could not read changed tasks: " + e.getMessage());
+            return;
+        }
+
+        uiExecutor.execute(() -> {
+            if (persistence.changeCount() != changeCount)
+            {
+                return;
+            }
+            if (applyTasks(onDisk))
+            {
+                onTasksChanged.run();
+            }
+        });
+    }
+
+    /**
+     * Makes {@link TaskCache} match the tasks read from disk, touching only the tasks whose row hash differs.
+     *
+     * @return true if anything changed
+     */
+    private static boolean applyTasks(List<Task> onDisk)
+    {
+        TaskCache cache = TaskCache.getInstance();
+        Map<String, String> cachedHashes = new HashMap<>();
+        for (Task task : cache.getAll())
+        {
+            cachedHashes.put(task.getTaskId(), TasksRepository.rowHash(task));
+        }
+
+        boolean changed = false;
+        Set<String> seen = new HashSet<>();
+        for (Task task : onDisk)
+        {
+            seen.add(task.getTaskId());
+            String cachedHash = cachedHashes.get(task.getTaskId());
+            if (cachedHash == null)
+            {
+                cache.add(task);
+                changed = true;
+            }
+            else if (!cachedHash.equals(TasksRepository.rowHash(task)))
+            {
+                cache.update(task);
+                changed = true;
+            }
+        }
+        for (String taskId : cachedHashes.keySet())
+        {
+            if (!seen.contains(taskId))
+            {
+                cache.remove(taskId);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Reads a Canvas file's rows and keeps them as its snapshot.
+     */
+    private RowSnapshot snapshot(Path csvPath) throws IOException
+    {
+        Table table = tableFor(csvPath);
+        RowSnapshot snapshot = RowSnapshot.read(csvPath, table.idColumn(), table.dateOf());
+        snapshots.put(csvPath, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Lists the CSV paths of every Canvas data file there is: flat tables and week partitions.
+     */
+    private List<Path> canvasFiles() throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        for (Table table : tables)
+        {
+            files.add(table.tablePath());
+            Path partitions = CsvPaths.getPartitionDirectory(table.tablePath());
+            if (Files.isDirectory(partitions))
+            {
+                try (Stream<Path> weeks = Files.list(partitions))
+                {
+                    weeks.filter(file -> tableOf(file) != null)
+                            .map(this::csvPathOf)
+                            .forEach(files::add);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Gets the table a changed file holds rows of, or null if it is not a Canvas data file
+     * of the current engine (temporary files, indexes, manifests and other tables are ignored).
+     */
+    private Table tableOf(Path file)
+    {
+        String fileName = file.getFileName().toString();
+        if (!fileName.endsWith(dataExtension) || fileName.startsWith("manifest."))
+        {
+            return null;
+        }
+        return tableFor(csvPathOf(file));
+    }
+
+    /**
+     * Gets the table a CSV path (a flat table or one of its week partitions) belongs to, or null.
+     */
+    private Table tableFor(Path csvPath)
+    {
+        for (Table table : tables)
+        {
+            if (sameFile(csvPath, table.tablePath())
+                    || sameFile(csvPath.getParent(), CsvPaths.getPartitionDirectory(table.tablePath())))
+            {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    private boolean isTaskFile(Path file)
+    {
+        return sameFile(file, engine.dataFile(CsvPaths.getTasksPath())) || sameFile(file, CsvPaths.getTasksJournalPath());
+    }
+
+    private boolean isPartitionDirectory(Path directory)
+    {
+        return tables.stream().anyMatch(table -> sameFile(directory, CsvPaths.getPartitionDirectory(table.tablePath())));
+    }
+
+    /**
+     * Maps an engine data file (e.g. a .bin file) back to the CSV path tables are named by.
+     */
+    private Path csvPathOf(Path file)
+    {
+        String fileName = file.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        return file.resolveSibling(fileName.substring(0, dot) + ".csv");
+    }
+
+    private void register(Path directory) throws IOException
+    {
+        WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        directories.put(key, directory);
+    }
+
+    private static boolean sameFile(Path a, Path b)
+    {
+        return a != null && b != null && a.toAbsolutePath().normalize().equals(b.toAbsolutePath().normalize());
+    }
+
+    private static LocalDate postedDate(Map<String, String> record)
+    {
+        LocalDateTime postedAt = DateTimeUtil.parseDateTime(record.get("posted_at"));
+        return postedAt != null ? postedAt.toLocalDate() : null;
+    }
+}
@@ -2,73 +2,538 @@ package csusm.cougarplanner.services;
 
 import csusm.cougarplanner.models.Task;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * Session-scoped in-memory mirror of tasks.csv that the UI binds to.
  * Hydrated from CSV in TaskPanelController.initialize(); kept in sync on each command.
  * Not part of the LRU cache family used for remote data (assignments/announcements/courses) —
  * tasks are local user data with no API tier, so the three-tier pattern doesn't apply.
+ * <p>
+ * Tasks are held in an insertion-ordered map by id, so lookups, updates and removals are O(1),
+ * plus secondary indexes by course, status, priority and due date that every mutation keeps
+ * in step. Each task owns a slot, its position in the cache, and each indexed value maps to a
+ * {@link CompressedBitmap} of the slots holding it. The findBy methods read only the matching
+ * tasks, so filtering costs the size of the result rather than the number of tasks, and the
+ * slot methods hand out the bitmaps themselves so filters can be combined by intersecting
+ * them and counted without reading any task. Results keep the cache's order: insertion order,
+ * with an updated task keeping its place.
+ * <p>
+ * Every mutation bumps a version number. {@link #snapshot()} returns an immutable list of the
+ * tasks at one version, built once per version and then handed to every reader as is, so a
+ * reader holds a consistent view for free and can skip its own work when the version it last
+ * saw is still current. Mutations are synchronized and publish the new version atomically.
+ * Snapshots share the Task objects; a row that edits a cached task in place is seen only
+ * once it calls {@link #update}, which is what publishes the change.
+ * <p>
+ * Each mutation is also announced to listeners as a {@link TaskCacheEvent}, after the cache
+ * lock is released and on the mutating thread, so a view can patch just the affected rows.
+ * An update keeps the task's place, so the cache order only changes by adds and removals.
  */
 public final class TaskCache
 {
+    // Same format the task rows and DueDateFilter use for Task.dueDate
+    private static final DateTimeFormatter DUE_DATE_FORMAT = DateTimeFormatter.ofPattern("MM-dd-yyyy");
 
-    private static TaskCache instance;
-    private final List<Task> store = new ArrayList<>();
+    // Cheap to construct, and eager so every thread sees the same instance
+    private static final TaskCache INSTANCE = new TaskCache();
+
+    private final Map<String, Task> byId = new LinkedHashMap<>();
+    private final Map<String, CompressedBitmap> byCourse = new HashMap<>();
+    private final Map<String, CompressedBitmap> byStatus = new HashMap<>();
+    private final Map<String, CompressedBitmap> byPriority = new HashMap<>();
+    private final NavigableMap<LocalDate, CompressedBitmap> byDueDate = new TreeMap<>();
+    private final CompressedBitmap withoutDueDate = new CompressedBitmap(); // no due date, or an unreadable one
+    private final CompressedBitmap allSlots = new CompressedBitmap();
+    private final Map<Integer, String> idBySlot = new HashMap<>();
+
+    // What each task was indexed under. Rows edit the cached Task before calling update(),
+    // so the old values can't be read back from the task itself.
+    private final Map<String, IndexedAs> indexedAs = new HashMap<>();
+    private long nextPosition;
+
+    private final List<Consumer<TaskCacheEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile long version;
+    private volatile Snapshot snapshot = new Snapshot(0, List.of()); // null once a mutation made it stale
+
+    /**
+     * The tasks at one version of the cache.
+     *
+     * @param version the cache version it was taken at
+     * @param tasks every task in cache order, unmodifiable
+     */
+    public record Snapshot(long version, List<Task> tasks) {}
+
+    /**
+     * A task's position in the cache and the values its secondary index entries are under.
+     */
+    private record IndexedAs(long position, String courseId, String status, String priority, LocalDate dueDate) {}
+
+    /**
+     * The task fields indexed by exact value, for {@link #slotsOf} and {@link #countBy}.
+     */
+    public enum Facet { COURSE, STATUS, PRIORITY }
 
     private TaskCache() {}
 
     public static TaskCache getInstance()
     {
-        if (instance == null) instance = new TaskCache();
-        return instance;
+        return INSTANCE;
+    }
+
+    /**
+     * Gets every task at the current version. Costs one copy per version, shared by every caller after the first.
+     *
+     * @return the current snapshot
+     */
+    public Snapshot snapshot()
+    {
+        Snapshot current = snapshot;
+        if (current != null)
+        {
+            return current;
+        }
+        synchronized (this)
+        {
+            if (snapshot == null)
+            {
+                snapshot = new Snapshot(version, List.copyOf(byId.values()));
+            }
+            return snapshot;
+        }
     }
 
+    /**
+     * @return the version of the latest mutation; equal versions mean the same tasks
+     */
+    public long version()
+    {
+        return version;
+    }
+
+    /**
+     * @return every task in cache order, unmodifiable and safe to keep while the cache changes
+     */
     public List<Task> getAll()
     {
-        return new ArrayList<>(store);
+        return snapshot().tasks();
     }
 
+    public synchronized int size()
+    {
+        return byId.size();
+    }
+
+    /**
+     * Registers a listener for every later change. Listeners must not block: they run on
+     * whichever thread made the change, right after it.
+     */
+    public void addListener(Consumer<TaskCacheEvent> listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<TaskCacheEvent> listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Adds a task at the end, or replaces the cached task with the same id in place.
+     */
     public void add(Task task)
     {
-        store.add(task);
+        fire(addLocked(task));
+    }
+
+    /**
+     * Adds several tasks as one change: one new version, and an ADDED or UPDATED event per task.
+     */
+    public void addAll(Collection<Task> tasks)
+    {
+        for (TaskCacheEvent event : addAllLocked(tasks))
+        {
+            fire(event);
+        }
     }
 
     public void remove(String taskId)
     {
-        store.removeIf(t -> t.getTaskId().equals(taskId));
+        fire(removeLocked(taskId));
     }
 
     public void removeAll()
     {
-        store.clear();
+        fire(removeAllLocked());
     }
 
     public void toggleCompleted(String taskId)
     {
-        store.stream()
-                .filter(t -> t.getTaskId().equals(taskId))
-                .findFirst()
-                .ifPresent(t -> t.setCompleted(!t.isCompleted()));
+        fire(toggleCompletedLocked(taskId));
     }
 
+    /**
+     * Replaces the cached task with the same id and re-indexes it. Does nothing if the id isn't cached.
+     */
     public void update(Task updatedTask)
     {
-        for (int i = 0; i < store.size(); i++)
+        fire(updateLocked(updatedTask));
+    }
+
+    private synchronized TaskCacheEvent addLocked(Task task)
+    {
+        if (byId.containsKey(task.getTaskId()))
+        {
+            return updateLocked(task);
+        }
+        long position = nextPosition++;
+        byId.put(task.getTaskId(), task);
+        index(task, position);
+        return publish(TaskCacheEvent.Kind.ADDED, task, position);
+    }
+
+    private synchronized List<TaskCacheEvent> addAllLocked(Collection<Task> tasks)
+    {
+        if (tasks.isEmpty())
+        {
+            return List.of();
+        }
+        version++;
+        snapshot = null;
+        List<TaskCacheEvent> events = new ArrayList<>(tasks.size());
+        for (Task task : tasks)
+        {
+            String taskId = task.getTaskId();
+            TaskCacheEvent.Kind kind;
+            long position;
+            if (byId.containsKey(taskId))
+            {
+                kind = TaskCacheEvent.Kind.UPDATED;
+                position = unindex(taskId);
+            }
+            else
+            {
+                kind = TaskCacheEvent.Kind.ADDED;
+                position = nextPosition++;
+            }
+            byId.put(taskId, task);
+            index(task, position);
+            events.add(new TaskCacheEvent(kind, taskId, task, position, version));
+        }
+        return events;
+    }
+
+    private synchronized TaskCacheEvent removeLocked(String taskId)
+    {
+        Task removed = byId.remove(taskId);
+        if (removed == null)
+        {
+            return null;
+        }
+        return publish(TaskCacheEvent.Kind.REMOVED, removed, unindex(taskId));
+    }
+
+    private synchronized TaskCacheEvent removeAllLocked()
+    {
+        byId.clear();
+        byCourse.clear();
+        byStatus.clear();
+        byPriority.clear();
+        byDueDate.clear();
+        withoutDueDate.clear();
+        allSlots.clear();
+        idBySlot.clear();
+        indexedAs.clear();
+        return publish(TaskCacheEvent.Kind.CLEARED, null, -1);
+    }
+
+    private synchronized TaskCacheEvent toggleCompletedLocked(String taskId)
+    {
+        // Swaps in a copy so earlier snapshots keep the old value. Completion isn't indexed.
+        Task task = byId.get(taskId);
+        if (task == null)
+        {
+            return null;
+        }
+        Task toggled = new Task(task);
+        toggled.setCompleted(!task.isCompleted());
+        byId.put(taskId, toggled);
+        return publish(TaskCacheEvent.Kind.UPDATED, toggled, indexedAs.get(taskId).position());
+    }
+
+    private synchronized TaskCacheEvent updateLocked(Task updatedTask)
+    {
+        String taskId = updatedTask.getTaskId();
+        if (!byId.containsKey(taskId))
+        {
+            return null;
+        }
+        long position = unindex(taskId);
+        byId.put(taskId, updatedTask);
+        index(updatedTask, position);
+        return publish(TaskCacheEvent.Kind.UPDATED, updatedTask, position);
+    }
+
+    public synchronized Optional<Task> findById(String taskId)
+    {
+        return Optional.ofNullable(byId.get(taskId));
+    }
+
+    /**
+     * @param courseId the course id
+     * @return the tasks of that course, in cache order
+     */
+    public synchronized List<Task> findByCourse(String courseId)
+    {
+        return tasksOf(byCourse.get(courseId));
+    }
+
+    /**
+     * @param status the status, e.g. "In Progress"
+     * @return the tasks with that status, in cache order
+     */
+    public synchronized List<Task> findByStatus(String status)
+    {
+        return tasksOf(byStatus.get(status));
+    }
+
+    /**
+     * @param priority the priority, e.g. "High"
+     * @return the tasks with that priority, in cache order
+     */
+    public synchronized List<Task> findByPriority(String priority)
+    {
+        return tasksOf(byPriority.get(priority));
+    }
+
+    /**
+     * Gets the tasks due within [from, to], both inclusive. Tasks without a readable due date never match.
+     *
+     * @param from first due date to include, e.g. {@link LocalDate#MIN} for no lower bound
+     * @param to last due date to include, e.g. {@link LocalDate#MAX} for no upper bound
+     * @return the matching tasks, in cache order
+     */
+    public synchronized List<Task> findByDueDateBetween(LocalDate from, LocalDate to)
+    {
+        return tasksOf(slotsDueBetween(from, to));
+    }
+
+    /**
+     * @return the slots of every task, a copy
+     */
+    public synchronized CompressedBitmap allSlots()
+    {
+        return allSlots.copy();
+    }
+
+    /**
+     * @param facet the indexed field
+     * @param value the exact value, e.g. a course id or "high"
+     * @return the slots of the tasks with that value, a copy
+     */
+    public synchronized CompressedBitmap slotsOf(Facet facet, String value)
+    {
+        CompressedBitmap slots = indexOf(facet).get(value);
+        return slots != null ? slots.copy() : new CompressedBitmap();
+    }
+
+    /**
+     * Gets the slots of the tasks due within [from, to], both inclusive, the same tasks as
+     * {@link #findByDueDateBetween}.
+     *
+     * @return the matching slots, a new bitmap
+     */
+    public synchronized CompressedBitmap slotsDueBetween(LocalDate from, LocalDate to)
+    {
+        CompressedBitmap slots = new CompressedBitmap();
+        if (from.isAfter(to))
+        {
+            return slots;
+        }
+        for (CompressedBitmap due : byDueDate.subMap(from, true, to, true).values())
+        {
+            slots = slots.or(due);
+        }
+        return slots;
+    }
+
+    /**
+     * @return the slots of the tasks without a readable due date, a copy
+     */
+    public synchronized CompressedBitmap slotsWithoutDueDate()
+    {
+        return withoutDueDate.copy();
+    }
+
+    /**
+     * Reads the tasks in a set of slots. Slots of tasks removed since the bitmap was taken are skipped.
+     *
+     * @param slots slots from this cache
+     * @return the tasks, in cache order
+     */
+    public synchronized List<Task> tasksAt(CompressedBitmap slots)
+    {
+        return tasksOf(slots);
+    }
+
+    /**
+     * Counts the tasks per value of a facet, without reading any task.
+     *
+     * @param facet the indexed field
+     * @param within only count these slots, or null to count every task
+     * @return the count per value that has at least one task in the cache
+     */
+    public synchronized Map<String, Integer> countBy(Facet facet, CompressedBitmap within)
+    {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map.Entry<String, CompressedBitmap> entry : indexOf(facet).entrySet())
+        {
+            CompressedBitmap slots = entry.getValue();
+            counts.put(entry.getKey(), within != null ? slots.andCardinality(within) : slots.cardinality());
+        }
+        return counts;
+    }
+
+    private Map<String, CompressedBitmap> indexOf(Facet facet)
+    {
+        return switch (facet)
+        {
+            case COURSE -> byCourse;
+            case STATUS -> byStatus;
+            case PRIORITY -> byPriority;
+        };
+    }
+
+    /**
+     * Makes a mutation visible: bumps the version and drops the stale snapshot.
+     *
+     * @return the event describing the mutation, for {@link #fire} once the lock is released
+     */
+    private TaskCacheEvent publish(TaskCacheEvent.Kind kind, Task task, long position)
+    {
+        version++;
+        snapshot = null;
+        return new TaskCacheEvent(kind, task != null ? task.getTaskId() : null, task, position, version);
+    }
+
+    private void fire(TaskCacheEvent event)
+    {
+        if (event == null)
+        {
+            return;
+        }
+        for (Consumer<TaskCacheEvent> listener : listeners)
+        {
+            listener.accept(event);
+        }
+    }
+
+    // Slots ascend in cache order, so the tasks come out in order without sorting
+    private List<Task> tasksOf(CompressedBitmap slots)
+    {
+        List<Task> tasks = new ArrayList<>();
+        if (slots == null)
+        {
+            return tasks;
+        }
+        slots.forEach(slot ->
         {
-            if (store.get(i).getTaskId().equals(updatedTask.getTaskId()))
+            String id = idBySlot.get(slot);
+            if (id != null)
             {
-                store.set(i, updatedTask);
-                return;
+                tasks.add(byId.get(id));
             }
+        });
+        return tasks;
+    }
+
+    private void index(Task task, long position)
+    {
+        String taskId = task.getTaskId();
+        IndexedAs keys = new IndexedAs(position, task.getCourseId(), task.getStatus(), task.getPriority(),
+                parseDueDate(task.getDueDate()));
+        indexedAs.put(taskId, keys);
+        int slot = slotOf(position);
+        idBySlot.put(slot, taskId);
+        allSlots.add(slot);
+        addTo(byCourse, keys.courseId(), slot);
+        addTo(byStatus, keys.status(), slot);
+        addTo(byPriority, keys.priority(), slot);
+        addTo(byDueDate, keys.dueDate(), slot);
+        if (keys.dueDate() == null)
+        {
+            withoutDueDate.add(slot);
         }
     }
-    public Optional<Task> findById(String taskId)
+
+    /**
+     * Removes a task's secondary index entries.
+     *
+     * @return the task's position, so an update can keep it
+     */
+    private long unindex(String taskId)
+    {
+        IndexedAs keys = indexedAs.remove(taskId);
+        int slot = slotOf(keys.position());
+        idBySlot.remove(slot);
+        allSlots.remove(slot);
+        removeFrom(byCourse, keys.courseId(), slot);
+        removeFrom(byStatus, keys.status(), slot);
+        removeFrom(byPriority, keys.priority(), slot);
+        removeFrom(byDueDate, keys.dueDate(), slot);
+        withoutDueDate.remove(slot);
+        return keys.position();
+    }
+
+    private static int slotOf(long position)
     {
-        return store.stream()
-                .filter(t -> t.getTaskId().equals(taskId))
-                .findFirst();
+        return Math.toIntExact(position);
+    }
+
+    private static <K> void addTo(Map<K, CompressedBitmap> index, K key, int slot)
+    {
+        if (key != null)
+        {
+            index.computeIfAbsent(key, k -> new CompressedBitmap()).add(slot);
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, CompressedBitmap> index, K key, int slot)
+    {
+        if (key == null)
+        {
+            return;
+        }
+        CompressedBitmap slots = index.get(key);
+        if (slots != null)
+        {
+            slots.remove(slot);
+            if (slots.isEmpty())
+            {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static LocalDate parseDueDate(String dueDate)
+    {
+        if (dueDate == null || dueDate.isBlank())
+        {
+            return null;
+        }
+        try
+        {
+            return LocalDate.parse(dueDate, DUE_DATE_FORMAT);
+        }
+        catch (DateTimeParseException e)
+        {
+            return null;
+        }
     }
 }
@@ -0,0 +1,24 @@
+package csusm.cougarplanner.services;
+
+import csusm.cougarplanner.models.Task;
+
+/**
+ * One change to {@link TaskCache}, delivered to its listeners once the change is visible.
+ *
+ * @param kind what happened to the task
+ * @param taskId the task's id, null for {@link Kind#CLEARED}
+ * @param task the task as it is now, or as it was for {@link Kind#REMOVED}; null for {@link Kind#CLEARED}
+ * @param position the task's place in cache order, as a key that sorts like the order
+ *                 (not an index; positions of other tasks don't shift); -1 for {@link Kind#CLEARED}
+ * @param version the cache version the change produced
+ */
+public record TaskCacheEvent(Kind kind, String taskId, Task task, long position, long version)
+{
+    public enum Kind
+    {
+        ADDED,
+        UPDATED,
+        REMOVED,
+        CLEARED
+    }
+}
@@ -0,0 +1,545 @@
+package csusm.cougarplanner.services;
+
+import csusm.cougarplanner.io.TaskChange;
+import csusm.cougarplanner.io.TasksRepository;
+import csusm.cougarplanner.models.Task;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind front for {@link TasksRepository}.
+ * <p>
+ * Task commands hand their mutations to this service instead of writing tasks.csv
+ * themselves, so the JavaFX thread never waits on disk. Pending mutations are
+ * coalesced by task id — five quick edits to one task become one write — and a
+ * single writer thread flushes them as one batch a short debounce after the last
+ * change, or immediately on {@link #flush()}. Field edits are queued as patches of
+ * just the changed columns; patches to one task merge, and a patch to a task whose
+ * full row is already queued is folded into that row.
+ * <p>
+ * Mutations queued between {@link #beginBatch()} and {@link #endBatch()} are held back
+ * from any flush and written together as soon as the batch ends, so a multi-task
+ * action reaches disk in exactly one repository write.
+ * <p>
+ * Every mutation gets a sequence number as it is queued, and batches are written in queue
+ * order by the one writer thread. {@link #whenWritten()} returns a future for everything
+ * queued so far, which lets a caller apply a change optimistically and undo it if its write fails.
+ * <p>
+ * A batch that fails to write is queued again, merged with anything queued since, and retried
+ * after a backoff that doubles with every failure in a row, up to {@link #RETRY_MAX_MS}.
+ * <p>
+ * Call {@link #shutdown()} before the JVM exits so nothing queued is lost.
+ */
+public final class TaskPersistenceService
+{
+    // Quiet period after the last mutation before a flush starts
+    private static final long DEBOUNCE_MS = 250;
+    // Upper bound on how long a steady stream of edits can postpone a flush
+    private static final long MAX_DELAY_MS = 2000;
+    // Wait before retrying a failed write, doubled after each further failure
+    private static final long RETRY_MIN_MS = 1000;
+    private static final long RETRY_MAX_MS = 30000;
+
+    private static final TaskPersistenceService INSTANCE = new TaskPersistenceService(new TasksRepository());
+
+    private final TasksRepository repository;
+    private final ScheduledExecutorService writer;
+    private final List<Consumer<Exception>> failureListeners = new CopyOnWriteArrayList<>();
+
+    // Guarded by this: the newest mutation per task id, in the order tasks were last touched.
+    private final Map<String, TaskChange> pending = new LinkedHashMap<>();
+    private boolean clearPending;        // a deleteAll that must be applied before pending
+    private List<TaskChange> inFlight = List.of(); // batch the writer is currently applying
+    private ScheduledFuture<?> scheduledFlush;
+    private long firstPendingAt;
+    private long changeCount;            // mutations queued plus batches written, see changeCount()
+    private int batchDepth;              // open beginBatch() calls; no flush drains while above zero
+    private long queuedSequence;         // sequence number of the newest mutation queued
+    private long retryDelayMs;           // backoff before the next retry; 0 while writes succeed
+    private final List<Waiter> waiters = new ArrayList<>(); // whenWritten() futures not yet settled
+
+    /**
+     * A {@link #whenWritten()} future, settled by the write of the batch holding mutation {@code sequence}.
+     */
+    private record Waiter(long sequence, CompletableFuture<Void> future) {}
+
+    /**
+     * Creates a service with its own writer thread. The application shares {@link #getInstance()};
+     * a separate instance is for writing through a different repository, e.g. in tests.
+     *
+     * @param repository where batches are written
+     */
+    public TaskPersistenceService(TasksRepository repository)
+    {
+        this.repository = repository;
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tasks-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static TaskPersistenceService getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Reads every task, including mutations that are queued or being written.
+     * Used to hydrate {@link TaskCache}; the only call here that touches disk on the caller's thread.
+     */
+    public List<Task> findAll() throws IOException
+    {
+        List<TaskChange> overlay;
+        synchronized (this)
+        {
+            overlay = new ArrayList<>(inFlight);
+            overlay.addAll(snapshotPending());
+        }
+
+        // Every change is idempotent, so replaying one the disk already has is harmless.
+        Map<String, Task> tasks = new LinkedHashMap<>();
+        for (Task task : repository.findAll())
+        {
+            tasks.put(task.getTaskId(), task);
+        }
+        for (TaskChange change : overlay)
+        {
+            switch (change.kind())
+            {
+                case UPSERT ->
+                {
+                    tasks.remove(change.taskId());
+                    tasks.put(change.taskId(), new Task(change.task()));
+                }
+                case DELETE -> tasks.remove(change.taskId());
+                case SET_COMPLETED ->
+                {
+                    Task existing = tasks.get(change.taskId());
+                    if (existing != null) existing.setCompleted(change.completed());
+                }
+                case PATCH ->
+                {
+                    Task existing = tasks.get(change.taskId());
+                    if (existing != null) tasks.put(change.taskId(), TasksRepository.patched(existing, change.fields()));
+                }
+                case CLEAR -> tasks.clear();
+            }
+        }
+        return new ArrayList<>(tasks.values());
+    }
+
+    public void upsert(Task task)
+    {
+        // Snapshot now: the cache keeps mutating the same Task object on the FX thread.
+        enqueue(TaskChange.upsert(new Task(task)));
+    }
+
+    public void upsertAll(List<Task> tasks)
+    {
+        for (Task task : tasks)
+        {
+            upsert(task);
+        }
+    }
+
+    public void setCompleted(String taskId, boolean completed)
+    {
+        enqueue(TaskChange.setCompleted(taskId, completed));
+    }
+
+    /**
+     * Queues a change to some columns of a task, e.g. {"title": "New title"} after an in-row edit.
+     *
+     * @param taskId the task to change
+     * @param fields the new values by lowercase column name, as {@link TasksRepository#toRecord} keys them
+     */
+    public void patch(String taskId, Map<String, String> fields)
+    {
+        if (fields.isEmpty()) return;
+        enqueue(TaskChange.patch(taskId, fields));
+    }
+
+    public void deleteById(String taskId)
+    {
+        enqueue(TaskChange.delete(taskId));
+    }
+
+    public synchronized void deleteAll()
+    {
+        // Everything queued so far is moot once the file is cleared.
+        pending.clear();
+        clearPending = true;
+        changeCount++;
+        queuedSequence++;
+        scheduleFlush();
+    }
+
+    /**
+     * Opens a batch: nothing queued from now on is written until the matching {@link #endBatch()}.
+     * Batches nest; only the outermost end writes.
+     */
+    public synchronized void beginBatch()
+    {
+        batchDepth++;
+    }
+
+    /**
+     * Closes a batch opened by {@link #beginBatch()}. Ending the outermost batch writes
+     * everything it queued in a single flush, without waiting for the debounce.
+     * Call it in a finally block, so a failed action doesn't hold back every later write.
+     */
+    public void endBatch()
+    {
+        synchronized (this)
+        {
+            if (batchDepth == 0)
+            {
+                throw new IllegalStateException("endBatch() without beginBatch()");
+            }
+            if (--batchDepth > 0 || (pending.isEmpty() && !clearPending))
+            {
+                return;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Starts writing everything queued so far without waiting for the debounce.
+     *
+     * @return a future that completes once those mutations are on disk, or completes
+     *         exceptionally if the write failed (the mutations stay queued for a retry)
+     */
+    public CompletableFuture<Void> flush()
+    {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        writer.execute(() -> {
+            try
+            {
+                drainAndWrite();
+                done.complete(null);
+            }
+            catch (IOException e)
+            {
+                done.completeExceptionally(e);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * Gets a future for the mutations queued so far. Unlike {@link #flush()} it doesn't hurry
+     * the write: it settles when the batch holding the newest of them is written, by the
+     * debounce, a flush or the end of a batch.
+     *
+     * @return a future that completes once those mutations are on disk, or completes
+     *         exceptionally if the write holding them failed (they stay queued for a retry)
+     */
+    public synchronized CompletableFuture<Void> whenWritten()
+    {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (pending.isEmpty() && !clearPending && inFlight.isEmpty())
+        {
+            future.complete(null);
+            return future;
+        }
+        waiters.add(new Waiter(queuedSequence, future));
+        return future;
+    }
+
+    /**
+     * Flushes and blocks until the queue is on disk or the timeout passes.
+     *
+     * @return true if everything queued before the call was written
+     */
+    public boolean flushAndWait(long timeout, TimeUnit unit)
+    {
+        try
+        {
+            flush().get(timeout, unit);
+            return true;
+        }
+        catch (Exception e)
+        {
+            System.err.println("Could not flush pending task writes: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes anything still queued and stops the writer thread. Called on application exit.
+     */
+    public void shutdown()
+    {
+        flushAndWait(5, TimeUnit.SECONDS);
+        writer.shutdown();
+    }
+
+    /**
+     * Counts every mutation queued and every batch written. A caller that reads the tasks
+     * can compare the count from before and after to tell whether they changed meanwhile.
+     */
+    public synchronized long changeCount()
+    {
+        return changeCount;
+    }
+
+    /**
+     * Registers a callback for failed background writes. Called on the writer thread.
+     */
+    public void addFailureListener(Consumer<Exception> listener)
+    {
+        failureListeners.add(listener);
+    }
+
+    /**
+     * Folds a mutation into the pending set, keeping at most one entry per task id.
+     */
+    private synchronized void enqueue(TaskChange change)
+    {
+        pending.put(change.taskId(), merge(pending.remove(change.taskId()), change));
+        changeCount++;
+        queuedSequence++;
+        scheduleFlush();
+    }
+
+    /**
+     * Combines two changes to one task into the single change with the same effect.
+     *
+     * @param previous the older change, or null
+     * @param change the newer change
+     * @return the combined change
+     */
+    private static TaskChange merge(TaskChange previous, TaskChange change)
+    {
+        // A completed flag is a one-column patch, so both merge the same way
+        Map<String, String> columns = change.kind() == TaskChange.Kind.SET_COMPLETED
+                ? Map.of("completed", String.valueOf(change.completed()))
+                : change.fields();
+        if (columns == null || previous == null)
+        {
+            return change; // A full row, a delete or a clear replaces whatever came before
+        }
+        return switch (previous.kind())
+        {
+            // Fold the columns into the queued full row
+            case UPSERT -> TaskChange.upsert(TasksRepository.patched(previous.task(), columns));
+            case DELETE -> previous;
+            case PATCH ->
+            {
+                Map<String, String> both = new LinkedHashMap<>(previous.fields());
+                both.putAll(columns);
+                yield TaskChange.patch(change.taskId(), both);
+            }
+            case SET_COMPLETED ->
+            {
+                if (change.kind() != TaskChange.Kind.PATCH)
+                {
+                    yield change;
+                }
+                Map<String, String> both = new LinkedHashMap<>();
+                both.put("completed", String.valueOf(previous.completed()));
+                both.putAll(columns);
+                yield TaskChange.patch(change.taskId(), both);
+            }
+            default -> change;
+        };
+    }
+
+    /**
+     * (Re)arms the debounce timer. Guarded by this.
+     */
+    private void scheduleFlush()
+    {
+        if (batchDepth > 0)
+        {
+            return; // endBatch() flushes
+        }
+        long now = System.currentTimeMillis();
+        if (scheduledFlush == null || scheduledFlush.isDone())
+        {
+            firstPendingAt = now;
+        }
+        else if (now - firstPendingAt < MAX_DELAY_MS)
+        {
+            scheduledFlush.cancel(false);
+        }
+        else
+        {
+            return; // Already waited long enough; let the armed flush run
+        }
+
+        scheduledFlush = writer.schedule(this::scheduledWrite, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Arms a retry of a failed batch after the current backoff, replacing any armed flush. Guarded by this.
+     */
+    private void scheduleRetry()
+    {
+        retryDelayMs = retryDelayMs == 0 ? RETRY_MIN_MS : Math.min(RETRY_MAX_MS, retryDelayMs * 2);
+        if (batchDepth > 0)
+        {
+            return; // endBatch() flushes
+        }
+        if (scheduledFlush != null && !scheduledFlush.isDone())
+        {
+            scheduledFlush.cancel(false);
+        }
+        firstPendingAt = System.currentTimeMillis();
+        scheduledFlush = writer.schedule(this::scheduledWrite, retryDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduledWrite()
+    {
+        try
+        {
+            drainAndWrite();
+        }
+        catch (IOException e)
+        {
+            // Already reported to listeners; the batch is queued again and a retry armed
+        }
+    }
+
+    /**
+     * Takes the pending set and writes it as one batch. Runs on the writer thread only.
+     */
+    private void drainAndWrite() throws IOException
+    {
+        List<TaskChange> batch;
+        long lastSequence;
+        synchronized (this)
+        {
+            if (batchDepth > 0)
+            {
+                return; // A flush armed before the batch began; endBatch() writes it all
+            }
+            batch = snapshotPending();
+            if (batch.isEmpty())
+            {
+                return;
+            }
+            pending.clear();
+            clearPending = false;
+            inFlight = batch;
+            lastSequence = queuedSequence;
+        }
+
+        IOException failure = null;
+        try
+        {
+            repository.applyAll(batch);
+        }
+        catch (IOException e)
+        {
+            failure = e;
+            requeue(batch);
+            for (Consumer<Exception> listener : failureListeners)
+            {
+                listener.accept(e);
+            }
+            if (failureListeners.isEmpty())
+            {
+                System.err.println("Could not write tasks: " + e.getMessage());
+            }
+            throw e;
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                inFlight = List.of();
+                changeCount++;
+                if (failure == null)
+                {
+                    retryDelayMs = 0;
+                }
+            }
+            // Once nothing is in flight, so a whenWritten() call meanwhile never waits on this batch
+            settleWaiters(lastSequence, failure);
+        }
+    }
+
+    /**
+     * Completes the {@link #whenWritten()} futures for mutations up to a sequence number,
+     * outside the lock since their callbacks may queue more mutations.
+     *
+     * @param lastSequence the newest mutation in the batch just written
+     * @param failure why the batch failed, or null if it was written
+     */
+    private void settleWaiters(long lastSequence, IOException failure)
+    {
+        List<Waiter> settled = new ArrayList<>();
+        synchronized (this)
+        {
+            waiters.removeIf(waiter -> waiter.sequence() <= lastSequence && settled.add(waiter));
+        }
+        for (Waiter waiter : settled)
+        {
+            if (failure == null)
+            {
+                waiter.future().complete(null);
+            }
+            else
+            {
+                waiter.future().completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Puts a failed batch back ahead of anything queued since it was drained, merging a newer
+     * change to the same task into the failed one as {@link #enqueue} would have, and arms a retry.
+     */
+    private synchronized void requeue(List<TaskChange> batch)
+    {
+        scheduleRetry();
+        if (clearPending)
+        {
+            return; // A deleteAll queued after the batch supersedes all of it
+        }
+
+        Map<String, TaskChange> newer = new LinkedHashMap<>(pending);
+        pending.clear();
+        for (TaskChange change : batch)
+        {
+            if (change.kind() == TaskChange.Kind.CLEAR)
+            {
+                clearPending = true;
+            }
+            else
+            {
+                TaskChange since = newer.remove(change.taskId());
+                pending.put(change.taskId(), since != null ? merge(change, since) : change);
+            }
+        }
+        pending.putAll(newer);
+    }
+
+    /**
+     * Lists the pending set as the batch to write: the clear first, then one change per task. Guarded by this.
+     */
+    private List<TaskChange> snapshotPending()
+    {
+        List<TaskChange> batch = new ArrayList<>();
+        if (clearPending)
+        {
+            batch.add(TaskChange.clear());
+        }
+        batch.addAll(pending.values());
+        return batch;
+    }
+}
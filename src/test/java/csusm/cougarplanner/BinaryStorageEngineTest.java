@@ -0,0 +1,56 @@
+package csusm.cougarplanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import csusm.cougarplanner.io.BinaryStorageEngine;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BinaryStorageEngineTest {
+
+    private static final String[] HEADERS = {"announcement_id", "title", "posted_at", "body"};
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRoundTripKeepsExactValues() throws Exception {
+        Path table = tempDir.resolve("announcements.csv");
+        BinaryStorageEngine engine = new BinaryStorageEngine();
+
+        engine.writeAll(table, List.of(
+                Map.of("announcement_id", "1", "title", "Dates", "posted_at", "2025-10-07 09:05", "body", "2025-10-07"),
+                Map.of("announcement_id", "2", "title", "Not dates", "posted_at", "2025-13-40 25:00", "body", "line one\nline two")),
+                HEADERS);
+        engine.appendAll(table, List.of(Map.of("announcement_id", "3", "title", "", "posted_at", "", "body", "é")), HEADERS);
+
+        List<Map<String, String>> rows = engine.readAll(table);
+        assertEquals(3, rows.size());
+        assertEquals("2025-10-07 09:05", rows.get(0).get("posted_at"));
+        assertEquals("2025-10-07", rows.get(0).get("body"));
+        assertEquals("2025-13-40 25:00", rows.get(1).get("posted_at"), "Invalid dates should be kept as text");
+        assertEquals("line one\nline two", rows.get(1).get("body"));
+        assertEquals("", rows.get(2).get("title"));
+        assertEquals("é", rows.get(2).get("body"));
+        assertTrue(Files.exists(tempDir.resolve("announcements.bin")));
+    }
+
+    @Test
+    void testTornAppendIsDroppedAndRepaired() throws Exception {
+        Path table = tempDir.resolve("torn.csv");
+        BinaryStorageEngine engine = new BinaryStorageEngine();
+        engine.writeAll(table, List.of(Map.of("announcement_id", "1", "title", "Kept", "posted_at", "", "body", "")), HEADERS);
+
+        // Simulates a crash halfway through writing a block
+        Files.write(engine.dataFile(table), new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        assertEquals(1, engine.readAll(table).size());
+
+        engine.appendAll(table, List.of(Map.of("announcement_id", "2", "title", "After", "posted_at", "", "body", "")), HEADERS);
+        assertEquals(2, engine.readAll(table).size(), "An append after the repair should be readable");
+    }
+}
@@ -0,0 +1,48 @@
+package csusm.cougarplanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import csusm.cougarplanner.io.BlobStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BlobStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void storesEachValueOnceAndReadsItBack() throws Exception {
+        BlobStore store = BlobStore.open(dir.resolve("bodies.blob"));
+
+        BlobStore.Ref first = store.put("<p>Quiz moved to Friday</p>");
+        BlobStore.Ref second = store.put("<p>Office hours cancelled</p>");
+        BlobStore.Ref again = store.put("<p>Quiz moved to Friday</p>");
+
+        assertEquals(first, again);
+        assertNotEquals(first, second);
+        assertEquals(first, BlobStore.Ref.parse(first.toString()));
+        assertEquals("<p>Office hours cancelled</p>", store.get(second));
+    }
+
+    @Test
+    public void tornTailIsDiscardedBeforeTheNextAppend() throws Exception {
+        Path file = dir.resolve("torn.blob");
+        BlobStore.Ref kept = BlobStore.open(file).put("kept");
+
+        // Simulate a crash part way through the next entry, then open the file as a fresh store
+        Path copy = dir.resolve("copy.blob");
+        Files.copy(file, copy);
+        Files.write(copy, new byte[] {0, 0, 0, 9, 1, 2}, StandardOpenOption.APPEND);
+        BlobStore store = BlobStore.open(copy);
+
+        BlobStore.Ref added = store.put("added");
+
+        assertEquals(Files.size(copy), added.offset() + added.length());
+        assertEquals("kept", store.get(kept));
+        assertEquals("added", store.get(added));
+    }
+}
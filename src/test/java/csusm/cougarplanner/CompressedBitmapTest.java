@@ -0,0 +1,73 @@
+package csusm.cougarplanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import csusm.cougarplanner.services.CompressedBitmap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+public class CompressedBitmapTest {
+
+    private static List<Integer> valuesOf(CompressedBitmap bitmap) {
+        List<Integer> values = new ArrayList<>();
+        bitmap.forEach(values::add);
+        return values;
+    }
+
+    @Test
+    void matchesTreeSetAcrossContainerConversions() {
+        // Dense enough that chunks cross the array/bitmap threshold both ways
+        Random random = new Random(42);
+        CompressedBitmap left = new CompressedBitmap();
+        CompressedBitmap right = new CompressedBitmap();
+        TreeSet<Integer> leftExpected = new TreeSet<>();
+        TreeSet<Integer> rightExpected = new TreeSet<>();
+        for (int i = 0; i < 30000; i++) {
+            int value = random.nextInt(140000);
+            assertEquals(leftExpected.add(value), left.add(value));
+            int other = random.nextInt(140000);
+            rightExpected.add(other);
+            right.add(other);
+        }
+        for (int i = 0; i < 20000; i++) {
+            int value = random.nextInt(140000);
+            assertEquals(leftExpected.remove(value), left.remove(value));
+        }
+
+        assertEquals(new ArrayList<>(leftExpected), valuesOf(left));
+        assertEquals(leftExpected.size(), left.cardinality());
+
+        TreeSet<Integer> both = new TreeSet<>(leftExpected);
+        both.retainAll(rightExpected);
+        TreeSet<Integer> either = new TreeSet<>(leftExpected);
+        either.addAll(rightExpected);
+        TreeSet<Integer> leftOnly = new TreeSet<>(leftExpected);
+        leftOnly.removeAll(rightExpected);
+
+        assertEquals(new ArrayList<>(both), valuesOf(left.and(right)));
+        assertEquals(both.size(), left.andCardinality(right));
+        assertEquals(new ArrayList<>(either), valuesOf(left.or(right)));
+        assertEquals(new ArrayList<>(leftOnly), valuesOf(left.andNot(right)));
+    }
+
+    @Test
+    void operationsLeaveTheirInputsUnchanged() {
+        CompressedBitmap left = new CompressedBitmap();
+        CompressedBitmap right = new CompressedBitmap();
+        left.add(1);
+        left.add(70000);
+        right.add(70000);
+
+        CompressedBitmap copy = left.copy();
+        copy.add(5);
+        left.or(right).add(9);
+
+        assertEquals(List.of(1, 70000), valuesOf(left));
+        assertEquals(List.of(70000), valuesOf(left.and(right)));
+        assertTrue(left.contains(70000));
+        assertFalse(left.contains(5));
+    }
+}
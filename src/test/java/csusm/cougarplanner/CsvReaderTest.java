@@ -0,0 +1,47 @@
+package csusm.cougarplanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import csusm.cougarplanner.io.CsvReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CsvReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void restoreThreshold() {
+        CsvReader.setParallelParseThreshold(4L * 1024 * 1024);
+    }
+
+    @Test
+    void testParallelParseMatchesSequentialParse() throws Exception {
+        // Several megabytes of rows with quoted commas, quotes and newlines, so chunk cuts land inside quotes
+        StringBuilder csv = new StringBuilder("announcement_id,title,body\n");
+        for (int i = 0; i < 40_000; i++) {
+            csv.append(i).append(",Title ").append(i).append(",\"line one, with comma\n")
+                    .append("line \"\"two\"\" of ").append(i).append("\n\nünïcode end\"\r\n");
+        }
+        Path sequentialFile = tempDir.resolve("sequential.csv");
+        Path parallelFile = tempDir.resolve("parallel.csv");
+        Files.writeString(sequentialFile, csv);
+        Files.writeString(parallelFile, csv);
+
+        CsvReader reader = new CsvReader();
+        CsvReader.setParallelParseThreshold(Long.MAX_VALUE);
+        List<Map<String, String>> sequential = reader.readAll(sequentialFile);
+        CsvReader.setParallelParseThreshold(0);
+        List<Map<String, String>> parallel = reader.readAll(parallelFile);
+
+        assertEquals(40_000, sequential.size());
+        assertEquals(sequential, parallel);
+        assertEquals("line one, with comma\nline \"two\" of 39999\n\nünïcode end", parallel.get(39_999).get("body"));
+    }
+}
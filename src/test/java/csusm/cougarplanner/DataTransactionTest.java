@@ -0,0 +1,117 @@
+package csusm.cougarplanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import csusm.cougarplanner.io.CsvPaths;
+import csusm.cougarplanner.io.CsvStorageEngine;
+import csusm.cougarplanner.io.DataTransaction;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DataTransactionTest {
+
+    @TempDir
+    Path tables;
+
+    private Path savedDataDirectory;
+    private Path root;
+
+    @BeforeEach
+    void useTemporaryDataDirectory() {
+        savedDataDirectory = CsvPaths.getDataDirectory();
+        CsvPaths.setDataDirectory(tables.resolve("data"));
+        root = CsvPaths.getGenerationsDirectory();
+    }
+
+    @AfterEach
+    void restoreDataDirectory() {
+        CsvPaths.setDataDirectory(savedDataDirectory);
+    }
+
+    private List<Path> generationsLeft() throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    void recoverFinishesACommitThatCrashedAfterTheManifest() throws IOException {
+        Path courses = tables.resolve("courses.csv");
+        Path announcements = tables.resolve("announcements.csv");
+        Files.writeString(courses, "course_id\nold\n");
+        Files.writeString(announcements, "announcement_id\nold\n");
+
+        // Two staged tables and the manifest naming them, with nothing installed yet
+        Path generation = root.resolve("100");
+        Files.createDirectories(generation);
+        Files.writeString(generation.resolve("0-courses.csv"), "course_id\nnew\n");
+        Files.writeString(generation.resolve("1-announcements.csv"), "announcement_id\nnew\n");
+        Files.write(root.resolve("CURRENT"), List.of(
+                "100",
+                courses + "\t0-courses.csv",
+                announcements + "\t1-announcements.csv"));
+        // And a transaction that never committed
+        Files.createDirectories(root.resolve("50"));
+        Files.writeString(root.resolve("50").resolve("0-courses.csv"), "course_id\nabandoned\n");
+
+        DataTransaction.recover();
+
+        assertEquals("course_id\nnew\n", Files.readString(courses));
+        assertEquals("announcement_id\nnew\n", Files.readString(announcements));
+        assertEquals(List.of(), generationsLeft(), "manifest, generations and their locks are all removed");
+
+        // A second start finds nothing to replay
+        Files.writeString(courses, "course_id\nlater\n");
+        DataTransaction.recover();
+        assertEquals("course_id\nlater\n", Files.readString(courses));
+    }
+
+    @Test
+    void recoverLeavesAnOpenTransactionAlone() throws IOException {
+        try (DataTransaction ignored = DataTransaction.begin()) {
+            DataTransaction.recover();
+            assertTrue(generationsLeft().stream().anyMatch(Files::isDirectory));
+        }
+        assertEquals(List.of(), generationsLeft());
+    }
+
+    @Test
+    void readConsistentKeepsACommitFromInstallingMidRead() throws Exception {
+        Path courses = tables.resolve("courses.csv");
+        Files.writeString(courses, "course_id\nold\n");
+        CsvStorageEngine engine = new CsvStorageEngine();
+        String[] headers = {"course_id"};
+
+        Thread writer = new Thread(() -> {
+            try (DataTransaction transaction = DataTransaction.begin()) {
+                engine.writeAll(courses, List.of(Map.of("course_id", "new")), headers);
+                transaction.commit();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        DataTransaction.readConsistent(() -> {
+            writer.start();
+            // The writer parks on the generation lock once it reaches the install step
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (writer.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            assertEquals(Thread.State.WAITING, writer.getState(), "the commit waits for the read to finish");
+            assertEquals("old", engine.readAll(courses).get(0).get("course_id"));
+            return null;
+        });
+        writer.join();
+        assertEquals("new", engine.readAll(courses).get(0).get("course_id"));
+    }
+}
@@ -0,0 +1,151 @@
+package csusm.cougarplanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import csusm.cougarplanner.io.RecordCodec;
+import csusm.cougarplanner.io.ResidentTable;
+import csusm.cougarplanner.io.UpsertResult;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ResidentTableTest {
+
+    private static final String[] HEADERS = {"id", "due_date"};
+
+    // Rows are used as-is so the test sees exactly what the table stores
+    private static final RecordCodec<Map<String, String>> CODEC = new RecordCodec<>() {
+        @Override
+        public String[] headers() {
+            return HEADERS;
+        }
+
+        @Override
+        public Map<String, String> decode(Map<String, String> record) {
+            return new HashMap<>(record);
+        }
+
+        @Override
+        public Map<String, String> encode(Map<String, String> value) {
+            return new HashMap<>(value);
+        }
+
+        @Override
+        public String id(Map<String, String> record) {
+            return record.get("id");
+        }
+
+        @Override
+        public LocalDate indexDate(Map<String, String> record) {
+            String date = record.get("due_date");
+            return date == null || date.isEmpty() ? null : LocalDate.parse(date);
+        }
+    };
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testDateRangeFollowsUpserts() throws Exception {
+        Path csv = tempDir.resolve("rows.csv");
+        Files.writeString(csv, "id,due_date\n1,2025-10-05\n2,2025-10-07\n3,\n");
+        ResidentTable<Map<String, String>> table = ResidentTable.open(csv, CODEC);
+
+        List<Map<String, String>> week = table.findByDateRange(LocalDate.of(2025, 10, 6), LocalDate.of(2025, 10, 12));
+        assertEquals(1, week.size());
+        assertEquals("2", week.get(0).get("id"));
+
+        // Moves row 1 into the week and appends a new row inside it
+        table.upsertAll(List.of(
+                Map.of("id", "1", "due_date", "2025-10-08"),
+                Map.of("id", "4", "due_date", "2025-10-09")));
+
+        week = table.findByDateRange(LocalDate.of(2025, 10, 6), LocalDate.of(2025, 10, 12));
+        assertEquals(List.of("2", "1", "4"), week.stream().map(r -> r.get("id")).toList());
+        assertTrue(table.findByDateRange(LocalDate.of(2025, 10, 5), LocalDate.of(2025, 10, 5)).isEmpty(),
+                "Row 1 should no longer be indexed under its old date");
+        assertEquals(4, table.findAll().size());
+    }
+
+    @Test
+    void testReloadsWhenFileChangesOnDisk() throws Exception {
+        Path csv = tempDir.resolve("external.csv");
+        Files.writeString(csv, "id,due_date\n1,2025-10-05\n");
+        ResidentTable<Map<String, String>> table = ResidentTable.open(csv, CODEC);
+        assertEquals(1, table.findAll().size());
+
+        Files.writeString(csv, "id,due_date\n1,2025-10-05\n2,2025-10-06\n");
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        assertEquals(2, table.findAll().size(), "An outside edit should be picked up on the next call");
+        assertTrue(table.findById("2").isPresent());
+    }
+
+    @Test
+    void testUnchangedRowsAreNotWritten() throws Exception {
+        Path csv = tempDir.resolve("hashed.csv");
+        Files.writeString(csv, "id,due_date\n1,2025-10-05\n2,2025-10-07\n");
+        ResidentTable<Map<String, String>> table = ResidentTable.open(csv, CODEC);
+        FileTime written = FileTime.fromMillis(1_000_000);
+        Files.setLastModifiedTime(csv, written);
+
+        UpsertResult result = table.upsertAll(List.of(
+                Map.of("id", "1", "due_date", "2025-10-05"),
+                Map.of("id", "2", "due_date", "2025-10-07")));
+        assertEquals(new UpsertResult(0, 0, 2), result);
+        assertEquals(written, Files.getLastModifiedTime(csv), "A no-op upsert should not touch the file");
+
+        result = table.upsertAll(List.of(
+                Map.of("id", "1", "due_date", "2025-10-05"),
+                Map.of("id", "2", "due_date", "2025-10-09"),
+                Map.of("id", "3", "due_date", "2025-10-10")));
+        assertEquals(new UpsertResult(1, 1, 1), result);
+        assertTrue(Files.readString(csv).startsWith("id,due_date,row_hash"));
+    }
+
+    @Test
+    void testRewriteKeepsRowsWrittenByAnotherWriter() throws Exception {
+        Path csv = tempDir.resolve("shared.csv");
+        Files.writeString(csv, "id,due_date\n1,2025-10-05\n");
+        ResidentTable<Map<String, String>> table = ResidentTable.open(csv, CODEC);
+        assertEquals(1, table.findAll().size());
+
+        // Another process adds a row after this table loaded the file
+        Files.writeString(csv, "id,due_date\n1,2025-10-05\n2,2025-10-06\n");
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        // Changing row 1 rewrites the whole file, which must not drop row 2
+        table.upsertAll(List.of(Map.of("id", "1", "due_date", "2025-10-08")));
+
+        String written = Files.readString(csv);
+        assertTrue(written.contains("2,2025-10-06"), "The other writer's row should survive the rewrite");
+        assertTrue(written.contains("1,2025-10-08"));
+    }
+
+    @Test
+    void testFailedWriteLeavesMemoryMatchingDisk() throws Exception {
+        Path csv = tempDir.resolve("failing.csv");
+        Files.writeString(csv, "id,due_date\n1,2025-10-05\n");
+        ResidentTable<Map<String, String>> table = ResidentTable.open(csv, CODEC);
+        assertEquals(1, table.findAll().size());
+
+        // A directory where the writer wants its temporary file makes the rewrite fail
+        Path blocker = tempDir.resolve("failing.csv." + ProcessHandle.current().pid() + ".tmp");
+        Files.createDirectories(blocker.resolve("occupied"));
+        assertThrows(IOException.class, () -> table.upsertAll(List.of(
+                Map.of("id", "1", "due_date", "2025-10-08"),
+                Map.of("id", "2", "due_date", "2025-10-09"))));
+
+        assertEquals(List.of("1"), table.findAll().stream().map(r -> r.get("id")).toList(),
+                "Rows that were never written should not be served");
+        assertEquals("2025-10-05", table.findById("1").orElseThrow().get("due_date"));
+        assertTrue(table.findByDateRange(LocalDate.of(2025, 10, 8), LocalDate.of(2025, 10, 9)).isEmpty());
+    }
+}
@@ -0,0 +1,144 @@
+package csusm.cougarplanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import csusm.cougarplanner.io.TaskChange;
+import csusm.cougarplanner.io.TasksRepository;
+import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.TaskPersistenceService;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class TaskPersistenceServiceTest {
+
+    // Records every batch instead of writing it; can be told to fail or to hold a write open
+    private static final class RecordingRepository extends TasksRepository {
+        final List<List<TaskChange>> batches = new CopyOnWriteArrayList<>();
+        final AtomicInteger failuresLeft = new AtomicInteger();
+        volatile CountDownLatch started;
+        volatile CountDownLatch release;
+
+        RecordingRepository() {
+            super(false);
+        }
+
+        @Override
+        public void applyAll(List<TaskChange> changes) throws IOException {
+            if (started != null) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new IOException("disk full");
+            }
+            batches.add(List.copyOf(changes));
+        }
+
+        @Override
+        public List<Task> findAll() {
+            return List.of();
+        }
+    }
+
+    private static Task task(String id) {
+        Task task = new Task();
+        task.setTaskId(id);
+        task.setTitle("Read chapter " + id);
+        return task;
+    }
+
+    @Test
+    void coalescesChangesToOneTaskIntoOneRow() throws Exception {
+        RecordingRepository repository = new RecordingRepository();
+        TaskPersistenceService service = new TaskPersistenceService(repository);
+
+        service.upsert(task("1"));
+        service.setCompleted("1", true);
+        service.patch("1", Map.of("title", "Read chapter 2"));
+        service.flush().get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, repository.batches.size());
+        List<TaskChange> batch = repository.batches.get(0);
+        assertEquals(1, batch.size());
+        assertEquals(TaskChange.Kind.UPSERT, batch.get(0).kind());
+        assertTrue(batch.get(0).task().isCompleted());
+        assertEquals("Read chapter 2", batch.get(0).task().getTitle());
+    }
+
+    @Test
+    void nestedBatchesWriteOnceWhenTheOutermostEnds() throws Exception {
+        RecordingRepository repository = new RecordingRepository();
+        TaskPersistenceService service = new TaskPersistenceService(repository);
+
+        service.beginBatch();
+        service.beginBatch();
+        service.upsert(task("1"));
+        service.endBatch();
+        Thread.sleep(500); // Past the debounce; the open batch must hold the write back
+        assertTrue(repository.batches.isEmpty());
+
+        service.upsert(task("2"));
+        service.endBatch();
+        service.whenWritten().get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, repository.batches.size());
+        assertEquals(2, repository.batches.get(0).size());
+        assertThrows(IllegalStateException.class, service::endBatch);
+    }
+
+    @Test
+    void failedUpsertKeepsChangesQueuedWhileItWasWritten() throws Exception {
+        RecordingRepository repository = new RecordingRepository();
+        TaskPersistenceService service = new TaskPersistenceService(repository);
+        repository.failuresLeft.set(1);
+        repository.started = new CountDownLatch(1);
+        repository.release = new CountDownLatch(1);
+
+        service.upsert(task("1"));
+        CompletableFuture<Void> written = service.whenWritten();
+        CompletableFuture<Void> failed = service.flush();
+        assertTrue(repository.started.await(5, TimeUnit.SECONDS));
+        service.setCompleted("1", true); // Queued while the new task's write is failing
+        repository.started = null;
+        repository.release.countDown();
+
+        assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> written.get(5, TimeUnit.SECONDS));
+
+        service.flush().get(5, TimeUnit.SECONDS);
+        List<TaskChange> batch = repository.batches.get(repository.batches.size() - 1);
+        assertEquals(1, batch.size());
+        assertEquals(TaskChange.Kind.UPSERT, batch.get(0).kind());
+        assertTrue(batch.get(0).task().isCompleted());
+    }
+
+    @Test
+    void retriesAFailedWriteWithoutAnotherChange() throws Exception {
+        RecordingRepository repository = new RecordingRepository();
+        TaskPersistenceService service = new TaskPersistenceService(repository);
+        assertTrue(service.whenWritten().isDone());
+        repository.failuresLeft.set(1);
+
+        service.upsert(task("1"));
+        CompletableFuture<Void> first = service.whenWritten();
+        assertFalse(first.isDone());
+        assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Void> retried = service.whenWritten();
+        retried.get(10, TimeUnit.SECONDS);
+        assertEquals(1, repository.batches.size());
+        assertEquals("1", repository.batches.get(0).get(0).taskId());
+    }
+}
@@ -0,0 +1,227 @@
+package csusm.cougarplanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import csusm.cougarplanner.commandPattern.Command;
+import csusm.cougarplanner.commandPattern.CommandManager;
+import csusm.cougarplanner.commandPattern.CreateTaskCommand;
+import csusm.cougarplanner.commandPattern.DeleteTaskCommand;
+import csusm.cougarplanner.commandPattern.UndoJournal;
+import csusm.cougarplanner.io.TaskChange;
+import csusm.cougarplanner.io.TasksRepository;
+import csusm.cougarplanner.models.Task;
+import csusm.cougarplanner.services.TaskCache;
+import csusm.cougarplanner.services.TaskPersistenceService;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The journaled undo history: what a restart reads back must behave like the stacks it was written from.
+ */
+public class UndoHistoryTest {
+
+    // Accepts every write without touching disk
+    private static final class DiscardingRepository extends TasksRepository {
+        DiscardingRepository() {
+            super(false);
+        }
+
+        @Override
+        public void applyAll(List<TaskChange> changes) {
+        }
+
+        @Override
+        public List<Task> findAll() {
+            return List.of();
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    private final TaskPersistenceService persistence = new TaskPersistenceService(new DiscardingRepository());
+    private final TaskCache cache = TaskCache.getInstance();
+    private final AtomicReference<CompletableFuture<Void>> nextWrite =
+            new AtomicReference<>(CompletableFuture.completedFuture(null));
+    private UndoJournal journal;
+
+    @BeforeEach
+    void clearCache() {
+        cache.removeAll();
+    }
+
+    @AfterEach
+    void restoreBudget() {
+        // Before the temp directory is deleted under the journal's writer
+        journal.flushAndWait(5, TimeUnit.SECONDS);
+        CommandManager.setHistoryBudgetBytes(1024 * 1024);
+        cache.removeAll();
+    }
+
+    // A manager on the journal as a fresh start of the app would open it
+    private CommandManager start() {
+        if (journal != null) {
+            assertTrue(journal.flushAndWait(5, TimeUnit.SECONDS));
+        }
+        journal = new UndoJournal(directory.resolve("undo.journal"), persistence);
+        return new CommandManager(nextWrite::get, Runnable::run, error -> { }, journal);
+    }
+
+    private static Task task(String id) {
+        Task task = new Task();
+        task.setTaskId(id);
+        task.setTitle("Task " + id);
+        return task;
+    }
+
+    private void create(CommandManager manager, String id) {
+        manager.execute(new CreateTaskCommand(persistence, task(id)));
+    }
+
+    private boolean cached(String id) {
+        return cache.findById(id).isPresent();
+    }
+
+    @Test
+    void restartKeepsBothStacks() {
+        CommandManager manager = start();
+        create(manager, "a");
+        create(manager, "b");
+        create(manager, "c");
+        manager.undo();
+        manager.undo();
+        manager.redo(); // Undo stack a, b; redo stack c
+
+        manager = start();
+        assertTrue(manager.canRedo());
+        manager.redo();
+        assertTrue(cached("c"));
+        manager.undo();
+        manager.undo();
+        manager.undo();
+        assertFalse(cached("a") || cached("b") || cached("c"));
+        assertFalse(manager.canUndo());
+
+        manager = start();
+        assertFalse(manager.canUndo());
+        manager.redo();
+        manager.redo();
+        manager.redo();
+        assertTrue(cached("a") && cached("b") && cached("c"));
+        assertFalse(manager.canRedo());
+    }
+
+    @Test
+    void rolledBackStepGivesBackTheRedosItCleared() {
+        CommandManager manager = start();
+        create(manager, "a");
+        manager.undo(); // Redo stack a
+
+        nextWrite.set(CompletableFuture.failedFuture(new IOException("disk full")));
+        create(manager, "b"); // Clears the redo stack, then its write fails and it is rolled back
+        nextWrite.set(CompletableFuture.completedFuture(null));
+        assertFalse(cached("b"));
+        assertTrue(manager.canRedo());
+
+        manager = start();
+        assertFalse(manager.canUndo());
+        manager.redo();
+        assertTrue(cached("a"));
+        assertFalse(cached("b"));
+    }
+
+    @Test
+    void stepsThatWereNeverJournaledAreSkipped() {
+        CommandManager manager = start();
+        create(manager, "a");
+        // No deltas, so the history keeps it in memory only; its undo event has no step to move
+        manager.execute(new Command() {
+            @Override
+            public void execute() {
+            }
+
+            @Override
+            public void undo() {
+            }
+        });
+        manager.undo();
+
+        manager = start();
+        assertFalse(manager.canRedo());
+        manager.undo();
+        assertFalse(cached("a"));
+        assertFalse(manager.canUndo());
+    }
+
+    @Test
+    void restartKeepsTheNewest500Steps() {
+        CommandManager.setHistoryBudgetBytes(64L * 1024 * 1024);
+        CommandManager manager = start();
+        for (int i = 0; i < 505; i++) {
+            create(manager, "t" + i);
+        }
+
+        manager = start();
+        for (int i = 0; i < 500; i++) {
+            assertTrue(manager.canUndo(), "step " + i);
+            manager.undo();
+        }
+        assertFalse(manager.canUndo());
+        assertEquals(5, cache.size());
+        assertTrue(cached("t4"));
+        assertFalse(cached("t5"));
+    }
+
+    @Test
+    void stepsTrimmedOverBudgetAreReadBackFromDisk() {
+        CommandManager.setHistoryBudgetBytes(1); // Only the newest step stays in memory
+        CommandManager manager = start();
+        for (String id : List.of("a", "b", "c", "d", "e")) {
+            create(manager, id);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(manager.canUndo());
+            manager.undo();
+        }
+        assertEquals(0, cache.size());
+        assertFalse(manager.canUndo());
+
+        for (int i = 0; i < 5; i++) {
+            manager.redo();
+        }
+        assertEquals(5, cache.size());
+
+        // And again after a restart, which also loads only what fits the budget
+        manager = start();
+        for (int i = 0; i < 5; i++) {
+            manager.undo();
+        }
+        assertEquals(0, cache.size());
+        assertFalse(manager.canUndo());
+    }
+
+    @Test
+    void undoingADeleteKeepsEmptyColumnsEmpty() {
+        CommandManager manager = start();
+        Task blank = task("a");
+        blank.setDescription("");
+        manager.execute(new CreateTaskCommand(persistence, blank));
+        manager.execute(new DeleteTaskCommand(persistence, "a"));
+        manager.undo();
+        assertEquals("", cache.findById("a").orElseThrow().getDescription());
+
+        manager.redo();
+        manager = start(); // The delete is read back from the journal
+        manager.undo();
+        assertEquals("", cache.findById("a").orElseThrow().getDescription());
+    }
+}